@@ -7,102 +7,249 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.List;
 
 import antlr4.*;
 import frontend.*;
+import backend.assembler.AssemblyReport;
+import backend.assembler.JasminAssembler;
+import backend.assembler.ParallelAssembler;
 import backend.compiler.Compiler;
+import backend.compiler.IncrementalCache;
+import backend.optimizer.PeepholeOptimizer;
+import backend.semantics.FileSpec;
+import intermediate.CompilationContext;
+import intermediate.PhaseTimings;
 
 public class SixtyFortran
 {
 
     public static void main(String[] args) throws Exception 
     {
-        if (args.length != 1 && args.length != 2)
+        int status = compile(args);
+        if(status != 0)
+            System.exit(status);
+    }
+    
+    public static int compile(String[] args) throws Exception
+    {
+        return compile(args, new CompilationContext());
+    }
+    
+    /**
+     * Runs the whole compiler on one source file.
+     * @param args the command line arguments.
+     * @param context the compilation's own state; messages go to its output stream.
+     * @return 0 if the program compiled (and assembled), 1 if there were errors and 2 for bad arguments.
+     */
+    public static int compile(String[] args, CompilationContext context) throws Exception
+    {
+        PrintStream out = context.out;
+        
+        String sourceFileName = null;
+        boolean assemble = true;
+        boolean bytecode = false;
+        boolean timings = false;
+        boolean rebuild = false;
+        boolean peepholeReport = false;
+        String timingsFileName = null;
+        
+        for(String arg : args)
         {
-            System.out.println("USAGE: SixtyFortran sourceFileName -noassemble (optional)");
-            return;
+            if(arg.equals("-noassemble") && assemble && !bytecode)
+                assemble = false;
+            else if(arg.equals("-bytecode") && assemble && !bytecode)
+                bytecode = true;
+            else if(arg.equals("-rebuild"))
+                rebuild = true;
+            else if(arg.equals("-boxed"))
+                context.specialize = false;
+            else if(arg.equals("-nopeephole"))
+                context.peephole = false;
+            else if(arg.equals("-nofold"))
+                context.fold = false;
+            else if(arg.equals("-peephole"))
+                peepholeReport = true;
+            else if(arg.equals("-timings"))
+                timings = true;
+            else if(arg.startsWith("-timings="))
+                timingsFileName = arg.substring("-timings=".length());
+            else if(sourceFileName == null && !arg.startsWith("-"))
+                sourceFileName = arg;
+            else
+            {
+                sourceFileName = null;
+                break;
+            }
         }
         
-        String sourceFileName = args[0];
+        if (sourceFileName == null)
+        {
+            out.println("USAGE: SixtyFortran sourceFileName [-noassemble | -bytecode] [-rebuild] [-boxed] [-nofold] [-nopeephole | -peephole] [-timings | -timings=jsonFile]");
+            return 2;
+        }
+        
+        int status = compile(sourceFileName, assemble, bytecode, rebuild, peepholeReport, context);
+        context.timings.stop();
+        
+        if(timings)
+        {
+            out.println("\nTimings:");
+            out.println(context.timings);
+        }
+        if(timingsFileName != null)
+        {
+            try (PrintStream json = new PrintStream(timingsFileName))
+            {
+                json.println(context.timings.toJson(sourceFileName));
+            }
+        }
+        
+        return status;
+    }
+    
+    private static int compile(String sourceFileName, boolean assemble, boolean bytecode, boolean rebuild, boolean peepholeReport, CompilationContext context) throws Exception
+    {
+        PrintStream out = context.out;
+        PhaseTimings timings = context.timings;
         
         // Create the input stream.
         InputStream source = new FileInputStream(sourceFileName);
         
         // Create the character stream from the input stream.
         CharStream cs = CharStreams.fromStream(source);
+        source.close();
         
         // Custom syntax error handler.
-        SyntaxErrorHandler syntaxErrorHandler = new SyntaxErrorHandler();
+        SyntaxErrorHandler syntaxErrorHandler = context.syntaxErrors;
         
         SixtyFortranLexer lexer = new SixtyFortranLexer(cs);
         lexer.removeErrorListeners();
         lexer.addErrorListener(syntaxErrorHandler);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         
+        timings.start("lexing");
+        tokens.fill();
+        
         SixtyFortranParser parser = new SixtyFortranParser(tokens);
         
         // Pass 1: Check syntax and create the parse tree.
-        System.out.printf("\nPASS 1 Syntax: ");
-        parser.removeErrorListeners();
-        parser.addErrorListener(syntaxErrorHandler);
-        ParseTree tree = parser.program();
+        out.printf("\nPASS 1 Syntax: ");
+        timings.start("parsing");
+        ParseTree tree = TwoStageParser.parse(parser, syntaxErrorHandler);
+        timings.stop();
         
         int errorCount = syntaxErrorHandler.getCount();
         if (errorCount > 0) 
         {
-            System.out.printf("\nThere were %d syntax errors.\n", errorCount);
-            System.out.println("Object file not created or modified.");
-            return;
+            out.printf("\nThere were %d syntax errors.\n", errorCount);
+            out.println("Object file not created or modified.");
+            return 1;
         }
         else
         {
-            System.out.println("There were no syntax errors.");
+            out.println("There were no syntax errors.");
         }
         
-        System.out.println("\nPASS 2 Semantics:");
-        SemanticErrorHandler error = new SemanticErrorHandler();
+        out.println("\nPASS 2 Semantics:");
+        SemanticErrorHandler error = context.semanticErrors;
         
-        Semantics pass2 = new Semantics(error);
+        Semantics pass2 = new Semantics(context);
+        timings.start("Semantics");
         pass2.visit(tree);
+        timings.stop();
         
         errorCount = error.getErrorCount();
         if (errorCount > 0)
         {
-            System.out.printf("\nThere were %d semantic errors.\n", errorCount);
-            System.out.println("Object file not created or modified.");
-            return;
+            out.printf("\nThere were %d semantic errors.\n", errorCount);
+            out.println("Object file not created or modified.");
+            return 1;
         }
         else
         {
-            System.out.println("There were no semantic errors");
+            out.println("There were no semantic errors");
         }
         
-        System.out.println("\nPASS 3 Compiler:");
+        out.println("\nPASS 3 Compiler:");
+        
+        String programName = sourceFileName.substring(sourceFileName.lastIndexOf('/') + 1, sourceFileName.lastIndexOf('.')); // Customize with program name
         
-        String programName = args[0].substring(args[0].lastIndexOf('/') + 1, args[0].lastIndexOf('.')); // Customize with program name
+        Compiler compiler = new Compiler(context, pass2.getWorldScope(), programName, bytecode); // Customize with program name
         
-        Compiler compiler = new Compiler(pass2.getWorldScope(), programName); // Customize with program name
+        // Unchanged top-level definitions keep the files from the last compilation
+        IncrementalCache cache = new IncrementalCache(programName + "_bin", (bytecode)? "bytecode" : (assemble)? "jasmin" : "j");
+        if(rebuild)
+            cache.clear();
+        compiler.setCache(cache);
 
         compiler.visit(tree);
+        timings.stop();
+        
+        int[] reused = compiler.getReuseCount();
+        if(reused[0] > 0)
+            out.printf("Reused the files of %d of %d definitions.\n", reused[0], reused[1]);
+        
+        PeepholeOptimizer optimizer = compiler.getOptimizer();
+        if(optimizer != null)
+        {
+            out.println(optimizer.getSummary());
+            if(peepholeReport)
+                out.println(optimizer.getReport());
+        }
         
-        if(args.length == 1 || !args[1].equals("-noassemble"))
-            assemble(programName);
+        boolean succeeded;
+        if(bytecode)
+        {
+            // The class files were built directly from the generated code, so there is nothing left to assemble
+            timings.start("assembly");
+            AssemblyReport report = compiler.writeClassFiles();
+            timings.stop();
+            out.println("\nClass files:");
+            out.println(report);
+            succeeded = report.succeeded();
+        }
+        else if(assemble)
+        {
+            // The assembler reads the generated code straight from memory
+            timings.start("assembly");
+            AssemblyReport report = assemble(compiler.getObjectFiles(), context);
+            timings.addWork(report.cpuNanos, report.allocatedBytes);
+            timings.stop();
+            succeeded = report.succeeded();
+        }
+        else
+        {
+            timings.start("writing");
+            compiler.writeObjectFiles();
+            timings.stop();
+            succeeded = true;
+        }
+        
+        if(succeeded)
+            compiler.updateCache();
+        else
+            cache.clear();
+        
+        return (succeeded)? 0 : 1;
     }
     
-    public static void assemble(String program_name) throws IOException {
-        String program_bin = program_name + "_bin";
-        //boolean isWindows = System.getProperty("os.name").toLowerCase().startsWith("windows"); // Check OS type
-        // Convert main .j program to .class
-        Runtime.getRuntime().exec(String.format("java -jar jasmin.jar %s.j", program_name));
-        Runtime.getRuntime().exec("java -jar jasmin.jar library/routine.j");
-        // Get all files in program_bin folder and save them to p
-        
-        for(File fileEntry : new File(program_bin).listFiles())
+    public static AssemblyReport assemble(List<FileSpec> files, CompilationContext context) throws IOException {
+        // Every generated file is an independent class, so they are assembled in parallel inside this JVM
+        AssemblyReport report;
+        if(context.assembler != null)
+            report = context.assembler.assemble(files);
+        else
         {
-            if(fileEntry.getName().endsWith(".j"))
-                Runtime.getRuntime().exec(String.format("java -jar jasmin.jar %s/%s > %s/error.log", program_bin, fileEntry.getName(), program_bin));   
+            ParallelAssembler assembler = new ParallelAssembler(new JasminAssembler());
+            report = assembler.assemble(files);
+            assembler.shutdown();
         }
-            
+        
+        context.out.println("\nAssembly:");
+        context.out.println(report);
+        return report;
     }
 
 }
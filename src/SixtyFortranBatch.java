@@ -0,0 +1,173 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import backend.assembler.JasminAssembler;
+import backend.assembler.ParallelAssembler;
+import frontend.TwoStageParser;
+import intermediate.CompilationContext;
+
+/**
+ * <h1>SixtyFortranBatch</h1>
+ *
+ * <p>Compiles many source files in one JVM, several at a time on a thread pool. Every
+ * compilation has its own CompilationContext, and its messages are collected and printed
+ * together once it's done, in the order the files were given.</p>
+ *
+ * <p>"@listFile" reads more source file names from listFile, one per line.</p>
+ */
+public class SixtyFortranBatch
+{
+    public static void main(String[] args) throws Exception
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String mode = null;
+        List<String> sourceFileNames = new ArrayList<>();
+        
+        for(int i = 0; i < args.length; i++)
+        {
+            if(args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if(args[i].equals("-noassemble") || args[i].equals("-bytecode"))
+                mode = args[i];
+            else if(args[i].startsWith("@"))
+            {
+                for(String line : Files.readAllLines(Paths.get(args[i].substring(1))))
+                    if(!line.trim().isEmpty())
+                        sourceFileNames.add(line.trim());
+            }
+            else if(!args[i].startsWith("-"))
+                sourceFileNames.add(args[i]);
+            else
+            {
+                sourceFileNames.clear();
+                break;
+            }
+        }
+        
+        if(sourceFileNames.isEmpty() || threads < 1)
+        {
+            System.out.println("USAGE: SixtyFortranBatch [-threads count] [-noassemble | -bytecode] sourceFileName... [@listFile]");
+            return;
+        }
+        
+        System.exit(compileAll(sourceFileNames, mode, threads));
+    }
+    
+    /**
+     * @param mode -noassemble, -bytecode or null.
+     * @return 0 if every program compiled, 1 otherwise.
+     */
+    public static int compileAll(List<String> sourceFileNames, String mode, int threads) throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        //one assembler (and fork-join pool) for the whole batch, rather than one per program. The compile threads can share it
+        //because every thread that runs its tasks assembles with its own copy of Jasmin, whose static state isn't thread-safe
+        ParallelAssembler assembler = (mode == null)? new ParallelAssembler(new JasminAssembler()) : null;
+        
+        //programs with the same name would write over each other's files
+        HashMap<String, String> programNames = new HashMap<>();
+        List<Future<CompileResult>> results = new ArrayList<>();
+        
+        for(String sourceFileName : sourceFileNames)
+        {
+            String programName = programName(sourceFileName);
+            String other = programNames.putIfAbsent(programName, sourceFileName);
+            if(other != null)
+                results.add(pool.submit(() -> new CompileResult(sourceFileName, 1, "Skipped: " + other + " is also named " + programName + ".\n")));
+            else
+                results.add(pool.submit(new CompileTask(sourceFileName, mode, assembler)));
+        }
+        
+        int failures = 0;
+        for(Future<CompileResult> future : results)
+        {
+            CompileResult result = future.get();
+            if(result.status != 0)
+                failures++;
+            
+            System.out.println("===== " + result.sourceFileName + " =====");
+            System.out.print(result.output);
+            System.out.println();
+        }
+        
+        pool.shutdown();
+        if(assembler != null)
+            assembler.shutdown();
+        
+        System.out.println((results.size() - failures) + " of " + results.size() + " programs compiled.");
+        System.out.println(TwoStageParser.getCounts());
+        return (failures == 0)? 0 : 1;
+    }
+    
+    private static String programName(String sourceFileName)
+    {
+        String name = sourceFileName.substring(sourceFileName.lastIndexOf('/') + 1);
+        return (name.lastIndexOf('.') > 0)? name.substring(0, name.lastIndexOf('.')) : name;
+    }
+    
+    private static class CompileResult
+    {
+        String sourceFileName;
+        int status;
+        String output;
+        
+        CompileResult(String sourceFileName, int status, String output)
+        {
+            this.sourceFileName = sourceFileName;
+            this.status = status;
+            this.output = output;
+        }
+    }
+    
+    private static class CompileTask implements Callable<CompileResult>
+    {
+        private String sourceFileName;
+        private String mode;
+        private ParallelAssembler assembler;
+        
+        CompileTask(String sourceFileName, String mode, ParallelAssembler assembler)
+        {
+            this.sourceFileName = sourceFileName;
+            this.mode = mode;
+            this.assembler = assembler;
+        }
+        
+        @Override
+        public CompileResult call()
+        {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(buffer, true);
+            
+            CompilationContext context = new CompilationContext(out);
+            context.assembler = assembler;
+            
+            String[] args = (mode == null)? new String[] { sourceFileName } : new String[] { sourceFileName, mode };
+            int status;
+            try
+            {
+                status = SixtyFortran.compile(args, context);
+            } catch (IOException e)
+            {
+                out.println(e);
+                status = 1;
+            } catch (Exception | Error e)
+            {
+                e.printStackTrace(out);
+                status = 1;
+            }
+            
+            out.flush();
+            return new CompileResult(sourceFileName, status, buffer.toString());
+        }
+    }
+}
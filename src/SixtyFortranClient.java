@@ -0,0 +1,90 @@
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * <h1>SixtyFortranClient</h1>
+ *
+ * <p>Takes the same arguments as SixtyFortran, but hands the compilation to the
+ * {@link SixtyFortranDaemon} serving the current directory and prints what it sends back.
+ * If no daemon is running, the program is compiled in this JVM instead.</p>
+ *
+ * <p>"SixtyFortranClient -stop" shuts the daemon down.</p>
+ */
+public class SixtyFortranClient
+{
+    public static void main(String[] args) throws Exception
+    {
+        File directory = new File(System.getProperty("user.dir")).getCanonicalFile();
+        File portFile = new File(directory, SixtyFortranDaemon.PORT_FILE);
+        
+        int status;
+        if(portFile.exists())
+        {
+            try
+            {
+                status = send(portFile, directory, args);
+            } catch (ConnectException e)
+            {
+                //the daemon died without cleaning up after itself
+                portFile.delete();
+                status = compileHere(args);
+            }
+        }
+        else
+            status = compileHere(args);
+        
+        System.exit(status);
+    }
+    
+    private static int compileHere(String[] args) throws Exception
+    {
+        if(args.length == 1 && args[0].equals(SixtyFortranDaemon.STOP))
+        {
+            System.out.println("No daemon is running.");
+            return 0;
+        }
+        
+        return SixtyFortran.compile(args);
+    }
+    
+    private static int send(File portFile, File directory, String[] args) throws IOException
+    {
+        String[] portAndToken;
+        try (BufferedReader reader = new BufferedReader(new FileReader(portFile)))
+        {
+            portAndToken = reader.readLine().trim().split(" ");
+        }
+        
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(portAndToken[0])))
+        {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(portAndToken[1]);
+            out.writeUTF(directory.getPath());
+            out.writeInt(args.length);
+            for(String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+            
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] buffer = new byte[8192];
+            for(int length = in.readInt(); length >= 0; length = in.readInt())
+            {
+                if(length > buffer.length)
+                    buffer = new byte[length];
+                
+                in.readFully(buffer, 0, length);
+                System.out.write(buffer, 0, length);
+            }
+            System.out.flush();
+            
+            return in.readInt();
+        }
+    }
+}
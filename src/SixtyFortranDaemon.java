@@ -0,0 +1,332 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import backend.assembler.JasminAssembler;
+import backend.assembler.ParallelAssembler;
+import frontend.*;
+import intermediate.CompilationContext;
+
+/**
+ * <h1>SixtyFortranDaemon</h1>
+ *
+ * <p>Keeps the compiler resident so that repeated builds skip JVM startup and run on a JIT-warmed
+ * compiler with ANTLR's DFA cache already filled in, and assemble with a Jasmin that is already loaded.</p>
+ *
+ * <p>The daemon serves the directory it was started in. It listens on a loopback port and writes
+ * the port and a random token to {@value #PORT_FILE} there, which is how {@link SixtyFortranClient}
+ * finds it. Requests are compiled one at a time, each with a fresh CompilationContext and the daemon's assembler.</p>
+ *
+ * <p>Protocol (all strings are modified UTF-8, as written by DataOutputStream.writeUTF):</p>
+ * <pre>
+ * request:  token, working directory, argument count, arguments...
+ * response: any number of (length, bytes) chunks of compiler output, then -1 and the exit status
+ * </pre>
+ * <p>The single argument {@value #STOP} shuts the daemon down.</p>
+ */
+public class SixtyFortranDaemon
+{
+    public static final String PORT_FILE = ".sixtyfortran-daemon";
+    public static final String STOP = "-stop";
+    
+    //a little of everything, so that the warm-up goes through most of the grammar, the semantic checks and the code generator
+    private static final String WARM_UP_SOURCE =
+        "type Counter:\n" +
+        "\tinteger count\n" +
+        "\tstatic string label = \"counter\"\n" +
+        "\t\n" +
+        "\tdef increment:\n" +
+        "\t\tcount = count + 1\n" +
+        "\tend increment\n" +
+        "end Counter\n" +
+        "\n" +
+        "def twice(routine r):\n" +
+        "\tr()\n" +
+        "\tr()\n" +
+        "end twice\n" +
+        "\n" +
+        "Counter c\n" +
+        "c.count = 0\n" +
+        "twice(c.increment)\n" +
+        "integer n\n" +
+        "real x\n" +
+        "n = 1\n" +
+        "x = 2.5\n" +
+        "while n < 10:\n" +
+        "\tn = n * 2 + 1\n" +
+        "\tx = x * real(n)\n" +
+        "\tif n == 5:\n" +
+        "\t\tprint(string(x))\n" +
+        "\tend if\n" +
+        "end while\n" +
+        "if n == 5:\n" +
+        "\tprint(string(x))\n" +
+        "end if else if (n > 7) and not (x < 1.0):\n" +
+        "\tprint(\"more\")\n" +
+        "end if else else:\n" +
+        "\tprint(Counter.label + string(n))\n" +
+        "end else\n";
+    
+    private static final int WARM_UP_ROUNDS = 50;
+    
+    //the warm-up program's files are written to the served directory like any other program's, and deleted afterwards
+    private static final String WARM_UP_PROGRAM = "SixtyFortranDaemonWarmUp";
+    
+    //how long a client has to send its request before it is dropped, since the daemon serves one client at a time
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+    
+    public static void main(String[] args) throws Exception
+    {
+        int port = 0;  // any free port
+        if(args.length == 2 && args[0].equals("-port"))
+            port = Integer.parseInt(args[1]);
+        else if(args.length != 0)
+        {
+            System.out.println("USAGE: SixtyFortranDaemon [-port portNumber]");
+            return;
+        }
+        
+        File directory = new File(System.getProperty("user.dir")).getCanonicalFile();
+        
+        //one assembler for every request, so that Jasmin is loaded (and JIT-compiled) once
+        ParallelAssembler assembler = null;
+        try
+        {
+            assembler = new ParallelAssembler(new JasminAssembler());
+        } catch (IOException e)
+        {
+            System.out.println("Not assembling: " + e.getMessage());
+        }
+        
+        System.out.println("Warming up the compiler...");
+        warmUp(directory, assembler);
+        
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()))
+        {
+            String token = newToken();
+            File portFile = new File(directory, PORT_FILE);
+            writePortFile(portFile, server.getLocalPort() + " " + token + System.lineSeparator());
+            portFile.deleteOnExit();
+            
+            System.out.println("Serving " + directory + " on port " + server.getLocalPort());
+            
+            boolean running = true;
+            while(running)
+            {
+                try (Socket client = server.accept())
+                {
+                    client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                    running = serve(client, token, directory, assembler);
+                } catch (IOException e)
+                {
+                    System.out.println("Request failed: " + e.getMessage());
+                }
+            }
+        }
+        
+        if(assembler != null)
+            assembler.shutdown();
+        
+        System.out.println(TwoStageParser.getCounts());
+        System.out.println("Stopped.");
+    }
+    
+    /**
+     * Creates the port file readable and writable by its owner only, before the token is written to it.
+     */
+    private static void writePortFile(File portFile, String contents) throws IOException
+    {
+        Path path = portFile.toPath();
+        Files.deleteIfExists(path);
+        
+        try
+        {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e)
+        {
+            //not a POSIX file system, so it is restricted as far as java.io.File can while it is still empty
+            Files.createFile(path);
+            portFile.setReadable(false, false);
+            portFile.setReadable(true, true);
+            portFile.setWritable(false, false);
+            portFile.setWritable(true, true);
+        }
+        
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Handles one request.
+     * @return false if the daemon was asked to stop.
+     */
+    private static boolean serve(Socket client, String token, File directory, ParallelAssembler assembler) throws IOException
+    {
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        DataOutputStream out = new DataOutputStream(client.getOutputStream());
+        
+        //compared in constant time, so the time it takes doesn't give away how much of the token was right
+        byte[] clientToken = in.readUTF().getBytes(StandardCharsets.UTF_8);
+        if(!MessageDigest.isEqual(clientToken, token.getBytes(StandardCharsets.UTF_8)))
+            return true;  // not one of our clients, don't answer
+        
+        File clientDirectory = new File(in.readUTF()).getCanonicalFile();
+        String[] args = new String[in.readInt()];
+        for(int i = 0; i < args.length; i++)
+            args[i] = in.readUTF();
+        
+        PrintStream output = new PrintStream(new ChunkOutputStream(out), true);
+        int status;
+        
+        if(args.length == 1 && args[0].equals(STOP))
+        {
+            output.println("Daemon stopped. " + TwoStageParser.getCounts());
+            finish(output, out, 0);
+            return false;
+        }
+        
+        if(!clientDirectory.equals(directory))
+        {
+            //the compiler writes its files relative to the working directory, which a running JVM can't change
+            output.println("The daemon is serving " + directory + ", not " + clientDirectory + ".");
+            finish(output, out, 2);
+            return true;
+        }
+        
+        PrintStream systemOut = System.out;
+        //the compiler prints through its context, this catches anything else (Jasmin's messages are already in the assembly report)
+        System.setOut(output);
+        try
+        {
+            CompilationContext context = new CompilationContext(output);
+            context.assembler = assembler;
+            status = SixtyFortran.compile(args, context);
+        } catch (Exception | Error e)
+        {
+            e.printStackTrace(output);
+            status = 1;
+        } finally
+        {
+            System.setOut(systemOut);
+        }
+        
+        System.out.println("Compiled " + String.join(" ", args) + " (status " + status + ")");
+        finish(output, out, status);
+        return true;
+    }
+    
+    private static void finish(PrintStream output, DataOutputStream out, int status) throws IOException
+    {
+        output.flush();
+        out.writeInt(-1);
+        out.writeInt(status);
+        out.flush();
+    }
+    
+    /**
+     * Compiles a sample program, through every pass and both backends, until the JIT has compiled the hot paths.
+     * The program's source goes in a temporary directory and its output files are deleted afterwards.
+     */
+    private static void warmUp(File directory, ParallelAssembler assembler) throws IOException
+    {
+        PrintStream discard = new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b) {}
+        });
+        
+        Path sourceDirectory = Files.createTempDirectory("sixtyfortran");
+        Path source = sourceDirectory.resolve(WARM_UP_PROGRAM + ".f");
+        Files.write(source, WARM_UP_SOURCE.getBytes(StandardCharsets.UTF_8));
+        
+        try
+        {
+            for(int i = 0; i < WARM_UP_ROUNDS; i++)
+            {
+                CompilationContext context = new CompilationContext(discard);
+                context.assembler = assembler;
+                
+                //-rebuild, because the cache would otherwise skip the code generator after the first round
+                String[] args = (assembler != null && i % 2 == 0)? new String[] { source.toString(), "-rebuild" } :
+                                                                     new String[] { source.toString(), "-rebuild", "-bytecode" };
+                SixtyFortran.compile(args, context);
+            }
+        } catch (Exception e)
+        {
+            System.out.println("Warm-up failed: " + e);
+        } finally
+        {
+            delete(new File(directory, WARM_UP_PROGRAM + ".class"));
+            delete(new File(directory, WARM_UP_PROGRAM + "_bin"));
+            delete(sourceDirectory.toFile());
+        }
+    }
+    
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if(children != null)
+            for(File child : children)
+                delete(child);
+        
+        file.delete();
+    }
+    
+    private static String newToken()
+    {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        
+        StringBuilder token = new StringBuilder();
+        for(byte b : bytes)
+            token.append(String.format("%02x", b));
+        
+        return token.toString();
+    }
+    
+    /**
+     * Frames everything written to it as (length, bytes) chunks on the socket.
+     */
+    private static class ChunkOutputStream extends OutputStream
+    {
+        private DataOutputStream out;
+        
+        ChunkOutputStream(DataOutputStream out)
+        {
+            this.out = out;
+        }
+        
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            if(length == 0)
+                return;
+            
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+        }
+        
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+    }
+}
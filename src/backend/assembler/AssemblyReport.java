@@ -0,0 +1,90 @@
+package backend.assembler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>AssemblyReport</h1>
+ *
+ * <p>Gathers the per-file results of an assembly run in the order the files were submitted.</p>
+ */
+public class AssemblyReport
+{
+    private ArrayList<AssemblyResult> results;
+    
+    //what happened to the files that succeeded, for the summary line
+    private String outcome;
+    
+    //CPU time and allocation of the threads that did the assembling
+    public long cpuNanos;
+    public long allocatedBytes;
+    
+    public AssemblyReport()
+    {
+        this("assembled");
+    }
+    
+    /**
+     * @param outcome the word the summary uses for the files that succeeded, e.g. "built".
+     */
+    public AssemblyReport(String outcome)
+    {
+        results = new ArrayList<>();
+        this.outcome = outcome;
+    }
+    
+    public void add(AssemblyResult result)
+    {
+        results.add(result);
+    }
+    
+    /**
+     * Appends another report's results after this one's.
+     * @param other the report to merge in.
+     * @return this report.
+     */
+    public AssemblyReport merge(AssemblyReport other)
+    {
+        results.addAll(other.results);
+        cpuNanos += other.cpuNanos;
+        allocatedBytes += other.allocatedBytes;
+        return this;
+    }
+    
+    public List<AssemblyResult> getResults()
+    {
+        return results;
+    }
+    
+    public int getFileCount()
+    {
+        return results.size();
+    }
+    
+    public int getFailureCount()
+    {
+        int failures = 0;
+        for(AssemblyResult result : results)
+            if(!result.succeeded())
+                failures++;
+        
+        return failures;
+    }
+    
+    public boolean succeeded()
+    {
+        return getFailureCount() == 0;
+    }
+    
+    @Override
+    public String toString()
+    {
+        String str = "";
+        for(AssemblyResult result : results)
+            if(!result.succeeded() || result.diagnostics != null)
+                str += result + "\n";
+        
+        str += String.format("%d of %d files %s.", getFileCount() - getFailureCount(), getFileCount(), outcome);
+        return str;
+    }
+}
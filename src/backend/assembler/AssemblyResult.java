@@ -0,0 +1,52 @@
+package backend.assembler;
+
+/**
+ * <h1>AssemblyResult</h1>
+ *
+ * <p>The outcome of assembling a single Jasmin file.</p>
+ */
+public class AssemblyResult
+{
+    public String fileName;
+    public String className;
+    public int errorCount;
+    public String message;
+    
+    //what Jasmin printed while assembling the file, e.g. its syntax errors, or null if it printed nothing
+    public String diagnostics;
+    
+    public AssemblyResult(String fileName)
+    {
+        this.fileName = fileName;
+        this.className = null;
+        this.errorCount = 0;
+        this.message = null;
+        this.diagnostics = null;
+    }
+    
+    public boolean succeeded()
+    {
+        return errorCount == 0 && message == null;
+    }
+    
+    @Override
+    public String toString()
+    {
+        String str;
+        if(succeeded())
+            str = fileName + ": assembled " + className + ".class";
+        else
+        {
+            str = fileName + ": ";
+            if(errorCount > 0)
+                str += errorCount + " error(s)";
+            if(message != null)
+                str += ((errorCount > 0)? ", " : "") + message;
+        }
+        
+        if(diagnostics != null)
+            str += "\n" + diagnostics;
+        
+        return str;
+    }
+}
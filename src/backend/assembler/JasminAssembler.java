@@ -0,0 +1,206 @@
+package backend.assembler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import backend.semantics.FileSpec;
+
+/**
+ * <h1>JasminAssembler</h1>
+ *
+ * <p>Runs Jasmin's assembler inside the compiler's JVM. The assembler classes are
+ * loaded once from jasmin.jar and every .j file is assembled with a fresh
+ * jasmin.ClassFile, the same way jasmin.Main does it.</p>
+ *
+ * <p>Jasmin keeps some of its state in static fields (jasmin.Scanner's buffer size, for one),
+ * so an instance must only be used by one thread at a time. {@link #JasminAssembler(JasminAssembler)}
+ * loads another copy of the classes for another thread.</p>
+ *
+ * <p>Jasmin prints its diagnostics to System.err, so System.err is replaced once by a stream that
+ * hands whatever a thread prints while it assembles to that file's {@link AssemblyResult}.</p>
+ */
+public class JasminAssembler
+{
+    public static String JASMIN_JAR = "jasmin.jar";
+    
+    //where the current thread's diagnostics go while it assembles a file, or null to print them as usual
+    private static final ThreadLocal<ByteArrayOutputStream> diagnostics = new ThreadLocal<>();
+    private static boolean capturesDiagnostics = false;
+    
+    private File jar;
+    private Class<?> classFileClass;
+    private Method readJasmin;
+    private Method errorCount;
+    private Method getClassName;
+    private Method write;
+    
+    public JasminAssembler() throws IOException
+    {
+        this(JASMIN_JAR);
+    }
+    
+    public JasminAssembler(String jarPath) throws IOException
+    {
+        jar = new File(jarPath);
+        if(!jar.exists())
+            throw new IOException("cannot find " + jarPath);
+        
+        load();
+    }
+    
+    /**
+     * Loads a separate copy of the Jasmin classes from the same jar, so that the two assemblers can run at the same time.
+     * @param other the assembler to copy.
+     */
+    public JasminAssembler(JasminAssembler other)
+    {
+        jar = other.jar;
+        
+        try
+        {
+            load();
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void load() throws IOException
+    {
+        captureDiagnostics();
+        
+        try
+        {
+            URLClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, JasminAssembler.class.getClassLoader());
+            classFileClass = loader.loadClass("jasmin.ClassFile");
+            readJasmin = classFileClass.getMethod("readJasmin", Reader.class, String.class, boolean.class);
+            errorCount = classFileClass.getMethod("errorCount");
+            getClassName = classFileClass.getMethod("getClassName");
+            write = classFileClass.getMethod("write", OutputStream.class);
+        } catch (ReflectiveOperationException e)
+        {
+            throw new IOException(jar.getPath() + " does not contain a usable Jasmin assembler", e);
+        }
+    }
+    
+    /**
+     * Assembles a Jasmin file and writes the class file next to the compiler's working directory,
+     * using the class name as the path (the same place jasmin.Main would put it).
+     * @param fileName the .j file
+     * @return the result for the file. Never null.
+     */
+    public AssemblyResult assemble(String fileName)
+    {
+        AssemblyResult result = new AssemblyResult(fileName);
+        
+        try (Reader source = new BufferedReader(new FileReader(fileName)))
+        {
+            return assemble(source, new File(fileName).getName(), result);
+        } catch (IOException e)
+        {
+            result.message = "cannot read file (" + e.getMessage() + ")";
+            return result;
+        }
+    }
+    
+    /**
+     * Assembles the code generated for a file without reading or writing the .j file itself.
+     * The class file goes to the same place as with {@link #assemble(String)}.
+     * @return the result for the file. Never null.
+     */
+    public AssemblyResult assemble(FileSpec file)
+    {
+        AssemblyResult result = new AssemblyResult(file.getFullName());
+        return assemble(new StringReader(file.code.toString()), new File(file.getFullName()).getName(), result);
+    }
+    
+    private AssemblyResult assemble(Reader source, String sourceName, AssemblyResult result)
+    {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        diagnostics.set(printed);
+        try
+        {
+            Object classFile = classFileClass.getDeclaredConstructor().newInstance();
+            readJasmin.invoke(classFile, source, sourceName, false);
+            
+            result.errorCount = (Integer) errorCount.invoke(classFile);
+            if(result.errorCount > 0)
+                return result;
+            
+            result.className = (String) getClassName.invoke(classFile);
+            
+            File classFileName = new File(result.className + ".class");
+            if(classFileName.getParentFile() != null)
+                classFileName.getParentFile().mkdirs();
+            
+            try (OutputStream out = new FileOutputStream(classFileName))
+            {
+                write.invoke(classFile, out);
+            }
+        } catch (InvocationTargetException e)
+        {
+            result.message = String.valueOf(e.getCause());
+        } catch (ReflectiveOperationException | IOException e)
+        {
+            result.message = e.toString();
+        } finally
+        {
+            diagnostics.remove();
+            String text = printed.toString().trim();
+            if(!text.isEmpty())
+                result.diagnostics = text;
+        }
+        
+        return result;
+    }
+    
+    private static synchronized void captureDiagnostics()
+    {
+        if(capturesDiagnostics)
+            return;
+        
+        capturesDiagnostics = true;
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                ByteArrayOutputStream printed = diagnostics.get();
+                if(printed != null)
+                    printed.write(b);
+                else
+                    err.write(b);
+            }
+            
+            @Override
+            public void write(byte[] bytes, int offset, int length)
+            {
+                ByteArrayOutputStream printed = diagnostics.get();
+                if(printed != null)
+                    printed.write(bytes, offset, length);
+                else
+                    err.write(bytes, offset, length);
+            }
+            
+            @Override
+            public void flush()
+            {
+                err.flush();
+            }
+        }, true));
+    }
+}
@@ -0,0 +1,85 @@
+package backend.assembler;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import backend.semantics.FileSpec;
+import intermediate.PhaseTimings;
+
+/**
+ * <h1>ParallelAssembler</h1>
+ *
+ * <p>Assembles a compiled program's files on a fork-join pool. Every FileSpec is an
+ * independent class, so the list is split in halves until each task holds a single file,
+ * and idle workers steal the remaining halves. {@link #assemble(List)} is the join point:
+ * it returns once every file has been assembled, with the results in submission order.</p>
+ *
+ * <p>Each worker thread assembles with its own copy of the Jasmin classes, because Jasmin's
+ * static state isn't safe to share between threads.</p>
+ */
+public class ParallelAssembler
+{
+    private ThreadLocal<JasminAssembler> assemblers;
+    private ForkJoinPool pool;
+    
+    public ParallelAssembler(JasminAssembler assembler)
+    {
+        this(assembler, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public ParallelAssembler(JasminAssembler assembler, int parallelism)
+    {
+        this.assemblers = ThreadLocal.withInitial(() -> new JasminAssembler(assembler));
+        this.pool = new ForkJoinPool(parallelism);
+    }
+    
+    public AssemblyReport assemble(List<FileSpec> files)
+    {
+        return pool.invoke(new AssemblyTask(files));
+    }
+    
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+    
+    private class AssemblyTask extends RecursiveTask<AssemblyReport>
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private List<FileSpec> files;
+        
+        AssemblyTask(List<FileSpec> files)
+        {
+            this.files = files;
+        }
+        
+        @Override
+        protected AssemblyReport compute()
+        {
+            if(files.size() <= 1)
+            {
+                JasminAssembler assembler = assemblers.get();
+                AssemblyReport report = new AssemblyReport();
+                long cpu = PhaseTimings.threadCpuTime();
+                long allocated = PhaseTimings.threadAllocatedBytes();
+                
+                for(FileSpec file : files)
+                    report.add(assembler.assemble(file));
+                
+                report.cpuNanos = PhaseTimings.threadCpuTime() - cpu;
+                report.allocatedBytes = PhaseTimings.threadAllocatedBytes() - allocated;
+                return report;
+            }
+            
+            int middle = files.size() / 2;
+            AssemblyTask left = new AssemblyTask(files.subList(0, middle));
+            AssemblyTask right = new AssemblyTask(files.subList(middle, files.size()));
+            
+            right.fork();
+            AssemblyReport report = left.compute();
+            return report.merge(right.join());
+        }
+    }
+}
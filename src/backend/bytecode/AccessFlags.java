@@ -0,0 +1,39 @@
+package backend.bytecode;
+
+/**
+ * <h1>AccessFlags</h1>
+ *
+ * <p>The access flags of classes, fields and methods, and the Jasmin keywords for them.</p>
+ */
+public class AccessFlags
+{
+    public static final int PUBLIC = 0x0001;
+    public static final int PRIVATE = 0x0002;
+    public static final int PROTECTED = 0x0004;
+    public static final int STATIC = 0x0008;
+    public static final int FINAL = 0x0010;
+    public static final int SUPER = 0x0020;
+    public static final int ABSTRACT = 0x0400;
+    
+    private static String[] NAMES = { "public", "private", "protected", "static", "final", "synchronized", "volatile", "transient", "native", "interface", "abstract" };
+    private static int[] VALUES = { 0x0001, 0x0002, 0x0004, 0x0008, 0x0010, 0x0020, 0x0040, 0x0080, 0x0100, 0x0200, 0x0400 };
+    
+    /**
+     * @return the keywords for the flags, e.g. "public static", as a method or field directive lists them.
+     */
+    public static String toString(int access)
+    {
+        StringBuilder keywords = new StringBuilder();
+        for(int i = 0; i < NAMES.length; i++)
+        {
+            if((access & VALUES[i]) == 0)
+                continue;
+            
+            if(keywords.length() > 0)
+                keywords.append(' ');
+            keywords.append(NAMES[i]);
+        }
+        
+        return keywords.toString();
+    }
+}
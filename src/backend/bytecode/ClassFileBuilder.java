@@ -0,0 +1,223 @@
+package backend.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>ClassFileBuilder</h1>
+ *
+ * <p>Builds a class file in memory from the code generator's classes, fields and methods,
+ * without going through a Jasmin source file. Classes are written with a modern class file
+ * version, so every method gets a StackMapTable.</p>
+ *
+ * <p>Problems are collected by method, and {@link #toByteArray()} produces no class if there
+ * were any.</p>
+ */
+public class ClassFileBuilder
+{
+    public static int MAJOR_VERSION = 55;  // Java 11
+    
+    private ConstantPool pool;
+    
+    private int access;
+    private String className;
+    private String superName;
+    private ArrayList<String> interfaces;
+    private ArrayList<Object[]> fields;  // {access, name, descriptor}
+    private ArrayList<MethodBuilder> methods;
+    private ArrayList<int[]> bootstrapMethods;
+    
+    private ArrayList<String> errors;
+    private ArrayList<String> warnings;
+    
+    public ClassFileBuilder()
+    {
+        pool = new ConstantPool();
+        
+        access = AccessFlags.PUBLIC | AccessFlags.SUPER;
+        className = null;
+        superName = VerificationType.OBJECT_CLASS;
+        interfaces = new ArrayList<>();
+        fields = new ArrayList<>();
+        methods = new ArrayList<>();
+        bootstrapMethods = new ArrayList<>();
+        
+        errors = new ArrayList<>();
+        warnings = new ArrayList<>();
+    }
+    
+    public String getClassName()
+    {
+        return className;
+    }
+    
+    public List<String> getErrors()
+    {
+        return errors;
+    }
+    
+    /**
+     * @return problems that didn't stop the class from being built, such as methods the JVM will refuse to verify.
+     */
+    public List<String> getWarnings()
+    {
+        return warnings;
+    }
+    
+    void addWarning(String warning)
+    {
+        warnings.add(warning);
+    }
+    
+    public void setClass(int access, String name)
+    {
+        this.access = access | AccessFlags.SUPER;
+        this.className = name;
+    }
+    
+    public void setSuperclass(String name)
+    {
+        superName = name;
+    }
+    
+    public void addInterface(String name)
+    {
+        interfaces.add(name);
+    }
+    
+    public void addField(int access, String name, String descriptor)
+    {
+        VerificationType.forDescriptor(descriptor);
+        fields.add(new Object[] { access, name, descriptor });
+    }
+    
+    /**
+     * @return the builder for a new method of the class, which the caller fills in.
+     */
+    public MethodBuilder addMethod(int access, String name, String descriptor)
+    {
+        MethodBuilder method = new MethodBuilder(this, access, name, descriptor);
+        methods.add(method);
+        
+        return method;
+    }
+    
+    /**
+     * @return the class file, or null if the code had errors (see {@link #getErrors()}).
+     */
+    public byte[] toByteArray() throws IOException
+    {
+        if(className == null)
+            errors.add("missing class name");
+        if(!errors.isEmpty())
+            return null;
+        
+        //write everything after the constant pool first, since that's what fills the pool
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        
+        body.writeShort(access);
+        body.writeShort(pool.addClass(className));
+        body.writeShort(pool.addClass(superName));
+        
+        body.writeShort(interfaces.size());
+        for(String name : interfaces)
+            body.writeShort(pool.addClass(name));
+        
+        body.writeShort(fields.size());
+        for(Object[] field : fields)
+            writeField(field, body);
+        
+        body.writeShort(methods.size());
+        for(MethodBuilder method : methods)
+        {
+            try
+            {
+                method.write(body, pool);
+            } catch (IllegalArgumentException | IllegalStateException e)
+            {
+                errors.add("method " + method.getName() + ": " + e.getMessage());
+            }
+        }
+        
+        if(!errors.isEmpty())
+            return null;
+        
+        if(bootstrapMethods.isEmpty())
+            body.writeShort(0);
+        else
+        {
+            body.writeShort(1);
+            writeBootstrapMethods(body);
+        }
+        
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(classBytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(MAJOR_VERSION);
+        pool.write(out);
+        out.write(bodyBytes.toByteArray());
+        
+        return classBytes.toByteArray();
+    }
+    
+    /**
+     * Adds an entry to the BootstrapMethods attribute for an invokedynamic instruction.
+     * @return the entry's index.
+     */
+    int addBootstrapMethod(Instruction insn)
+    {
+        int[] entry = new int[insn.bootstrapArguments.size() + 1];
+        entry[0] = pool.addMethodHandle(ConstantPool.REF_INVOKE_STATIC, pool.addMethodRef(insn.bootstrapOwner, insn.bootstrapName, insn.bootstrapDescriptor));
+        
+        for(int i = 0; i < insn.bootstrapArguments.size(); i++)
+        {
+            Object argument = insn.bootstrapArguments.get(i);
+            if(argument instanceof Integer)
+                entry[i + 1] = pool.addInteger((Integer) argument);
+            else if(argument instanceof Float)
+                entry[i + 1] = pool.addFloat((Float) argument);
+            else
+                entry[i + 1] = pool.addString(argument.toString());
+        }
+        
+        for(int i = 0; i < bootstrapMethods.size(); i++)
+            if(Arrays.equals(bootstrapMethods.get(i), entry))
+                return i;
+        
+        bootstrapMethods.add(entry);
+        return bootstrapMethods.size() - 1;
+    }
+    
+    private void writeField(Object[] field, DataOutputStream out) throws IOException
+    {
+        out.writeShort((Integer) field[0]);
+        out.writeShort(pool.addUtf8((String) field[1]));
+        out.writeShort(pool.addUtf8((String) field[2]));
+        out.writeShort(0);
+    }
+    
+    private void writeBootstrapMethods(DataOutputStream out) throws IOException
+    {
+        ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+        DataOutputStream attribute = new DataOutputStream(attributeBytes);
+        
+        attribute.writeShort(bootstrapMethods.size());
+        for(int[] entry : bootstrapMethods)
+        {
+            attribute.writeShort(entry[0]);
+            attribute.writeShort(entry.length - 1);
+            for(int i = 1; i < entry.length; i++)
+                attribute.writeShort(entry[i]);
+        }
+        
+        out.writeShort(pool.addUtf8("BootstrapMethods"));
+        out.writeInt(attributeBytes.size());
+        out.write(attributeBytes.toByteArray());
+    }
+}
@@ -0,0 +1,182 @@
+package backend.bytecode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <h1>ConstantPool</h1>
+ *
+ * <p>A class file's constant pool. Every add method returns the index of an existing
+ * equal entry if there is one, so each constant is stored only once.</p>
+ */
+public class ConstantPool
+{
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int INVOKE_DYNAMIC = 18;
+    
+    public static final int REF_INVOKE_STATIC = 6;
+    
+    private ArrayList<Object[]> entries;  // each entry is {tag, values...}, null for the unusable slot after a long or double
+    private HashMap<String, Integer> indices;
+    
+    public ConstantPool()
+    {
+        entries = new ArrayList<>();
+        indices = new HashMap<>();
+    }
+    
+    public int size()
+    {
+        return entries.size() + 1;
+    }
+    
+    public int addUtf8(String value)
+    {
+        return add(UTF8, value);
+    }
+    
+    public int addInteger(int value)
+    {
+        return add(INTEGER, value);
+    }
+    
+    public int addFloat(float value)
+    {
+        return add(FLOAT, value);
+    }
+    
+    public int addLong(long value)
+    {
+        return add(LONG, value);
+    }
+    
+    public int addDouble(double value)
+    {
+        return add(DOUBLE, value);
+    }
+    
+    public int addClass(String internalName)
+    {
+        return add(CLASS, addUtf8(internalName));
+    }
+    
+    public int addString(String value)
+    {
+        return add(STRING, addUtf8(value));
+    }
+    
+    public int addNameAndType(String name, String descriptor)
+    {
+        return add(NAME_AND_TYPE, addUtf8(name), addUtf8(descriptor));
+    }
+    
+    public int addFieldRef(String owner, String name, String descriptor)
+    {
+        return add(FIELD_REF, addClass(owner), addNameAndType(name, descriptor));
+    }
+    
+    public int addMethodRef(String owner, String name, String descriptor)
+    {
+        return add(METHOD_REF, addClass(owner), addNameAndType(name, descriptor));
+    }
+    
+    public int addInterfaceMethodRef(String owner, String name, String descriptor)
+    {
+        return add(INTERFACE_METHOD_REF, addClass(owner), addNameAndType(name, descriptor));
+    }
+    
+    public int addMethodHandle(int referenceKind, int referenceIndex)
+    {
+        return add(METHOD_HANDLE, referenceKind, referenceIndex);
+    }
+    
+    public int addInvokeDynamic(int bootstrapMethodIndex, String name, String descriptor)
+    {
+        return add(INVOKE_DYNAMIC, bootstrapMethodIndex, addNameAndType(name, descriptor));
+    }
+    
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeShort(size());
+        
+        for(Object[] entry : entries)
+        {
+            if(entry == null)
+                continue;
+            
+            int tag = (Integer) entry[0];
+            out.writeByte(tag);
+            
+            switch(tag)
+            {
+                case UTF8:
+                    out.writeUTF((String) entry[1]);
+                    break;
+                case INTEGER:
+                    out.writeInt((Integer) entry[1]);
+                    break;
+                case FLOAT:
+                    out.writeFloat((Float) entry[1]);
+                    break;
+                case LONG:
+                    out.writeLong((Long) entry[1]);
+                    break;
+                case DOUBLE:
+                    out.writeDouble((Double) entry[1]);
+                    break;
+                case CLASS:
+                case STRING:
+                    out.writeShort((Integer) entry[1]);
+                    break;
+                case METHOD_HANDLE:
+                    out.writeByte((Integer) entry[1]);
+                    out.writeShort((Integer) entry[2]);
+                    break;
+                default:
+                    out.writeShort((Integer) entry[1]);
+                    out.writeShort((Integer) entry[2]);
+            }
+        }
+    }
+    
+    private int add(int tag, Object... values)
+    {
+        String key = tag + ":" + ((tag == DOUBLE)? Double.doubleToRawLongBits((Double) values[0]) : (tag == FLOAT)? Float.floatToRawIntBits((Float) values[0]) : "");
+        for(Object value : values)
+            key += ":" + value;
+        
+        Integer index = indices.get(key);
+        if(index != null)
+            return index;
+        
+        Object[] entry = new Object[values.length + 1];
+        entry[0] = tag;
+        System.arraycopy(values, 0, entry, 1, values.length);
+        
+        entries.add(entry);
+        index = entries.size();
+        
+        //longs and doubles take up two slots
+        if(tag == LONG || tag == DOUBLE)
+            entries.add(null);
+        
+        if(size() > 0xFFFF)
+            throw new IllegalStateException("too many constants");
+        
+        indices.put(key, index);
+        return index;
+    }
+}
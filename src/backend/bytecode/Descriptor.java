@@ -0,0 +1,82 @@
+package backend.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Descriptor</h1>
+ *
+ * <p>Splits JVM method descriptors into their parameter and return type descriptors.</p>
+ */
+public class Descriptor
+{
+    /**
+     * @param methodDescriptor e.g. "(Llibrary/integer;I)V".
+     * @return the parameter descriptors in order, e.g. ["Llibrary/integer;", "I"].
+     */
+    public static List<String> argumentTypes(String methodDescriptor)
+    {
+        ArrayList<String> types = new ArrayList<>();
+        
+        if(!methodDescriptor.startsWith("(") || methodDescriptor.indexOf(')') < 0)
+            throw new IllegalArgumentException("malformed method descriptor '" + methodDescriptor + "'");
+        
+        int i = 1;
+        while(methodDescriptor.charAt(i) != ')')
+        {
+            int end = typeEnd(methodDescriptor, i);
+            types.add(methodDescriptor.substring(i, end));
+            i = end;
+        }
+        
+        return types;
+    }
+    
+    /**
+     * @param methodDescriptor e.g. "(Llibrary/integer;I)V".
+     * @return the return type descriptor, e.g. "V".
+     */
+    public static String returnType(String methodDescriptor)
+    {
+        String returnType = methodDescriptor.substring(methodDescriptor.indexOf(')') + 1);
+        if(returnType.isEmpty() || (!returnType.equals("V") && typeEnd(returnType, 0) != returnType.length()))
+            throw new IllegalArgumentException("malformed method descriptor '" + methodDescriptor + "'");
+        
+        return returnType;
+    }
+    
+    /**
+     * @return the number of stack slots the arguments of the method take up.
+     */
+    public static int argumentSize(String methodDescriptor)
+    {
+        int size = 0;
+        for(String type : argumentTypes(methodDescriptor))
+            size += (type.equals("J") || type.equals("D"))? 2 : 1;
+        
+        return size;
+    }
+    
+    private static int typeEnd(String descriptor, int start)
+    {
+        int i = start;
+        while(i < descriptor.length() && descriptor.charAt(i) == '[')
+            i++;
+        
+        if(i >= descriptor.length())
+            throw new IllegalArgumentException("malformed descriptor '" + descriptor + "'");
+        
+        switch(descriptor.charAt(i))
+        {
+            case 'Z': case 'B': case 'C': case 'S': case 'I': case 'F': case 'J': case 'D':
+                return i + 1;
+            case 'L':
+                int end = descriptor.indexOf(';', i);
+                if(end < 0)
+                    break;
+                return end + 1;
+        }
+        
+        throw new IllegalArgumentException("malformed descriptor '" + descriptor + "'");
+    }
+}
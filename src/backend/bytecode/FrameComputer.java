@@ -0,0 +1,694 @@
+package backend.bytecode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>FrameComputer</h1>
+ *
+ * <p>Runs the verifier's type inference over a method: it follows every path through the
+ * code, tracking the types of the locals and the operand stack, and merges the states
+ * where paths meet. The results are the StackMapTable frames at every branch target,
+ * which instructions are reachable, and how deep the stack and how many locals the
+ * method really uses.</p>
+ *
+ * <p>Locals and stack entries are kept one per slot, so a long or double is followed by a TOP
+ * for its second slot. That lets the dup/pop/swap family be applied slot by slot.</p>
+ */
+public class FrameComputer
+{
+    /**
+     * Thrown when the code doesn't type check, i.e. the JVM's verifier would reject it.
+     */
+    public static class TypeException extends IllegalStateException
+    {
+        private static final long serialVersionUID = 1L;
+        
+        public TypeException(String message)
+        {
+            super(message);
+        }
+    }
+    
+    public static class Frame
+    {
+        public ArrayList<VerificationType> locals;
+        public ArrayList<VerificationType> stack;
+        
+        Frame()
+        {
+            locals = new ArrayList<>();
+            stack = new ArrayList<>();
+        }
+        
+        Frame copy()
+        {
+            Frame frame = new Frame();
+            frame.locals.addAll(locals);
+            frame.stack.addAll(stack);
+            return frame;
+        }
+        
+        /**
+         * @return the locals as StackMapTable entries (one entry per long or double), without the trailing TOPs.
+         */
+        public List<VerificationType> getLocalEntries()
+        {
+            return entries(locals, true);
+        }
+        
+        public List<VerificationType> getStackEntries()
+        {
+            return entries(stack, false);
+        }
+        
+        private static List<VerificationType> entries(List<VerificationType> slots, boolean trim)
+        {
+            int end = slots.size();
+            while(trim && end > 0 && slots.get(end - 1) == VerificationType.TOP && (end < 2 || !slots.get(end - 2).isTwoWords()))
+                end--;
+            
+            ArrayList<VerificationType> entries = new ArrayList<>();
+            for(int i = 0; i < end; i++)
+            {
+                entries.add(slots.get(i));
+                if(slots.get(i).isTwoWords())
+                    i++;
+            }
+            
+            return entries;
+        }
+    }
+    
+    private String className;
+    private List<Instruction> instructions;
+    private Map<String, Integer> labels;
+    private int[] offsets;
+    private Map<Integer, VerificationType> localHints;
+    
+    private Frame[] frames;
+    private int maxStack;
+    private int maxLocals;
+    
+    /**
+     * @param className the class the method belongs to.
+     * @param instructions the method's code.
+     * @param labels maps each label to the index of the instruction that follows it.
+     * @param offsets the byte offset of each instruction (only used to identify uninitialized objects).
+     * @param localHints the declared types of locals, used where two different object types meet.
+     */
+    public FrameComputer(String className, List<Instruction> instructions, Map<String, Integer> labels, int[] offsets, Map<Integer, VerificationType> localHints)
+    {
+        this.className = className;
+        this.instructions = instructions;
+        this.labels = labels;
+        this.offsets = offsets;
+        this.localHints = localHints;
+    }
+    
+    /**
+     * Computes the frames of a method.
+     * @param isStatic whether the method is static.
+     * @param methodName the method's name.
+     * @param descriptor the method's descriptor.
+     * @throws IllegalStateException if the code can't be verified.
+     */
+    public void compute(boolean isStatic, String methodName, String descriptor)
+    {
+        Frame entry = new Frame();
+        if(!isStatic)
+        {
+            if(methodName.equals("<init>") && !className.equals(VerificationType.OBJECT_CLASS))
+                entry.locals.add(VerificationType.UNINITIALIZED_THIS);
+            else
+                entry.locals.add(VerificationType.object(className));
+        }
+        
+        for(String argument : Descriptor.argumentTypes(descriptor))
+            push(entry.locals, VerificationType.forDescriptor(argument));
+        
+        frames = new Frame[instructions.size() + 1];
+        maxStack = 0;
+        maxLocals = entry.locals.size();
+        
+        if(instructions.isEmpty())
+            return;
+        
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[instructions.size() + 1];
+        frames[0] = entry;
+        worklist.add(0);
+        queued[0] = true;
+        
+        while(!worklist.isEmpty())
+        {
+            int index = worklist.poll();
+            queued[index] = false;
+            
+            if(index == instructions.size())
+                throw new TypeException("execution falls off the end of the code");
+            
+            Instruction insn = instructions.get(index);
+            Frame frame = frames[index].copy();
+            
+            try
+            {
+                execute(insn, frame, offsets[index]);
+            } catch (TypeException e)
+            {
+                throw new TypeException(e.getMessage() + " at '" + insn + "'");
+            } catch (IllegalStateException e)
+            {
+                throw new IllegalStateException(e.getMessage() + " at '" + insn + "'");
+            }
+            
+            maxStack = Math.max(maxStack, frame.stack.size());
+            maxLocals = Math.max(maxLocals, frame.locals.size());
+            
+            if(insn.opcode.isBranch())
+            {
+                Integer target = labels.get(insn.label);
+                if(target == null)
+                    throw new IllegalStateException("undefined label " + insn.label);
+                
+                if(mergeInto(target, frame) && !queued[target])
+                {
+                    worklist.add(target);
+                    queued[target] = true;
+                }
+            }
+            
+            if(!insn.opcode.isUnconditional() && mergeInto(index + 1, frame) && !queued[index + 1])
+            {
+                worklist.add(index + 1);
+                queued[index + 1] = true;
+            }
+        }
+    }
+    
+    /**
+     * @return the state on entry to an instruction, or null if the instruction can't be reached.
+     */
+    public Frame getFrame(int index)
+    {
+        return frames[index];
+    }
+    
+    public boolean isReachable(int index)
+    {
+        return frames[index] != null;
+    }
+    
+    public int getMaxStack()
+    {
+        return maxStack;
+    }
+    
+    public int getMaxLocals()
+    {
+        return maxLocals;
+    }
+    
+    private boolean mergeInto(int index, Frame frame)
+    {
+        Frame old = frames[index];
+        if(old == null)
+        {
+            frames[index] = frame.copy();
+            return true;
+        }
+        
+        if(old.stack.size() != frame.stack.size())
+            throw new TypeException("inconsistent stack height at a branch target");
+        
+        boolean changed = false;
+        Frame merged = new Frame();
+        
+        for(int i = 0; i < Math.max(old.locals.size(), frame.locals.size()); i++)
+        {
+            VerificationType a = (i < old.locals.size())? old.locals.get(i) : VerificationType.TOP;
+            VerificationType b = (i < frame.locals.size())? frame.locals.get(i) : VerificationType.TOP;
+            VerificationType type = a.merge(b, localHints.get(i));
+            merged.locals.add(type);
+            changed |= !type.equals(a);
+        }
+        
+        for(int i = 0; i < old.stack.size(); i++)
+        {
+            VerificationType a = old.stack.get(i);
+            VerificationType type = a.merge(frame.stack.get(i), null);
+            if(type == VerificationType.TOP && a != VerificationType.TOP)
+                throw new TypeException("incompatible stack types " + a + " and " + frame.stack.get(i) + " at a branch target");
+            
+            merged.stack.add(type);
+            changed |= !type.equals(a);
+        }
+        
+        frames[index] = merged;
+        return changed;
+    }
+    
+    private void execute(Instruction insn, Frame frame, int offset)
+    {
+        ArrayList<VerificationType> stack = frame.stack;
+        
+        switch(insn.opcode)
+        {
+            case NOP:
+            case GOTO:
+            case RETURN:
+                break;
+            case ACONST_NULL:
+                push(stack, VerificationType.NULL);
+                break;
+            case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2: case ICONST_3: case ICONST_4: case ICONST_5:
+            case BIPUSH: case SIPUSH:
+                push(stack, VerificationType.INTEGER);
+                break;
+            case LCONST_0: case LCONST_1:
+                push(stack, VerificationType.LONG);
+                break;
+            case FCONST_0: case FCONST_1: case FCONST_2:
+                push(stack, VerificationType.FLOAT);
+                break;
+            case DCONST_0: case DCONST_1:
+                push(stack, VerificationType.DOUBLE);
+                break;
+            case LDC: case LDC_W: case LDC2_W:
+                push(stack, constantType(insn.constant));
+                break;
+                
+            case ILOAD: case ILOAD_0: case ILOAD_1: case ILOAD_2: case ILOAD_3:
+                push(stack, load(frame, localSlot(insn, Opcode.ILOAD_0), VerificationType.INTEGER));
+                break;
+            case LLOAD: case LLOAD_0: case LLOAD_1: case LLOAD_2: case LLOAD_3:
+                push(stack, load(frame, localSlot(insn, Opcode.LLOAD_0), VerificationType.LONG));
+                break;
+            case FLOAD: case FLOAD_0: case FLOAD_1: case FLOAD_2: case FLOAD_3:
+                push(stack, load(frame, localSlot(insn, Opcode.FLOAD_0), VerificationType.FLOAT));
+                break;
+            case DLOAD: case DLOAD_0: case DLOAD_1: case DLOAD_2: case DLOAD_3:
+                push(stack, load(frame, localSlot(insn, Opcode.DLOAD_0), VerificationType.DOUBLE));
+                break;
+            case ALOAD: case ALOAD_0: case ALOAD_1: case ALOAD_2: case ALOAD_3:
+                push(stack, load(frame, localSlot(insn, Opcode.ALOAD_0), null));
+                break;
+                
+            case ISTORE: case ISTORE_0: case ISTORE_1: case ISTORE_2: case ISTORE_3:
+                store(frame, localSlot(insn, Opcode.ISTORE_0), pop(stack, VerificationType.INTEGER));
+                break;
+            case LSTORE: case LSTORE_0: case LSTORE_1: case LSTORE_2: case LSTORE_3:
+                store(frame, localSlot(insn, Opcode.LSTORE_0), pop(stack, VerificationType.LONG));
+                break;
+            case FSTORE: case FSTORE_0: case FSTORE_1: case FSTORE_2: case FSTORE_3:
+                store(frame, localSlot(insn, Opcode.FSTORE_0), pop(stack, VerificationType.FLOAT));
+                break;
+            case DSTORE: case DSTORE_0: case DSTORE_1: case DSTORE_2: case DSTORE_3:
+                store(frame, localSlot(insn, Opcode.DSTORE_0), pop(stack, VerificationType.DOUBLE));
+                break;
+            case ASTORE: case ASTORE_0: case ASTORE_1: case ASTORE_2: case ASTORE_3:
+                store(frame, localSlot(insn, Opcode.ASTORE_0), popReference(stack));
+                break;
+            case IINC:
+                load(frame, insn.operand, VerificationType.INTEGER);
+                break;
+                
+            case IALOAD: case BALOAD: case CALOAD: case SALOAD:
+                arrayLoad(stack, VerificationType.INTEGER);
+                break;
+            case LALOAD:
+                arrayLoad(stack, VerificationType.LONG);
+                break;
+            case FALOAD:
+                arrayLoad(stack, VerificationType.FLOAT);
+                break;
+            case DALOAD:
+                arrayLoad(stack, VerificationType.DOUBLE);
+                break;
+            case AALOAD:
+            {
+                pop(stack, VerificationType.INTEGER);
+                VerificationType array = popReference(stack);
+                if(array == VerificationType.NULL)
+                    push(stack, VerificationType.NULL);
+                else if(array.getClassName().startsWith("["))
+                    push(stack, VerificationType.forDescriptor(array.getClassName().substring(1)));
+                else
+                    throw new TypeException("expecting an array, found " + array);
+                break;
+            }
+            case IASTORE: case BASTORE: case CASTORE: case SASTORE:
+                arrayStore(stack, VerificationType.INTEGER);
+                break;
+            case LASTORE:
+                arrayStore(stack, VerificationType.LONG);
+                break;
+            case FASTORE:
+                arrayStore(stack, VerificationType.FLOAT);
+                break;
+            case DASTORE:
+                arrayStore(stack, VerificationType.DOUBLE);
+                break;
+            case AASTORE:
+                popReference(stack);
+                pop(stack, VerificationType.INTEGER);
+                popReference(stack);
+                break;
+                
+            case POP:
+                popWords(stack, 1);
+                break;
+            case POP2:
+                popWords(stack, 2);
+                break;
+            case DUP:
+                shuffle(stack, 1, 0);
+                break;
+            case DUP_X1:
+                shuffle(stack, 1, 1);
+                break;
+            case DUP_X2:
+                shuffle(stack, 1, 2);
+                break;
+            case DUP2:
+                shuffle(stack, 2, 0);
+                break;
+            case DUP2_X1:
+                shuffle(stack, 2, 1);
+                break;
+            case DUP2_X2:
+                shuffle(stack, 2, 2);
+                break;
+            case SWAP:
+            {
+                List<VerificationType> words = popWords(stack, 2);
+                stack.add(words.get(1));
+                stack.add(words.get(0));
+                break;
+            }
+                
+            case IADD: case ISUB: case IMUL: case IDIV: case IREM: case IAND: case IOR: case IXOR:
+            case ISHL: case ISHR: case IUSHR:
+                binary(stack, VerificationType.INTEGER, VerificationType.INTEGER);
+                break;
+            case LADD: case LSUB: case LMUL: case LDIV: case LREM: case LAND: case LOR: case LXOR:
+                binary(stack, VerificationType.LONG, VerificationType.LONG);
+                break;
+            case LSHL: case LSHR: case LUSHR:
+                pop(stack, VerificationType.INTEGER);
+                convert(stack, VerificationType.LONG, VerificationType.LONG);
+                break;
+            case FADD: case FSUB: case FMUL: case FDIV: case FREM:
+                binary(stack, VerificationType.FLOAT, VerificationType.FLOAT);
+                break;
+            case DADD: case DSUB: case DMUL: case DDIV: case DREM:
+                binary(stack, VerificationType.DOUBLE, VerificationType.DOUBLE);
+                break;
+            case LCMP:
+                binary(stack, VerificationType.LONG, VerificationType.INTEGER);
+                break;
+            case FCMPL: case FCMPG:
+                binary(stack, VerificationType.FLOAT, VerificationType.INTEGER);
+                break;
+            case DCMPL: case DCMPG:
+                binary(stack, VerificationType.DOUBLE, VerificationType.INTEGER);
+                break;
+            case INEG:
+                convert(stack, VerificationType.INTEGER, VerificationType.INTEGER);
+                break;
+            case LNEG:
+                convert(stack, VerificationType.LONG, VerificationType.LONG);
+                break;
+            case FNEG:
+                convert(stack, VerificationType.FLOAT, VerificationType.FLOAT);
+                break;
+            case DNEG:
+                convert(stack, VerificationType.DOUBLE, VerificationType.DOUBLE);
+                break;
+            case I2L: convert(stack, VerificationType.INTEGER, VerificationType.LONG); break;
+            case I2F: convert(stack, VerificationType.INTEGER, VerificationType.FLOAT); break;
+            case I2D: convert(stack, VerificationType.INTEGER, VerificationType.DOUBLE); break;
+            case L2I: convert(stack, VerificationType.LONG, VerificationType.INTEGER); break;
+            case L2F: convert(stack, VerificationType.LONG, VerificationType.FLOAT); break;
+            case L2D: convert(stack, VerificationType.LONG, VerificationType.DOUBLE); break;
+            case F2I: convert(stack, VerificationType.FLOAT, VerificationType.INTEGER); break;
+            case F2L: convert(stack, VerificationType.FLOAT, VerificationType.LONG); break;
+            case F2D: convert(stack, VerificationType.FLOAT, VerificationType.DOUBLE); break;
+            case D2I: convert(stack, VerificationType.DOUBLE, VerificationType.INTEGER); break;
+            case D2L: convert(stack, VerificationType.DOUBLE, VerificationType.LONG); break;
+            case D2F: convert(stack, VerificationType.DOUBLE, VerificationType.FLOAT); break;
+                
+            case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+                pop(stack, VerificationType.INTEGER);
+                break;
+            case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+                pop(stack, VerificationType.INTEGER);
+                pop(stack, VerificationType.INTEGER);
+                break;
+            case IF_ACMPEQ: case IF_ACMPNE:
+                popReference(stack);
+                popReference(stack);
+                break;
+            case IFNULL: case IFNONNULL:
+                popReference(stack);
+                break;
+                
+            case IRETURN:
+                pop(stack, VerificationType.INTEGER);
+                break;
+            case LRETURN:
+                pop(stack, VerificationType.LONG);
+                break;
+            case FRETURN:
+                pop(stack, VerificationType.FLOAT);
+                break;
+            case DRETURN:
+                pop(stack, VerificationType.DOUBLE);
+                break;
+            case ARETURN:
+            case ATHROW:
+                popReference(stack);
+                break;
+                
+            case GETSTATIC:
+                push(stack, VerificationType.forDescriptor(insn.descriptor));
+                break;
+            case PUTSTATIC:
+                pop(stack, VerificationType.forDescriptor(insn.descriptor));
+                break;
+            case GETFIELD:
+                popReference(stack);
+                push(stack, VerificationType.forDescriptor(insn.descriptor));
+                break;
+            case PUTFIELD:
+                pop(stack, VerificationType.forDescriptor(insn.descriptor));
+                popReference(stack);
+                break;
+                
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+            case INVOKEINTERFACE:
+            case INVOKEDYNAMIC:
+                invoke(insn, frame);
+                break;
+                
+            case NEW:
+                push(stack, VerificationType.uninitialized(insn.owner, offset));
+                break;
+            case ANEWARRAY:
+                pop(stack, VerificationType.INTEGER);
+                push(stack, VerificationType.object("[" + (insn.owner.startsWith("[")? insn.owner : "L" + insn.owner + ";")));
+                break;
+            case CHECKCAST:
+                popReference(stack);
+                push(stack, VerificationType.object(insn.owner));
+                break;
+            case INSTANCEOF:
+                popReference(stack);
+                push(stack, VerificationType.INTEGER);
+                break;
+            case ARRAYLENGTH:
+                popReference(stack);
+                push(stack, VerificationType.INTEGER);
+                break;
+                
+            default:
+                throw new IllegalStateException("unsupported instruction");
+        }
+    }
+    
+    private static void arrayLoad(ArrayList<VerificationType> stack, VerificationType element)
+    {
+        pop(stack, VerificationType.INTEGER);
+        popReference(stack);
+        push(stack, element);
+    }
+    
+    private static void arrayStore(ArrayList<VerificationType> stack, VerificationType element)
+    {
+        pop(stack, element);
+        pop(stack, VerificationType.INTEGER);
+        popReference(stack);
+    }
+    
+    private void invoke(Instruction insn, Frame frame)
+    {
+        List<String> arguments = Descriptor.argumentTypes(insn.descriptor);
+        for(int i = arguments.size() - 1; i >= 0; i--)
+            pop(frame.stack, VerificationType.forDescriptor(arguments.get(i)));
+        
+        if(insn.opcode != Opcode.INVOKESTATIC && insn.opcode != Opcode.INVOKEDYNAMIC)
+        {
+            VerificationType receiver = popReference(frame.stack);
+            
+            //calling a constructor initializes every copy of the new object
+            if(insn.name.equals("<init>"))
+            {
+                if(!receiver.isUninitialized())
+                    throw new TypeException("constructor called on an initialized object");
+                
+                VerificationType initialized = (receiver == VerificationType.UNINITIALIZED_THIS)? VerificationType.object(className) : VerificationType.object(receiver.getClassName());
+                replaceAll(frame.locals, receiver, initialized);
+                replaceAll(frame.stack, receiver, initialized);
+            }
+            else if(receiver.isUninitialized())
+                throw new TypeException("method called on an uninitialized object");
+        }
+        
+        String returnType = Descriptor.returnType(insn.descriptor);
+        if(!returnType.equals("V"))
+            push(frame.stack, VerificationType.forDescriptor(returnType));
+    }
+    
+    private static VerificationType constantType(Object constant)
+    {
+        if(constant instanceof Integer)
+            return VerificationType.INTEGER;
+        if(constant instanceof Float)
+            return VerificationType.FLOAT;
+        if(constant instanceof Long)
+            return VerificationType.LONG;
+        if(constant instanceof Double)
+            return VerificationType.DOUBLE;
+        
+        return VerificationType.object("java/lang/String");
+    }
+    
+    private static int localSlot(Instruction insn, Opcode shortForm0)
+    {
+        if(insn.opcode.operand == Opcode.Operand.LOCAL)
+            return insn.operand;
+        
+        return insn.opcode.code - shortForm0.code;
+    }
+    
+    private VerificationType load(Frame frame, int slot, VerificationType expected)
+    {
+        VerificationType type = (slot < frame.locals.size())? frame.locals.get(slot) : VerificationType.TOP;
+        
+        if(expected == null? !type.isReference() : !type.equals(expected))
+            throw new TypeException("local " + slot + " holds " + type);
+        
+        return type;
+    }
+    
+    private void store(Frame frame, int slot, VerificationType type)
+    {
+        ArrayList<VerificationType> locals = frame.locals;
+        while(locals.size() < slot + type.size())
+            locals.add(VerificationType.TOP);
+        
+        //overwriting the second half of a long or double invalidates the whole value
+        if(slot > 0 && locals.get(slot - 1).isTwoWords())
+            locals.set(slot - 1, VerificationType.TOP);
+        if(locals.get(slot).isTwoWords() && !type.isTwoWords())
+            locals.set(slot + 1, VerificationType.TOP);
+        if(type.isTwoWords() && slot + 2 < locals.size() && locals.get(slot + 1).isTwoWords())
+            locals.set(slot + 2, VerificationType.TOP);
+        
+        locals.set(slot, type);
+        if(type.isTwoWords())
+            locals.set(slot + 1, VerificationType.TOP);
+    }
+    
+    private static void push(List<VerificationType> slots, VerificationType type)
+    {
+        slots.add(type);
+        if(type.isTwoWords())
+            slots.add(VerificationType.TOP);
+    }
+    
+    private static VerificationType pop(ArrayList<VerificationType> stack, VerificationType expected)
+    {
+        if(expected.isReference())
+            return popReference(stack);
+        
+        checkedPop(stack, expected);
+        return expected;
+    }
+    
+    private static VerificationType popReference(ArrayList<VerificationType> stack)
+    {
+        VerificationType type = popWords(stack, 1).get(0);
+        if(!type.isReference())
+            throw new TypeException("expecting an object on the stack, found " + type);
+        
+        return type;
+    }
+    
+    private static List<VerificationType> popWords(ArrayList<VerificationType> stack, int count)
+    {
+        if(stack.size() < count)
+            throw new TypeException("stack underflow");
+        
+        List<VerificationType> words = new ArrayList<>(stack.subList(stack.size() - count, stack.size()));
+        for(int i = 0; i < count; i++)
+            stack.remove(stack.size() - 1);
+        
+        return words;
+    }
+    
+    /**
+     * Duplicates the top words of the stack and inserts the copy below the next words, which covers dup, dup_x1, dup_x2, dup2, dup2_x1 and dup2_x2.
+     */
+    private static void shuffle(ArrayList<VerificationType> stack, int copied, int skipped)
+    {
+        List<VerificationType> top = popWords(stack, copied);
+        List<VerificationType> below = popWords(stack, skipped);
+        
+        stack.addAll(top);
+        stack.addAll(below);
+        stack.addAll(top);
+    }
+    
+    private static void binary(ArrayList<VerificationType> stack, VerificationType operand, VerificationType result)
+    {
+        checkedPop(stack, operand);
+        checkedPop(stack, operand);
+        push(stack, result);
+    }
+    
+    private static void convert(ArrayList<VerificationType> stack, VerificationType operand, VerificationType result)
+    {
+        checkedPop(stack, operand);
+        push(stack, result);
+    }
+    
+    private static void checkedPop(ArrayList<VerificationType> stack, VerificationType expected)
+    {
+        if(stack.size() < expected.size() || !stack.get(stack.size() - expected.size()).equals(expected))
+            throw new TypeException("expecting " + expected + " on the stack");
+        
+        popWords(stack, expected.size());
+    }
+    
+    private static void replaceAll(List<VerificationType> slots, VerificationType from, VerificationType to)
+    {
+        for(int i = 0; i < slots.size(); i++)
+            if(slots.get(i).equals(from))
+                slots.set(i, to);
+    }
+}
@@ -0,0 +1,228 @@
+package backend.bytecode;
+
+import java.util.List;
+
+/**
+ * <h1>Instruction</h1>
+ *
+ * <p>One typed instruction of the code generator's output, built with the factories below.
+ * {@link #toString()} writes it in Jasmin syntax for the .j files.</p>
+ */
+public class Instruction
+{
+    public Opcode opcode;
+    
+    public int operand;        // the local variable slot, or the value of bipush/sipush
+    public int increment;      // the constant added by iinc
+    public String label;       // the target of a branch
+    public Object constant;    // the Integer, Float, Long, Double or String loaded by ldc
+    
+    public String owner;       // the class of a field or method, or the class operand of new/checkcast/instanceof
+    public String name;        // the name of a field, method or invokedynamic call site
+    public String descriptor;  // the descriptor of a field, method or invokedynamic call site
+    
+    public String bootstrapOwner;          // invokedynamic only
+    public String bootstrapName;
+    public String bootstrapDescriptor;
+    public List<Object> bootstrapArguments;
+    
+    public Instruction(Opcode opcode)
+    {
+        this.opcode = opcode;
+    }
+    
+    /**
+     * @param operand the local variable slot, or the value of bipush/sipush.
+     */
+    public static Instruction withOperand(Opcode opcode, int operand)
+    {
+        Instruction insn = new Instruction(opcode);
+        insn.operand = operand;
+        return insn;
+    }
+    
+    public static Instruction branch(Opcode opcode, String label)
+    {
+        Instruction insn = new Instruction(opcode);
+        insn.label = label;
+        return insn;
+    }
+    
+    /**
+     * @return new, checkcast, instanceof or anewarray of the class.
+     */
+    public static Instruction withClass(Opcode opcode, String className)
+    {
+        Instruction insn = new Instruction(opcode);
+        insn.owner = className;
+        return insn;
+    }
+    
+    /**
+     * @return a field access or a method call.
+     */
+    public static Instruction member(Opcode opcode, String owner, String name, String descriptor)
+    {
+        Instruction insn = new Instruction(opcode);
+        insn.owner = owner;
+        insn.name = name;
+        insn.descriptor = descriptor;
+        return insn;
+    }
+    
+    /**
+     * @param constant an Integer, Float or String for ldc, or a Long or Double for ldc2_w.
+     */
+    public static Instruction constant(Object constant)
+    {
+        Instruction insn = new Instruction((constant instanceof Long || constant instanceof Double)? Opcode.LDC2_W : Opcode.LDC);
+        insn.constant = constant;
+        return insn;
+    }
+    
+    public boolean isLoad()
+    {
+        return opcode.operand == Opcode.Operand.LOCAL && opcode.code < Opcode.ISTORE.code;
+    }
+    
+    public boolean isStore()
+    {
+        return opcode.operand == Opcode.Operand.LOCAL && opcode.code >= Opcode.ISTORE.code;
+    }
+    
+    /**
+     * @return the local variable slot of a load, store or iinc, in its long or short form (2 for both
+     * aload 2 and aload_2), or -1 for any other instruction.
+     */
+    public int getLocalSlot()
+    {
+        if(opcode.operand == Opcode.Operand.LOCAL || opcode.operand == Opcode.Operand.IINC)
+            return operand;
+        if(opcode.code >= Opcode.ILOAD_0.code && opcode.code <= Opcode.ALOAD_3.code)
+            return (opcode.code - Opcode.ILOAD_0.code) % 4;
+        if(opcode.code >= Opcode.ISTORE_0.code && opcode.code <= Opcode.ASTORE_3.code)
+            return (opcode.code - Opcode.ISTORE_0.code) % 4;
+        
+        return -1;
+    }
+    
+    /**
+     * @return whether the instruction loads a local variable, in its long or short form.
+     */
+    public boolean loadsLocal()
+    {
+        return getLocalSlot() >= 0 && opcode.mnemonic.substring(1).startsWith("load");
+    }
+    
+    /**
+     * @return whether the instruction stores a local variable, in its long or short form.
+     */
+    public boolean storesLocal()
+    {
+        return getLocalSlot() >= 0 && opcode.mnemonic.substring(1).startsWith("store");
+    }
+    
+    /**
+     * @return whether a load or store moves a long or a double, which takes two stack words and two slots.
+     */
+    public boolean isWide()
+    {
+        char type = opcode.mnemonic.charAt(0);
+        return (loadsLocal() || storesLocal()) && (type == 'l' || type == 'd');
+    }
+    
+    @Override
+    public String toString()
+    {
+        switch(opcode.operand)
+        {
+            case BYTE:
+            case SHORT:
+            case LOCAL:
+                return opcode + " " + operand;
+            case IINC:
+                return opcode + " " + operand + " " + increment;
+            case BRANCH:
+                return opcode + " " + label;
+            case CLASS:
+                return opcode + " " + owner;
+            case CONSTANT:
+                //without the d, Jasmin would read a double as a float
+                return opcode + " " + constantText(constant) + ((constant instanceof Double)? "d" : "");
+            case FIELD:
+                return opcode + " " + owner + "/" + name + " " + descriptor;
+            case METHOD:
+                return opcode + " " + owner + "/" + name + descriptor;
+            case INTERFACE_METHOD:
+                return opcode + " " + owner + "/" + name + descriptor + " " + (Descriptor.argumentSize(descriptor) + 1);
+            case DYNAMIC:
+                String str = opcode + " " + name + descriptor + " " + bootstrapOwner + "/" + bootstrapName + bootstrapDescriptor;
+                for(Object argument : bootstrapArguments)
+                    str += " " + constantText(argument);
+                return str;
+            default:
+                return opcode.toString();
+        }
+    }
+    
+    /**
+     * @return the string with its backslash escapes (\n, \t, \", \u0041 and so on) replaced by the characters they stand for.
+     */
+    public static String unescape(String str)
+    {
+        StringBuilder builder = new StringBuilder();
+        
+        for(int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if(c == '\\' && i + 1 < str.length())
+            {
+                c = str.charAt(++i);
+                switch(c)
+                {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u':
+                        if(i + 4 < str.length())
+                        {
+                            c = (char) Integer.parseInt(str.substring(i + 1, i + 5), 16);
+                            i += 4;
+                        }
+                        break;
+                }
+            }
+            builder.append(c);
+        }
+        
+        return builder.toString();
+    }
+    
+    private static String constantText(Object constant)
+    {
+        if(!(constant instanceof String))
+            return String.valueOf(constant);
+        
+        StringBuilder builder = new StringBuilder("\"");
+        for(char c : ((String) constant).toCharArray())
+        {
+            switch(c)
+            {
+                case '\\': builder.append("\\\\"); break;
+                case '"': builder.append("\\\""); break;
+                case '\n': builder.append("\\n"); break;
+                case '\t': builder.append("\\t"); break;
+                case '\r': builder.append("\\r"); break;
+                default:
+                    if(c < ' ')
+                        builder.append(String.format("\\u%04x", (int) c));
+                    else
+                        builder.append(c);
+            }
+        }
+        
+        return builder.append('"').toString();
+    }
+}
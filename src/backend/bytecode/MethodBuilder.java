@@ -0,0 +1,399 @@
+package backend.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * <h1>MethodBuilder</h1>
+ *
+ * <p>Collects the instructions and labels of one method and encodes them into a Code
+ * attribute with a StackMapTable.</p>
+ */
+public class MethodBuilder
+{
+    private ClassFileBuilder owner;
+    private int access;
+    private String name;
+    private String descriptor;
+    
+    private ArrayList<Instruction> instructions;
+    private HashMap<String, Integer> labels;
+    private HashMap<Integer, VerificationType> localHints;
+    private int maxStack;
+    private int maxLocals;
+    private int[] offsets;  // the byte offset of each instruction, once the code has been laid out
+    
+    public MethodBuilder(ClassFileBuilder owner, int access, String name, String descriptor)
+    {
+        this.owner = owner;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        
+        instructions = new ArrayList<>();
+        labels = new HashMap<>();
+        localHints = new HashMap<>();
+        maxStack = -1;
+        maxLocals = -1;
+        
+        Descriptor.argumentTypes(descriptor);
+        Descriptor.returnType(descriptor);
+    }
+    
+    public String getName()
+    {
+        return name;
+    }
+    
+    public void addInstruction(Instruction insn)
+    {
+        instructions.add(insn);
+    }
+    
+    public void addLabel(String label)
+    {
+        if(labels.containsKey(label))
+            throw new IllegalArgumentException("label " + label + " is already defined");
+        
+        labels.put(label, instructions.size());
+    }
+    
+    /**
+     * Records the declared type of a local variable.
+     */
+    public void declareLocal(int slot, String typeDescriptor)
+    {
+        localHints.put(slot, VerificationType.forDescriptor(typeDescriptor));
+    }
+    
+    public void setMaxStack(int maxStack)
+    {
+        this.maxStack = maxStack;
+    }
+    
+    public void setMaxLocals(int maxLocals)
+    {
+        this.maxLocals = maxLocals;
+    }
+    
+    public void write(DataOutputStream out, ConstantPool pool) throws IOException
+    {
+        out.writeShort(access);
+        out.writeShort(pool.addUtf8(name));
+        out.writeShort(pool.addUtf8(descriptor));
+        
+        if((access & AccessFlags.ABSTRACT) != 0)
+        {
+            out.writeShort(0);
+            return;
+        }
+        
+        out.writeShort(1);
+        
+        byte[] code = encodeCode(pool);
+        out.writeShort(pool.addUtf8("Code"));
+        out.writeInt(code.length);
+        out.write(code);
+    }
+    
+    private byte[] encodeCode(ConstantPool pool) throws IOException
+    {
+        int[] constants = new int[instructions.size()];
+        offsets = new int[instructions.size() + 1];
+        
+        //resolve the constants first, because the size of ldc depends on the constant's index
+        for(int i = 0; i < instructions.size(); i++)
+        {
+            constants[i] = resolve(instructions.get(i), pool);
+            offsets[i + 1] = offsets[i] + size(instructions.get(i), constants[i]);
+        }
+        
+        int codeLength = offsets[instructions.size()];
+        if(codeLength == 0 || codeLength > 0xFFFF)
+            throw new IllegalStateException("method " + name + " has " + codeLength + " bytes of code");
+        
+        FrameComputer frameComputer = new FrameComputer(owner.getClassName(), instructions, labels, offsets, localHints);
+        try
+        {
+            frameComputer.compute((access & AccessFlags.STATIC) != 0, name, descriptor);
+        } catch (FrameComputer.TypeException e)
+        {
+            //Jasmin doesn't type check either: write the method as it is and let the JVM reject it when it's loaded
+            owner.addWarning("method " + name + ": " + e.getMessage());
+            return encodeUnverified(constants, codeLength);
+        }
+        
+        //a frame goes at every branch target, and at every stretch of dead code (which gets replaced by nop ... athrow)
+        TreeMap<Integer, FrameComputer.Frame> frames = new TreeMap<>();
+        for(Instruction insn : instructions)
+        {
+            if(insn.opcode.isBranch())
+            {
+                int target = labels.get(insn.label);
+                frames.put(offsets[target], frameComputer.getFrame(target));
+            }
+        }
+        
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+        
+        for(int i = 0; i < instructions.size(); i++)
+        {
+            if(frameComputer.isReachable(i))
+            {
+                encode(instructions.get(i), constants[i], offsets[i], code);
+                continue;
+            }
+            
+            int start = i;
+            while(i + 1 < instructions.size() && !frameComputer.isReachable(i + 1))
+                i++;
+            
+            for(int offset = offsets[start]; offset < offsets[i + 1] - 1; offset++)
+                code.writeByte(Opcode.NOP.code);
+            code.writeByte(Opcode.ATHROW.code);
+            
+            FrameComputer.Frame deadFrame = new FrameComputer.Frame();
+            deadFrame.stack.add(VerificationType.object("java/lang/Throwable"));
+            frames.put(offsets[start], deadFrame);
+        }
+        
+        ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(attributeBytes);
+        
+        out.writeShort((maxStack >= 0)? maxStack : frameComputer.getMaxStack());
+        out.writeShort((maxLocals >= 0)? maxLocals : frameComputer.getMaxLocals());
+        out.writeInt(codeLength);
+        out.write(codeBytes.toByteArray());
+        out.writeShort(0);  // no exception handlers
+        
+        if(frames.isEmpty())
+            out.writeShort(0);
+        else
+        {
+            out.writeShort(1);
+            writeStackMapTable(frames, out, pool);
+        }
+        
+        return attributeBytes.toByteArray();
+    }
+    
+    /**
+     * Encodes code that doesn't type check, without a StackMapTable.
+     */
+    private byte[] encodeUnverified(int[] constants, int codeLength) throws IOException
+    {
+        ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(attributeBytes);
+        
+        out.writeShort((maxStack >= 0)? maxStack : 0xFFFF);
+        out.writeShort((maxLocals >= 0)? maxLocals : 0xFFFF);
+        out.writeInt(codeLength);
+        for(int i = 0; i < instructions.size(); i++)
+            encode(instructions.get(i), constants[i], offsets[i], out);
+        out.writeShort(0);  // no exception handlers
+        out.writeShort(0);  // no attributes
+        
+        return attributeBytes.toByteArray();
+    }
+    
+    private void writeStackMapTable(TreeMap<Integer, FrameComputer.Frame> frames, DataOutputStream out, ConstantPool pool) throws IOException
+    {
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream table = new DataOutputStream(tableBytes);
+        
+        table.writeShort(frames.size());
+        int previous = -1;
+        
+        for(Integer offset : frames.keySet())
+        {
+            FrameComputer.Frame frame = frames.get(offset);
+            
+            table.writeByte(255);  // full_frame
+            table.writeShort(offset - previous - 1);
+            writeTypes(frame.getLocalEntries(), table, pool);
+            writeTypes(frame.getStackEntries(), table, pool);
+            
+            previous = offset;
+        }
+        
+        out.writeShort(pool.addUtf8("StackMapTable"));
+        out.writeInt(tableBytes.size());
+        out.write(tableBytes.toByteArray());
+    }
+    
+    private static void writeTypes(List<VerificationType> types, DataOutputStream out, ConstantPool pool) throws IOException
+    {
+        out.writeShort(types.size());
+        for(VerificationType type : types)
+            type.write(out, pool);
+    }
+    
+    private int resolve(Instruction insn, ConstantPool pool)
+    {
+        switch(insn.opcode.operand)
+        {
+            case CONSTANT:
+                Object constant = insn.constant;
+                boolean twoWords = constant instanceof Long || constant instanceof Double;
+                if(twoWords != (insn.opcode == Opcode.LDC2_W))
+                    throw new IllegalArgumentException("wrong kind of constant for " + insn.opcode);
+                
+                if(constant instanceof Integer)
+                    return pool.addInteger((Integer) constant);
+                if(constant instanceof Float)
+                    return pool.addFloat((Float) constant);
+                if(constant instanceof Long)
+                    return pool.addLong((Long) constant);
+                if(constant instanceof Double)
+                    return pool.addDouble((Double) constant);
+                return pool.addString((String) constant);
+            case CLASS:
+                return pool.addClass(insn.owner);
+            case FIELD:
+                return pool.addFieldRef(insn.owner, insn.name, insn.descriptor);
+            case METHOD:
+                return pool.addMethodRef(insn.owner, insn.name, insn.descriptor);
+            case INTERFACE_METHOD:
+                return pool.addInterfaceMethodRef(insn.owner, insn.name, insn.descriptor);
+            case DYNAMIC:
+                return pool.addInvokeDynamic(owner.addBootstrapMethod(insn), insn.name, insn.descriptor);
+            case LOCAL:
+            case IINC:
+                if(insn.operand < 0 || insn.operand > 0xFFFF)
+                    throw new IllegalArgumentException("bad local variable " + insn.operand);
+                return 0;
+            case BYTE:
+                if(insn.operand < Byte.MIN_VALUE || insn.operand > Byte.MAX_VALUE)
+                    throw new IllegalArgumentException(insn.operand + " doesn't fit in a byte");
+                return 0;
+            case SHORT:
+                if(insn.operand < Short.MIN_VALUE || insn.operand > Short.MAX_VALUE)
+                    throw new IllegalArgumentException(insn.operand + " doesn't fit in a short");
+                return 0;
+            case BRANCH:
+                if(!labels.containsKey(insn.label))
+                    throw new IllegalArgumentException("undefined label " + insn.label);
+                return 0;
+            default:
+                return 0;
+        }
+    }
+    
+    private static int size(Instruction insn, int constant)
+    {
+        switch(insn.opcode.operand)
+        {
+            case BYTE:
+                return 2;
+            case LOCAL:
+                return (insn.operand > 0xFF)? 4 : 2;
+            case IINC:
+                return (insn.operand > 0xFF || insn.increment < Byte.MIN_VALUE || insn.increment > Byte.MAX_VALUE)? 6 : 3;
+            case CONSTANT:
+                return (insn.opcode == Opcode.LDC && constant <= 0xFF)? 2 : 3;
+            case SHORT:
+            case BRANCH:
+            case FIELD:
+            case METHOD:
+            case CLASS:
+                return 3;
+            case INTERFACE_METHOD:
+            case DYNAMIC:
+                return 5;
+            default:
+                return 1;
+        }
+    }
+    
+    private void encode(Instruction insn, int constant, int offset, DataOutputStream code) throws IOException
+    {
+        switch(insn.opcode.operand)
+        {
+            case BYTE:
+                code.writeByte(insn.opcode.code);
+                code.writeByte(insn.operand);
+                break;
+            case SHORT:
+                code.writeByte(insn.opcode.code);
+                code.writeShort(insn.operand);
+                break;
+            case LOCAL:
+                if(insn.operand > 0xFF)
+                {
+                    code.writeByte(Opcode.WIDE);
+                    code.writeByte(insn.opcode.code);
+                    code.writeShort(insn.operand);
+                }
+                else
+                {
+                    code.writeByte(insn.opcode.code);
+                    code.writeByte(insn.operand);
+                }
+                break;
+            case IINC:
+                if(size(insn, constant) == 6)
+                {
+                    code.writeByte(Opcode.WIDE);
+                    code.writeByte(insn.opcode.code);
+                    code.writeShort(insn.operand);
+                    code.writeShort(insn.increment);
+                }
+                else
+                {
+                    code.writeByte(insn.opcode.code);
+                    code.writeByte(insn.operand);
+                    code.writeByte(insn.increment);
+                }
+                break;
+            case CONSTANT:
+                if(insn.opcode == Opcode.LDC && constant <= 0xFF)
+                {
+                    code.writeByte(Opcode.LDC.code);
+                    code.writeByte(constant);
+                }
+                else
+                {
+                    code.writeByte((insn.opcode == Opcode.LDC)? Opcode.LDC_W.code : insn.opcode.code);
+                    code.writeShort(constant);
+                }
+                break;
+            case BRANCH:
+                int target = labelOffset(insn.label) - offset;
+                if(target < Short.MIN_VALUE || target > Short.MAX_VALUE)
+                    throw new IllegalStateException("branch to " + insn.label + " is too far");
+                code.writeByte(insn.opcode.code);
+                code.writeShort(target);
+                break;
+            case FIELD:
+            case METHOD:
+            case CLASS:
+                code.writeByte(insn.opcode.code);
+                code.writeShort(constant);
+                break;
+            case INTERFACE_METHOD:
+                code.writeByte(insn.opcode.code);
+                code.writeShort(constant);
+                code.writeByte(Descriptor.argumentSize(insn.descriptor) + 1);
+                code.writeByte(0);
+                break;
+            case DYNAMIC:
+                code.writeByte(insn.opcode.code);
+                code.writeShort(constant);
+                code.writeShort(0);
+                break;
+            default:
+                code.writeByte(insn.opcode.code);
+        }
+    }
+    
+    private int labelOffset(String label)
+    {
+        return offsets[labels.get(label)];
+    }
+}
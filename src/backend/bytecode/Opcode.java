@@ -0,0 +1,128 @@
+package backend.bytecode;
+
+import java.util.HashMap;
+
+/**
+ * <h1>Opcode</h1>
+ *
+ * <p>The JVM instructions the direct bytecode backend understands, with their
+ * Jasmin mnemonics, opcode values and operand formats.</p>
+ */
+public enum Opcode
+{
+    NOP(0), ACONST_NULL(1),
+    ICONST_M1(2), ICONST_0(3), ICONST_1(4), ICONST_2(5), ICONST_3(6), ICONST_4(7), ICONST_5(8),
+    LCONST_0(9), LCONST_1(10), FCONST_0(11), FCONST_1(12), FCONST_2(13), DCONST_0(14), DCONST_1(15),
+    BIPUSH(16, Operand.BYTE), SIPUSH(17, Operand.SHORT),
+    LDC(18, Operand.CONSTANT), LDC_W(19, Operand.CONSTANT), LDC2_W(20, Operand.CONSTANT),
+    
+    ILOAD(21, Operand.LOCAL), LLOAD(22, Operand.LOCAL), FLOAD(23, Operand.LOCAL), DLOAD(24, Operand.LOCAL), ALOAD(25, Operand.LOCAL),
+    ILOAD_0(26), ILOAD_1(27), ILOAD_2(28), ILOAD_3(29),
+    LLOAD_0(30), LLOAD_1(31), LLOAD_2(32), LLOAD_3(33),
+    FLOAD_0(34), FLOAD_1(35), FLOAD_2(36), FLOAD_3(37),
+    DLOAD_0(38), DLOAD_1(39), DLOAD_2(40), DLOAD_3(41),
+    ALOAD_0(42), ALOAD_1(43), ALOAD_2(44), ALOAD_3(45),
+    IALOAD(46), LALOAD(47), FALOAD(48), DALOAD(49), AALOAD(50), BALOAD(51), CALOAD(52), SALOAD(53),
+    
+    ISTORE(54, Operand.LOCAL), LSTORE(55, Operand.LOCAL), FSTORE(56, Operand.LOCAL), DSTORE(57, Operand.LOCAL), ASTORE(58, Operand.LOCAL),
+    ISTORE_0(59), ISTORE_1(60), ISTORE_2(61), ISTORE_3(62),
+    LSTORE_0(63), LSTORE_1(64), LSTORE_2(65), LSTORE_3(66),
+    FSTORE_0(67), FSTORE_1(68), FSTORE_2(69), FSTORE_3(70),
+    DSTORE_0(71), DSTORE_1(72), DSTORE_2(73), DSTORE_3(74),
+    ASTORE_0(75), ASTORE_1(76), ASTORE_2(77), ASTORE_3(78),
+    IASTORE(79), LASTORE(80), FASTORE(81), DASTORE(82), AASTORE(83), BASTORE(84), CASTORE(85), SASTORE(86),
+    
+    POP(87), POP2(88), DUP(89), DUP_X1(90), DUP_X2(91), DUP2(92), DUP2_X1(93), DUP2_X2(94), SWAP(95),
+    
+    IADD(96), LADD(97), FADD(98), DADD(99),
+    ISUB(100), LSUB(101), FSUB(102), DSUB(103),
+    IMUL(104), LMUL(105), FMUL(106), DMUL(107),
+    IDIV(108), LDIV(109), FDIV(110), DDIV(111),
+    IREM(112), LREM(113), FREM(114), DREM(115),
+    INEG(116), LNEG(117), FNEG(118), DNEG(119),
+    ISHL(120), LSHL(121), ISHR(122), LSHR(123), IUSHR(124), LUSHR(125),
+    IAND(126), LAND(127), IOR(128), LOR(129), IXOR(130), LXOR(131),
+    IINC(132, Operand.IINC),
+    
+    I2L(133), I2F(134), I2D(135), L2I(136), L2F(137), L2D(138), F2I(139), F2L(140), F2D(141), D2I(142), D2L(143), D2F(144),
+    LCMP(148), FCMPL(149), FCMPG(150), DCMPL(151), DCMPG(152),
+    
+    IFEQ(153, Operand.BRANCH), IFNE(154, Operand.BRANCH), IFLT(155, Operand.BRANCH), IFGE(156, Operand.BRANCH),
+    IFGT(157, Operand.BRANCH), IFLE(158, Operand.BRANCH),
+    IF_ICMPEQ(159, Operand.BRANCH), IF_ICMPNE(160, Operand.BRANCH), IF_ICMPLT(161, Operand.BRANCH),
+    IF_ICMPGE(162, Operand.BRANCH), IF_ICMPGT(163, Operand.BRANCH), IF_ICMPLE(164, Operand.BRANCH),
+    IF_ACMPEQ(165, Operand.BRANCH), IF_ACMPNE(166, Operand.BRANCH),
+    GOTO(167, Operand.BRANCH),
+    
+    IRETURN(172), LRETURN(173), FRETURN(174), DRETURN(175), ARETURN(176), RETURN(177),
+    
+    GETSTATIC(178, Operand.FIELD), PUTSTATIC(179, Operand.FIELD), GETFIELD(180, Operand.FIELD), PUTFIELD(181, Operand.FIELD),
+    INVOKEVIRTUAL(182, Operand.METHOD), INVOKESPECIAL(183, Operand.METHOD), INVOKESTATIC(184, Operand.METHOD),
+    INVOKEINTERFACE(185, Operand.INTERFACE_METHOD), INVOKEDYNAMIC(186, Operand.DYNAMIC),
+    
+    NEW(187, Operand.CLASS), ANEWARRAY(189, Operand.CLASS), ARRAYLENGTH(190), ATHROW(191), CHECKCAST(192, Operand.CLASS), INSTANCEOF(193, Operand.CLASS),
+    IFNULL(198, Operand.BRANCH), IFNONNULL(199, Operand.BRANCH);
+    
+    public enum Operand
+    {
+        NONE, BYTE, SHORT, CONSTANT, LOCAL, IINC, BRANCH, FIELD, METHOD, INTERFACE_METHOD, DYNAMIC, CLASS;
+    }
+    
+    public static int WIDE = 196;
+    
+    private static HashMap<String, Opcode> mnemonics = new HashMap<>();
+    
+    static
+    {
+        for(Opcode op : values())
+            mnemonics.put(op.mnemonic, op);
+    }
+    
+    public final int code;
+    public final Operand operand;
+    public final String mnemonic;
+    
+    Opcode(int code)
+    {
+        this(code, Operand.NONE);
+    }
+    
+    Opcode(int code, Operand operand)
+    {
+        this.code = code;
+        this.operand = operand;
+        this.mnemonic = name().toLowerCase();
+    }
+    
+    /**
+     * @param mnemonic the Jasmin mnemonic, e.g. "invokevirtual".
+     * @return the opcode, or null if the backend doesn't know the instruction.
+     */
+    public static Opcode forMnemonic(String mnemonic)
+    {
+        return mnemonics.get(mnemonic);
+    }
+    
+    public boolean isBranch()
+    {
+        return operand == Operand.BRANCH;
+    }
+    
+    /**
+     * @return true if execution never falls through to the next instruction.
+     */
+    public boolean isUnconditional()
+    {
+        return this == GOTO || this == ATHROW || isReturn();
+    }
+    
+    public boolean isReturn()
+    {
+        return code >= IRETURN.code && code <= RETURN.code;
+    }
+    
+    public String toString()
+    {
+        return mnemonic;
+    }
+}
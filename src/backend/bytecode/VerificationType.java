@@ -0,0 +1,173 @@
+package backend.bytecode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <h1>VerificationType</h1>
+ *
+ * <p>The type of a local variable or operand stack slot, as the JVM verifier sees it.
+ * These are the entries of a StackMapTable frame.</p>
+ */
+public class VerificationType
+{
+    private static final int TOP_TAG = 0;
+    private static final int INTEGER_TAG = 1;
+    private static final int FLOAT_TAG = 2;
+    private static final int DOUBLE_TAG = 3;
+    private static final int LONG_TAG = 4;
+    private static final int NULL_TAG = 5;
+    private static final int UNINITIALIZED_THIS_TAG = 6;
+    private static final int OBJECT_TAG = 7;
+    private static final int UNINITIALIZED_TAG = 8;
+    
+    public static final VerificationType TOP = new VerificationType(TOP_TAG, null, -1);
+    public static final VerificationType INTEGER = new VerificationType(INTEGER_TAG, null, -1);
+    public static final VerificationType FLOAT = new VerificationType(FLOAT_TAG, null, -1);
+    public static final VerificationType DOUBLE = new VerificationType(DOUBLE_TAG, null, -1);
+    public static final VerificationType LONG = new VerificationType(LONG_TAG, null, -1);
+    public static final VerificationType NULL = new VerificationType(NULL_TAG, null, -1);
+    public static final VerificationType UNINITIALIZED_THIS = new VerificationType(UNINITIALIZED_THIS_TAG, null, -1);
+    
+    public static final String OBJECT_CLASS = "java/lang/Object";
+    
+    private int tag;
+    private String className;  // the internal name of an object type (or the class being created for an uninitialized one)
+    private int offset;        // the offset of the 'new' instruction that created an uninitialized object
+    
+    private VerificationType(int tag, String className, int offset)
+    {
+        this.tag = tag;
+        this.className = className;
+        this.offset = offset;
+    }
+    
+    public static VerificationType object(String internalName)
+    {
+        return new VerificationType(OBJECT_TAG, internalName, -1);
+    }
+    
+    public static VerificationType uninitialized(String internalName, int offset)
+    {
+        return new VerificationType(UNINITIALIZED_TAG, internalName, offset);
+    }
+    
+    /**
+     * @param descriptor a field descriptor, e.g. "I" or "Llibrary/integer;".
+     * @return the type of a value with that descriptor once it's on the stack or in a local.
+     */
+    public static VerificationType forDescriptor(String descriptor)
+    {
+        switch(descriptor.charAt(0))
+        {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                return INTEGER;
+            case 'F':
+                return FLOAT;
+            case 'J':
+                return LONG;
+            case 'D':
+                return DOUBLE;
+            case 'L':
+                if(!descriptor.endsWith(";"))
+                    break;
+                return object(descriptor.substring(1, descriptor.length() - 1));
+            case '[':
+                return object(descriptor);
+        }
+        
+        throw new IllegalArgumentException("malformed descriptor '" + descriptor + "'");
+    }
+    
+    public boolean isTwoWords()
+    {
+        return tag == DOUBLE_TAG || tag == LONG_TAG;
+    }
+    
+    public int size()
+    {
+        return isTwoWords()? 2 : 1;
+    }
+    
+    public boolean isReference()
+    {
+        return tag == OBJECT_TAG || tag == NULL_TAG || tag == UNINITIALIZED_TAG || tag == UNINITIALIZED_THIS_TAG;
+    }
+    
+    public boolean isUninitialized()
+    {
+        return tag == UNINITIALIZED_TAG || tag == UNINITIALIZED_THIS_TAG;
+    }
+    
+    public String getClassName()
+    {
+        return className;
+    }
+    
+    /**
+     * Finds a type that both this and another type can be assigned to.
+     * @param other the other type.
+     * @param hint the type to use when two different object types meet, since the class hierarchy isn't known here.
+     * @return the merged type.
+     */
+    public VerificationType merge(VerificationType other, VerificationType hint)
+    {
+        if(this.equals(other))
+            return this;
+        
+        if(this.tag == NULL_TAG && other.tag == OBJECT_TAG)
+            return other;
+        if(other.tag == NULL_TAG && this.tag == OBJECT_TAG)
+            return this;
+        
+        if(this.tag == OBJECT_TAG && other.tag == OBJECT_TAG)
+            return (hint != null && hint.tag == OBJECT_TAG)? hint : object(OBJECT_CLASS);
+        
+        return TOP;
+    }
+    
+    public void write(DataOutputStream out, ConstantPool pool) throws IOException
+    {
+        out.writeByte(tag);
+        
+        if(tag == OBJECT_TAG)
+            out.writeShort(pool.addClass(className));
+        else if(tag == UNINITIALIZED_TAG)
+            out.writeShort(offset);
+    }
+    
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o)
+            return true;
+        if(o == null || getClass() != o.getClass())
+            return false;
+        
+        VerificationType other = (VerificationType) o;
+        return tag == other.tag && offset == other.offset && (className == null? other.className == null : className.equals(other.className));
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return tag * 31 + offset + ((className == null)? 0 : className.hashCode());
+    }
+    
+    @Override
+    public String toString()
+    {
+        switch(tag)
+        {
+            case TOP_TAG: return "top";
+            case INTEGER_TAG: return "int";
+            case FLOAT_TAG: return "float";
+            case DOUBLE_TAG: return "double";
+            case LONG_TAG: return "long";
+            case NULL_TAG: return "null";
+            case UNINITIALIZED_THIS_TAG: return "uninitializedThis";
+            case UNINITIALIZED_TAG: return "uninitialized(" + className + "@" + offset + ")";
+            default: return className;
+        }
+    }
+}
@@ -1,53 +1,97 @@
 package backend.compiler;
 
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import antlr4.SixtyFortranParser;
+import backend.assembler.AssemblyReport;
+import backend.assembler.AssemblyResult;
+import backend.bytecode.ClassFileBuilder;
+import backend.bytecode.Instruction;
+import backend.bytecode.MethodBuilder;
+import backend.bytecode.Opcode;
+import backend.optimizer.MethodLimits;
+import backend.optimizer.PeepholeOptimizer;
 import backend.semantics.FileSpec;
+import intermediate.CompilationContext;
 import intermediate.Kind;
 import intermediate.Predefined;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
 import intermediate.scope.Scope;
 import intermediate.scope.ScopeEntry;
 import intermediate.type.ArgumentList;
 import intermediate.type.RoutineSpec;
 import intermediate.type.TypeSpec;
 
+import static backend.bytecode.Opcode.*;
 import static backend.compiler.Directive.*;
 
 public class CodeGenerator
 {
-    private static String STACK_LIMIT = "16";
-    
     private FileSpec currentFile;
     private Scope localScope;
-    private PrintWriter objectFile;
+    private Predefined predefined;
+    private PrintStream out;
+    
+    //only used when emitting class files directly, keyed by the name the Jasmin file would have had
+    private LinkedHashMap<String, ClassFileBuilder> classFiles;
+    private ClassFileBuilder classFile;
+    
+    //the peephole optimizer (null when it is off), and the method being emitted in each file
+    private PeepholeOptimizer optimizer;
+    private HashMap<FileSpec, IrMethod> methods;
+    
+    //the literals each class creates once and shares, by the type and instruction that pushes their value
+    private LinkedHashMap<FileSpec, LinkedHashMap<String, Literal>> literals;
     
-    public CodeGenerator()
+    public CodeGenerator(CompilationContext context)
+    {
+        this(context, false);
+    }
+    
+    /**
+     * @param bytecode whether to build the class files directly instead of writing Jasmin files.
+     */
+    public CodeGenerator(CompilationContext context, boolean bytecode)
     {
         currentFile = null;
-        objectFile = null;
         localScope = null;
+        predefined = context.predefined;
+        out = context.out;
+        
+        classFiles = (bytecode)? new LinkedHashMap<>() : null;
+        classFile = null;
+        
+        optimizer = (context.peephole)? PeepholeOptimizer.standard() : null;
+        methods = new HashMap<>();
+        literals = new LinkedHashMap<>();
+    }
+    
+    /**
+     * @return the peephole optimizer that rewrites each method before it is written, or null if it is off.
+     */
+    public PeepholeOptimizer getOptimizer()
+    {
+        return optimizer;
     }
     
     public void setCurrentFile(FileSpec file)
     {
-        if(objectFile != null)
-            objectFile.close();
-
         currentFile = file;
-        try
-        {
-            objectFile = new PrintWriter(new FileWriter(currentFile.getFullName(), true));
-        } catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        
+        if(classFiles != null)
+            classFile = classFiles.computeIfAbsent(file.getFullName(), name -> new ClassFileBuilder());
     }
     
     public void setCurrentScope(Scope scope)
@@ -55,17 +99,65 @@ public class CodeGenerator
         localScope = scope;
     }
     
-    public void close()
+    /**
+     * Writes every class built since the generator was created (only when emitting class files directly).
+     * @return the outcome for each file, in the same form as an assembly run.
+     */
+    public AssemblyReport writeClassFiles()
     {
-        if(objectFile != null)
-            objectFile.close();
+        AssemblyReport report = new AssemblyReport("built");
+        if(classFiles == null)
+            return report;
+        
+        for(Map.Entry<String, ClassFileBuilder> entry : classFiles.entrySet())
+        {
+            AssemblyResult result = new AssemblyResult(new File(entry.getKey()).getName());
+            ClassFileBuilder builder = entry.getValue();
+            
+            try
+            {
+                byte[] bytes = builder.toByteArray();
+                if(bytes == null)
+                {
+                    result.errorCount = builder.getErrors().size();
+                    for(String error : builder.getErrors())
+                        out.println(result.fileName + ":" + error);
+                }
+                else
+                {
+                    result.className = builder.getClassName();
+                    
+                    File classFileName = new File(result.className + ".class");
+                    if(classFileName.getParentFile() != null)
+                        classFileName.getParentFile().mkdirs();
+                    
+                    try (OutputStream out = new FileOutputStream(classFileName))
+                    {
+                        out.write(bytes);
+                    }
+                    
+                    for(String warning : builder.getWarnings())
+                        out.println(result.fileName + ": warning: " + warning);
+                }
+            } catch (IOException e)
+            {
+                result.message = e.getMessage();
+            }
+            
+            report.add(result);
+        }
+        
+        return report;
     }
     
     public void emitMainPrologue(String programName)
     {
         emitConstructor(programName, null);
         
-        emit(METHOD_PUBLIC_STATIC, "main([Ljava/lang/String;)V");
+        emitMethod(METHOD_PUBLIC_STATIC, "main", "([Ljava/lang/String;)V");
+        
+        //print buffers its output, which has to be written out however the program ends
+        emit(INVOKESTATIC, predefined.printType.getPath(), "flushAtExit", "()V");
     }
     
     public void emitConstructor(String className, String superClass)
@@ -80,16 +172,13 @@ public class CodeGenerator
         
         emit();
         
-        emit(METHOD_PUBLIC, "<init>()V");
-        emit(VAR, "0 is this L" + className + ";");
+        emitMethod(METHOD_PUBLIC, "<init>", "()V");
+        emitLocalVar(0, "this", "L" + className + ";");
         
         emitLoad(0);
-        emit("invokespecial java/lang/Object/<init>()V");
-        emit("return");
-        
-        emit(LIMIT_LOCALS,"1");
-        emit(LIMIT_STACK, "1");
-        emit(END_METHOD);
+        emit(INVOKESPECIAL, superclassName, "<init>", "()V");
+        emit(RETURN);
+        emitEndMethod();
         
         emit();
     }
@@ -97,7 +186,7 @@ public class CodeGenerator
     public void emitClass(TypeSpec type, String superClass, Scope scope)
     {
         emit(CLASS_PUBLIC, type.getPath());
-
+        
         String superclassName = "java/lang/Object";
         if(superClass != null)
             superclassName = superClass;
@@ -136,46 +225,30 @@ public class CodeGenerator
         emit();
         
         emitConstructorDefinition(type, superclassName);
-
+        
         emit();
     }
     
     public void emitRoutineFile(Set<RoutineSpec> routineSignatures)
     {
         emitConstructor(currentFile.getNameNoExtension(), null);
-
+        
         for(RoutineSpec routine: routineSignatures)
         {
             //emit(METHOD_PUBLIC, routine.name + "")
-            String methodSignature = routine.name + "("; 
-            
-            for(TypeSpec type : routine.arguments.argumentTypes)
-                methodSignature += "L" + type.getPath() + ";";
-            
-            methodSignature += ")";
-            
-            if(routine.returnType == null)
-                methodSignature += "V";
-            else
-                methodSignature += "L" + routine.returnType.getPath() + ";";
-            
-            emit(METHOD_PUBLIC, methodSignature);
+            emitMethod(METHOD_PUBLIC, routine.name, getRoutineDescriptor(routine));
             
             if(routine.returnType == null)
             {
-                emit("return");
-                emit(LIMIT_LOCALS, String.valueOf(1 + routine.arguments.argumentTypes.size()));
-                emit(LIMIT_STACK, "0");
+                emit(RETURN);
             }
             else
             {
-                emit("aconst_null");
-                emit("areturn");
-                emit(LIMIT_LOCALS, String.valueOf(1 + routine.arguments.argumentTypes.size()));
-                emit(LIMIT_STACK, "1");
+                emit(ACONST_NULL);
+                emit(ARETURN);
             }
             
-            emit(END_METHOD);
+            emitEndMethod();
             emit();
         }
     }
@@ -183,7 +256,7 @@ public class CodeGenerator
     public void emitClassStaticInitialization(SixtyFortranParser.TypeDefinitionContext ctx, Compiler compiler)
     {
         TypeSpec type = ctx.type;
-        emit(METHOD_PUBLIC_STATIC, "$staticInitialization()V");
+        emitMethod(METHOD_PUBLIC_STATIC, "$staticInitialization", "()V");
         
         //handles the normal routines
         for(SixtyFortranParser.RoutineDefinitionContext routineCtx: ctx.definitionBlock().routineBlock().routineDefinition())
@@ -197,8 +270,8 @@ public class CodeGenerator
                 ///print and read are special cases that are taken care of by this
                 String path = nonlocalEntry.type.getPath();
                 if(nonlocalEntry.type.name.equals(Predefined.ROUTINE))
-                    path = Predefined.routineType.getPath();
-                emit("putstatic " + type.getPath() + "$" + routineName + "/" + nonlocalEntry.name + " L" + path + ";" );
+                    path = predefined.routineType.getPath();
+                emit(PUTSTATIC, type.getPath() + "$" + routineName, nonlocalEntry.name, "L" + path + ";");
             }
             
             emit();
@@ -206,13 +279,16 @@ public class CodeGenerator
         
         for(SixtyFortranParser.StaticVarDefinitionContext varDef : ctx.definitionBlock().varBlock().staticVarDefinition())
         {
-            compiler.visit(varDef.expression());
-            for(int i = 0; i < varDef.varDeclaration().entries.size() - 1; i++)
-                emit("dup");
+            //each field gets its own object, like a variable
+            List<ScopeEntry> entries = varDef.varDeclaration().entries;
+            compiler.emitNewValue(varDef.expression(), entries.get(0).type);
             
-            for(ScopeEntry entry : varDef.varDeclaration().entries)
+            for(int i = 0; i < entries.size(); i++)
             {
-                emit("putstatic " + type.getPath() + "/" + entry.name + " L" + entry.type.getPath() + ";");
+                ScopeEntry entry = entries.get(i);
+                if(i > 0)
+                    compiler.emitOwnCopy(entries.get(0), entry.type);
+                emit(PUTSTATIC, type.getPath(), entry.name, "L" + entry.type.getPath() + ";");
             }
             
             emit();
@@ -238,46 +314,42 @@ public class CodeGenerator
                 //print and read are special cases that are taken care of by this
                 String path = nonlocalEntry.type.getPath();
                 if(nonlocalEntry.type.name.equals(Predefined.ROUTINE))
-                    path = Predefined.routineType.getPath();
-                emit("putstatic " + type.getPath() + "$" + routineName + "/" + nonlocalEntry.name + " L" + path + ";" );
+                    path = predefined.routineType.getPath();
+                emit(PUTSTATIC, type.getPath() + "$" + routineName, nonlocalEntry.name, "L" + path + ";");
             }
             
             emit();
         }
         
-        emit("return");
-        emit(LIMIT_LOCALS, "0");
-        emit(LIMIT_STACK, STACK_LIMIT); 
-        emit(END_METHOD);
+        emit(RETURN);
+        emitEndMethod();
     }
     
-    public void emitMainEpilogue(int numLocals)
+    public void emitMainEpilogue()
     {
-        emit("return");
-        emit(LIMIT_LOCALS, String.valueOf(numLocals));
-        emit(LIMIT_STACK, STACK_LIMIT);
-        emit(END_METHOD);
+        emit(RETURN);
+        emitEndMethod();
     }
     
     public void emitConstructorDefinition(TypeSpec type, String superclass)
     {
-        String methodSignature = "<init>(";
+        String descriptor = "(";
         
         //if the routine belongs to a type, then it will have a field called type. This will need to be passed to it's constructor. 
         ScopeEntry instance = type.lookupField("type");
         if(instance != null)
-            methodSignature += "L" + instance.type.getPath() + ";";
-            
-        methodSignature += ")V";
+            descriptor += "L" + instance.type.getPath() + ";";
+        
+        descriptor += ")V";
         
-        emit(METHOD_PUBLIC, methodSignature);
-        emit(VAR, "0 is this L" + type.getPath() + ";");
+        emitMethod(METHOD_PUBLIC, "<init>", descriptor);
+        emitLocalVar(0, "this", "L" + type.getPath() + ";");
         
         //we don't technically have to declare what each var is
         
         //creates the "this" object
         emitLoad(0);
-        emit("invokespecial " + superclass + "/<init>()V");
+        emit(INVOKESPECIAL, superclass, "<init>", "()V");
         emit();
         
         //if there is a type parameter to our routine, then this assigns the parameter to the routine's type field
@@ -285,10 +357,10 @@ public class CodeGenerator
         {
             emitLoad(0); 
             emitLoad(1); 
-            emit("putfield " + type.getPath() + "/type L" + instance.type.getPath() + ";");
+            emit(PUTFIELD, type.getPath(), "type", "L" + instance.type.getPath() + ";");
             emit();
         }
-           
+        
         for(ScopeEntry routineEntry: type.getRoutines() )
         {
             //TODO: we currently have to include because routines currently have a field with the same name as themselves (haven't fixed yet) and then they try to emit the constructor
@@ -306,15 +378,12 @@ public class CodeGenerator
             if(!field.name.equals("type"))
                 emitFieldInitialization(field, type);
         }
-        emit("return");
-        
-        emit(LIMIT_LOCALS, String.valueOf(1 +  type.getFields().size() + type.getRoutines().size()));
-        emit(LIMIT_STACK, STACK_LIMIT);
-        emit(END_METHOD);
+        emit(RETURN);
+        emitEndMethod();
     }
-    public void emitLocalVars(Scope scope)
+    public void emitLocalVars(Collection<ScopeEntry> entries)
     {
-        for(ScopeEntry entry: scope.getEntries())
+        for(ScopeEntry entry: entries)
         {
             emitLocalVar(entry);
         }
@@ -323,7 +392,7 @@ public class CodeGenerator
     
     public void emitLocalVars(Scope scope, RoutineSpec routine)
     {
-        emitLocalVars(scope);
+        emitLocalVars(scope.getEntries());
         ScopeEntry returnEntry = new ScopeEntry(routine.name, routine.returnType);
         returnEntry.slotNumber = scope.getNumLocals();
         emitLocalVar(returnEntry);
@@ -342,32 +411,29 @@ public class CodeGenerator
         Directive dir = (isStatic)? FIELD_STATIC : FIELD;
         
         if(entry.type.name.equals(Predefined.ROUTINE))
-            emit(dir, entry.name + " L" + Predefined.routineType.getPath() + ";");
+            emit(dir, entry.name, "L" + predefined.routineType.getPath() + ";");
         else
-            emit(dir, entry.name + " L" + entry.type.getPath() + ";");
+            emit(dir, entry.name, "L" + entry.type.getPath() + ";");
     }
     
     public void emitStaticFieldInitialization(ScopeEntry entry)
     {
-        emit("new " + entry.type.getPath());
-        emit("dup");
-        emit("invokespecial " + entry.type.getPath() + "/<init>()V");
+        emit(NEW, entry.type.getPath());
+        emit(DUP);
+        emit(INVOKESPECIAL, entry.type.getPath(), "<init>", "()V");
         
         String path = entry.type.getPath();
         if(entry.type.name.equals(Predefined.ROUTINE))
-            path = Predefined.routineType.getPath();
-        emit("putstatic " + currentFile.getNameNoExtension() + "/" + entry.name + " L" + path + ";");
+            path = predefined.routineType.getPath();
+        emit(PUTSTATIC, currentFile.getNameNoExtension(), entry.name, "L" + path + ";");
     }
     
     public void emitVariableDec(ScopeEntry entry)
     {
         emitConstructorCall(entry, null);
         
-        if(localScope.getKind() == Kind.MAIN || localScope.getKind() == Kind.STATIC_FIELD)
-            emit("astore " + entry.slotNumber);
-        else
-            //need to increment slot number to account for "this" field in methods
-            emit("astore " + (entry.slotNumber + 1));
+        //the routine header has already moved the routine's variables past the "this" slot
+        emitStoreEntry(entry);
     }
     
     public void emitFieldInitialization(ScopeEntry entry, TypeSpec type)
@@ -378,52 +444,48 @@ public class CodeGenerator
         //routines are stored as a 'routine' object
         String path = entry.type.getPath();
         if(entry.type.name.equals(Predefined.ROUTINE))
-            path = Predefined.routineType.getPath();
+            path = predefined.routineType.getPath();
         
-        emit("putfield " + type.getPath() + "/" + entry.name + " L" + path + ";");
+        emit(PUTFIELD, type.getPath(), entry.name, "L" + path + ";");
         emit();
     }
     
     public void emitStaticInitializer(ScopeEntry entry, List<ScopeEntry> entries)
     {
-        emit("new " + entry.type.getPath());
-        emit("dup");
+        emit(NEW, entry.type.getPath());
+        emit(DUP);
         for(ScopeEntry arg : entries)
             emitLoad(arg.slotNumber);
         
-        String methodSignature = "invokespecial " + entry.type.getPath() + "/<init>(";
+        String descriptor = "(";
         for(int i = 0; i < entries.size(); i++)
-            methodSignature += entries.get(i).type.getPath() + ";";
-        methodSignature = ")V";
-        emit(methodSignature);
-        emit("putstatic " + currentFile.getNameNoExtension() + "/" + entry.name + " L" + entry.type.getPath() + ";");
+            descriptor += entries.get(i).type.getPath() + ";";
+        descriptor = ")V";
+        emit(INVOKESPECIAL, entry.type.getPath(), "<init>", descriptor);
+        emit(PUTSTATIC, currentFile.getNameNoExtension(), entry.name, "L" + entry.type.getPath() + ";");
     }
     
     public void emitConstructorCall(ScopeEntry entry, TypeSpec instanceType)
     {
-        emit("new " + entry.type.getPath());
-        emit("dup");
+        emit(NEW, entry.type.getPath());
+        emit(DUP);
         //2 cases: emit a constructor for a normal type (which requires no parameters) or emit a constructor for a routine field, which takes one parameter (the object the routine belongs to)
         if(instanceType != null && entry.type.name.equals(Predefined.ROUTINE))
             emitLoad(0);
         
-        String methodSignature = "invokespecial " + entry.type.getPath() + "/<init>(";
-
+        String descriptor = "(";
+        
         if(instanceType != null && entry.type.name.equals(Predefined.ROUTINE))
-            methodSignature += "L" + instanceType.getPath() + ";";
+            descriptor += "L" + instanceType.getPath() + ";";
         
-        methodSignature += ")V";
-        emit(methodSignature);
+        descriptor += ")V";
+        emit(INVOKESPECIAL, entry.type.getPath(), "<init>", descriptor);
     }
     
     public void emitRoutineHeader(SixtyFortranParser.RoutineDefinitionContext ctx, ScopeEntry routineEntry)
     {
-        String signature = Predefined.OPERATOR_PAREN + "(";
-        for(TypeSpec arg: ctx.routine.arguments.argumentTypes)
-            signature += "L" + arg.getPath() + ";";
-        signature += ")" + ((ctx.routine.returnType == null)? "V" : "V" + ctx.routine.returnType.getPath() + ";");
-        emit(METHOD_PUBLIC, signature);
-        emit(VAR, "0 is this L" + routineEntry.type.getPath() + ";");
+        emitMethod(METHOD_PUBLIC, Predefined.OPERATOR_PAREN, getRoutineDescriptor(ctx.routine));
+        emitLocalVar(0, "this", "L" + routineEntry.type.getPath() + ";");
         
         for(ScopeEntry entry : ctx.routineScope.getEntries())
         {
@@ -435,44 +497,72 @@ public class CodeGenerator
         }
     }
     
+    /**
+     * Emits a routine that captures nothing as a static method of the program's class, whose parameters start at slot 0.
+     */
+    public void emitStaticRoutineHeader(SixtyFortranParser.RoutineDefinitionContext ctx)
+    {
+        emitMethod(METHOD_PUBLIC_STATIC, ctx.routine.name, getRoutineDescriptor(ctx.routine));
+        
+        for(ScopeEntry entry : ctx.routineScope.getEntries())
+        {
+            if(entry.kind == Kind.VARIABLE)
+                emitLocalVar(entry);
+        }
+    }
+    
+    public void emitStaticRoutineCall(String className, RoutineSpec routine)
+    {
+        emit(INVOKESTATIC, className, routine.name, getRoutineDescriptor(routine));
+    }
+    
+    private String getRoutineDescriptor(RoutineSpec routine)
+    {
+        String descriptor = "(";
+        for(TypeSpec arg: routine.arguments.argumentTypes)
+            descriptor += getObjectDescriptor(arg);
+        descriptor += ")" + ((routine.returnType == null)? "V" : getObjectDescriptor(routine.returnType));
+        
+        return descriptor;
+    }
+    
+    private String getObjectDescriptor(TypeSpec type)
+    {
+        //all routines are passed as a routine object, although they are actually a subclass of that object
+        if(type.name.equals(Predefined.ROUTINE))
+            return "L" + predefined.routineType.getPath() + ";";
+        
+        return "L" + type.getPath() + ";";
+    }
+    
     public void emitRoutineCloser(SixtyFortranParser.RoutineDefinitionContext ctx)
     {
         if(ctx.routine.returnType == null)
-            emit("return");
+            emit(RETURN);
         else
-            emit("areturn");
-
-        emit(LIMIT_LOCALS, String.valueOf(1 + ctx.routineScope.getNumLocals()));
-        emit(LIMIT_STACK, STACK_LIMIT);
-        emit(END_METHOD);
+            emit(ARETURN);
+        emitEndMethod();
     }
     
     public void emitRoutineCall(String routineName, TypeSpec t1, ArgumentList args, TypeSpec returnType, boolean isStatic)
     {
-        String routineCall;
-        
-        if(isStatic)
-            routineCall = "invokestatic ";
-        else
-            routineCall = "invokevirtual ";
-        
         if(t1.getPath() == Predefined.ROUTINE) //can use object equality because it may be the exact same object
-            t1.setPath(Predefined.routineType.getPath());
+            t1.setPath(predefined.routineType.getPath());
         
-        routineCall += t1.getPath() + "/" + routineName + "(";
+        String descriptor = "(";
         
         for(TypeSpec t: args.argumentTypes)
         {
-            routineCall += "L" + t.getPath() + ";";
+            descriptor += getObjectDescriptor(t);
         }
         
-        routineCall += ")";
+        descriptor += ")";
         if(returnType == null)
-            routineCall += "V";
+            descriptor += "V";
         else
-            routineCall += returnType.getPath() + ";";
+            descriptor += getObjectDescriptor(returnType);
         
-        emit(routineCall);
+        emit((isStatic)? INVOKESTATIC : INVOKEVIRTUAL, t1.getPath(), routineName, descriptor);
     }
     
     public void emitLoadEntry(ScopeEntry entry)
@@ -481,7 +571,7 @@ public class CodeGenerator
         
         //all routines are stored as a routine object, although they are actually a subclass of that object
         if(entry.type.name.equals(Predefined.ROUTINE))
-            path = Predefined.routineType.getPath();
+            path = predefined.routineType.getPath();
         
         if(entry.kind == Kind.VARIABLE) 
         {
@@ -489,15 +579,15 @@ public class CodeGenerator
         }
         else if(entry.kind == Kind.FIELD)
         {
-            emit("getfield " + entry.instanceType.getPath() + "/" + entry.name + " L" + path + ";");
+            emit(GETFIELD, entry.instanceType.getPath(), entry.name, "L" + path + ";");
         }
         else if(entry.kind == Kind.STATIC_FIELD)
         {
-            emit("getstatic " + entry.instanceType.getPath() + "/" + entry.name + " L" + path + ";");
+            emit(GETSTATIC, entry.instanceType.getPath(), entry.name, "L" + path + ";");
         }
         else if(entry.kind == Kind.NONLOCAL)
         {
-            emit("getstatic " + currentFile.getNameNoExtension() + "/" + entry.name + " L" + path + ";"); 
+            emit(GETSTATIC, currentFile.getNameNoExtension(), entry.name, "L" + path + ";"); 
         }
     }
     
@@ -507,7 +597,7 @@ public class CodeGenerator
         
         //all routines are stored as a routine object, although they are actually a subclass of that object
         if(entry.type.name.equals(Predefined.ROUTINE))
-            path = Predefined.routineType.getPath();
+            path = predefined.routineType.getPath();
         
         if(entry.kind == Kind.VARIABLE)
         {
@@ -515,15 +605,15 @@ public class CodeGenerator
         }
         else if(entry.kind == Kind.FIELD)
         {
-            emit("putfield " + currentFile.getNameNoExtension() + "/" + entry.name + " L" + path + ";");
+            emit(PUTFIELD, currentFile.getNameNoExtension(), entry.name, "L" + path + ";");
         }
         else if(entry.kind == Kind.STATIC_FIELD)
         {
-            emit("putstatic " + entry.instanceType.getPath() + "/" + entry.name + " L" + path + ";");
+            emit(PUTSTATIC, entry.instanceType.getPath(), entry.name, "L" + path + ";");
         }
         else if(entry.kind == Kind.NONLOCAL)
         {
-            emit("putstatic " + currentFile.getNameNoExtension() + "/" + entry.name + " L" + path + ";"); 
+            emit(PUTSTATIC, currentFile.getNameNoExtension(), entry.name, "L" + path + ";"); 
         }
     }
     
@@ -533,55 +623,493 @@ public class CodeGenerator
         
         //all routines are stored as a routine object, although they are actually a subclass of that object
         if(entry.type.name.equals(Predefined.ROUTINE))
-            path = Predefined.routineType.getPath();
+            path = predefined.routineType.getPath();
         
-        emit(VAR, String.valueOf(entry.slotNumber) + " is " + entry.name + " L" + path + ";");
+        emitLocalVar(entry.slotNumber, entry.name, "L" + path + ";");
+    }
+    
+    /**
+     * Declares a local variable of the method being emitted.
+     */
+    public void emitLocalVar(int slot, String name, String descriptor)
+    {
+        getMethod().declareLocal(slot, name, descriptor);
     }
     
     public void emitLoad(int slotNum)
     {
         //TODO: figure out shortcuts
-        emit("aload " + String.valueOf(slotNum));
+        emit(Instruction.withOperand(ALOAD, slotNum));
     }
     
     public void emitStore(int slotNum)
     {
       //TODO: figure out shortcuts
-        emit("astore " + String.valueOf(slotNum));
+        emit(Instruction.withOperand(ASTORE, slotNum));
     }
     
     public void emitLabel(Label l)
     {
-        emit(l.toString());
+        getMethod().addLabel(l.toString());
     }
     
-    public void emit(String str, Label l)
+    public void emitBoolValue()
     {
-        emit(str + " " + l.toString());
+        emitUnbox(predefined.boolType);
     }
     
-    public void emitBoolValue()
+    /**
+     * @return the descriptor of the JVM value that integer, real or bool is specialized to.
+     */
+    public String getPrimitiveDescriptor(TypeSpec type)
+    {
+        return (type == predefined.realType)? "D" : "I";
+    }
+    
+    /**
+     * Starts boxing a primitive value: the value is pushed between this and {@link #emitBox(TypeSpec)}.
+     */
+    public void emitBoxNew(TypeSpec type)
+    {
+        emit(NEW, type.getPath());
+        emit(DUP);
+    }
+    
+    public void emitBox(TypeSpec type)
+    {
+        emit(INVOKESPECIAL, type.getPath(), "<init>", "(" + getValueDescriptor(type) + ")V");
+    }
+    
+    /**
+     * Boxes the primitive value on the stack with the type's factory, which may return a shared object.
+     */
+    public void emitValueOf(TypeSpec type)
+    {
+        String factory = (type == predefined.boolType)? "of" : "valueOf";
+        emit(INVOKESTATIC, type.getPath(), factory, "(" + getPrimitiveDescriptor(type) + ")L" + type.getPath() + ";");
+    }
+    
+    /**
+     * Finishes copying a library object into the new one started by {@link #emitBoxNew(TypeSpec)}: the object to copy is pushed in between.
+     */
+    public void emitCopy(TypeSpec type)
+    {
+        emitUnbox(type);
+        emit(INVOKESPECIAL, type.getPath(), "<init>", "(" + getValueDescriptor(type) + ")V");
+    }
+    
+    /**
+     * Starts a concatenation of strings: each part is pushed as a Java value and added with {@link #emitAppend(String)}.
+     * @param capacity how many characters to make room for.
+     */
+    public void emitConcatenationStart(int capacity)
+    {
+        emitBoxNew(predefined.stringType);
+        emit(NEW, "java/lang/StringBuilder");
+        emit(DUP);
+        emit(Instruction.constant(capacity));
+        emit(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(I)V");
+    }
+    
+    /**
+     * @param descriptor the descriptor of the value on the stack, e.g. "I" or "Ljava/lang/String;".
+     */
+    public void emitAppend(String descriptor)
+    {
+        emit(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(" + descriptor + ")Ljava/lang/StringBuilder;");
+    }
+    
+    public void emitConcatenationEnd()
+    {
+        emit(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
+        emitBox(predefined.stringType);
+    }
+    
+    public void emitUnbox(TypeSpec type)
+    {
+        emit(INVOKEVIRTUAL, type.getPath(), "getValue", "()" + getValueDescriptor(type));
+    }
+    
+    /**
+     * Assigns a primitive value to the object below it on the stack.
+     */
+    public void emitPutValue(TypeSpec type)
+    {
+        emit(INVOKEVIRTUAL, type.getPath(), Predefined.OPERATOR_ASSIGN, "(" + getPrimitiveDescriptor(type) + ")V");
+    }
+    
+    public void emitIntConstant(String value)
+    {
+        emit(getIntPush(value));
+    }
+    
+    public void emitRealConstant(String value)
+    {
+        emit(getRealPush(value));
+    }
+    
+    /**
+     * @return the instruction that pushes a real literal as a double.
+     */
+    public Instruction getRealPush(String value)
+    {
+        return Instruction.constant(Double.parseDouble(value));
+    }
+    
+    /**
+     * @return the instruction that pushes an integer literal. Like Jasmin, it keeps the low 32 bits of a literal that doesn't fit in an int.
+     */
+    public Instruction getIntPush(String value)
+    {
+        return Instruction.constant(new BigInteger(value).intValue());
+    }
+    
+    /**
+     * @return the instruction that pushes a string literal, which is written with its quotes and escapes as in the source.
+     */
+    public Instruction getStringPush(String literal)
+    {
+        return Instruction.constant(Instruction.unescape(literal.substring(1, literal.length() - 1)));
+    }
+    
+    /**
+     * Emits a new library object for a literal.
+     * @param push the instruction that pushes the literal's value, e.g. ldc 5 or ldc "hi".
+     */
+    public void emitConstant(TypeSpec type, Instruction push)
+    {
+        emitBoxNew(type);
+        emit(push);
+        emit(INVOKESPECIAL, type.getPath(), "<init>", "(" + getValueDescriptor(type) + ")V");
+    }
+    
+    /**
+     * Emits a literal that is created once, when the current class is initialized, and is shared by every evaluation.
+     * @param push the instruction that pushes the literal's value, e.g. ldc 5 or ldc "hi".
+     */
+    public void emitSharedConstant(TypeSpec type, Instruction push)
+    {
+        LinkedHashMap<String, Literal> fileLiterals = literals.computeIfAbsent(currentFile, file -> new LinkedHashMap<>());
+        
+        String key = type.getPath() + " " + push;
+        Literal literal = fileLiterals.get(key);
+        if(literal == null)
+        {
+            literal = new Literal("$literal" + fileLiterals.size(), type, push);
+            fileLiterals.put(key, literal);
+        }
+        
+        emit(GETSTATIC, currentFile.getNameNoExtension(), literal.name, "L" + type.getPath() + ";");
+    }
+    
+    /**
+     * Declares public static fields of the current class for the entries, once its methods have been emitted.
+     */
+    public void emitStaticFields(Collection<ScopeEntry> entries)
+    {
+        LinkedHashMap<String, String> fields = new LinkedHashMap<>();
+        for(ScopeEntry entry : entries)
+        {
+            //all routines are stored as a routine object, although they are actually a subclass of that object
+            String path = entry.type.getPath();
+            if(entry.type.name.equals(Predefined.ROUTINE))
+                path = predefined.routineType.getPath();
+            
+            fields.put(entry.name, "L" + path + ";");
+        }
+        emitLateFields(FIELD_STATIC, fields);
+    }
+    
+    /**
+     * @param fields the descriptor of each field, by name.
+     */
+    private void emitLateFields(Directive dir, Map<String, String> fields)
+    {
+        if(classFile != null)
+        {
+            for(Map.Entry<String, String> field : fields.entrySet())
+                emit(dir, field.getKey(), field.getValue());
+            return;
+        }
+        
+        //Jasmin only takes fields before the methods
+        StringBuilder text = new StringBuilder();
+        for(Map.Entry<String, String> field : fields.entrySet())
+            text.append(dir + " " + field.getKey() + " " + field.getValue()).append('\n');
+        
+        int header = currentFile.code.indexOf(SUPER.toString());
+        currentFile.code.insert(currentFile.code.indexOf("\n", header) + 1, text);
+    }
+    
+    /**
+     * Declares the shared literals of every class as static final fields, and creates them in the class's static initializer.
+     */
+    public void emitSharedConstants()
+    {
+        for(FileSpec file : literals.keySet())
+        {
+            setCurrentFile(file);
+            String className = file.getNameNoExtension();
+            
+            LinkedHashMap<String, String> fields = new LinkedHashMap<>();
+            for(Literal literal : literals.get(file).values())
+                fields.put(literal.name, "L" + literal.type.getPath() + ";");
+            emitLateFields(FIELD_PRIVATE_STATIC_FINAL, fields);
+            
+            emit();
+            emitMethod(METHOD_STATIC, "<clinit>", "()V");
+            //made with the type's constant factory, so that nothing can change the shared object by mistake
+            for(Literal literal : literals.get(file).values())
+            {
+                emit(literal.push);
+                emit(INVOKESTATIC, literal.type.getPath(), "constant", "(" + getValueDescriptor(literal.type) + ")L" + literal.type.getPath() + ";");
+                emit(PUTSTATIC, className, literal.name, "L" + literal.type.getPath() + ";");
+            }
+            emit(RETURN);
+            emitEndMethod();
+        }
+        
+        literals.clear();
+    }
+    
+    /**
+     * @return the instruction that pushes a value known at compile time: an Integer or Boolean as an int, a Double as a double, or a String.
+     */
+    public Instruction getConstantPush(Object value)
+    {
+        if(value instanceof Boolean)
+            return new Instruction(((Boolean) value)? ICONST_1 : ICONST_0);
+        else if(value instanceof String)
+            return Instruction.constant(Instruction.unescape((String) value));
+        
+        return Instruction.constant(value);
+    }
+    
+    /**
+     * @return the descriptor of the library type's value field: I, D or a Java string.
+     */
+    private String getValueDescriptor(TypeSpec type)
+    {
+        return (type == predefined.stringType)? "Ljava/lang/String;" : getPrimitiveDescriptor(type);
+    }
+    
+    /**
+     * Emits an Integer or Boolean as an int, or a Double as a double.
+     */
+    public void emitPrimitiveConstant(Object value)
+    {
+        emit(getConstantPush(value));
+    }
+    
+    /**
+     * Emits the primitive instruction for one of the arithmetic operators of integer and real.
+     */
+    public void emitArithmetic(String routineName, TypeSpec type)
+    {
+        boolean isReal = (type == predefined.realType);
+        
+        if(routineName.equals(Predefined.OPERATOR_PLUS))
+            emit((isReal)? DADD : IADD);
+        else if(routineName.equals(Predefined.OPERATOR_MINUS))
+            emit((isReal)? DSUB : ISUB);
+        else if(routineName.equals(Predefined.OPERATOR_STAR))
+            emit((isReal)? DMUL : IMUL);
+        else if(routineName.equals(Predefined.OPERATOR_SLASH))
+            emit((isReal)? DDIV : IDIV);
+        else if(routineName.equals(Predefined.OPERATOR_MOD))
+            emit((isReal)? DREM : IREM);
+    }
+    
+    /**
+     * Compares the two primitive values on the stack and jumps to the label if the relation holds.
+     */
+    public void emitCompareBranch(String routineName, TypeSpec type, Label label)
     {
-        emit("getfield " + Predefined.boolType.getPath() + "/value I");
+        emitCompareBranch(routineName, type, label, true);
+    }
+    
+    /**
+     * Compares the two primitive values on the stack and jumps to the label if the relation holds
+     * (whenTrue), or if it doesn't.
+     */
+    public void emitCompareBranch(String routineName, TypeSpec type, Label label, boolean whenTrue)
+    {
+        String condition;
+        if(routineName.equals(Predefined.OPERATOR_EQUALS))
+            condition = "eq";
+        else if(routineName.equals(Predefined.OPERATOR_NOT_EQUALS))
+            condition = "ne";
+        else if(routineName.equals(Predefined.OPERATOR_LESS_THAN))
+            condition = "lt";
+        else if(routineName.equals(Predefined.OPERATOR_LESS_EQUALS))
+            condition = "le";
+        else if(routineName.equals(Predefined.OPERATOR_GREATER_THAN))
+            condition = "gt";
+        else
+            condition = "ge";
+        
+        //NaN has to make every comparison false (except !=), as in Java, so the choice of dcmpl or dcmpg depends on the relation and not on whenTrue
+        Opcode compare = (condition.equals("gt") || condition.equals("ge"))? DCMPL : DCMPG;
+        if(!whenTrue)
+            condition = negateCondition(condition);
+        
+        if(type == predefined.realType)
+        {
+            emit(compare);
+            emit(Opcode.forMnemonic("if" + condition), label);
+        }
+        else
+            emit(Opcode.forMnemonic("if_icmp" + condition), label);
+    }
+    
+    private String negateCondition(String condition)
+    {
+        switch(condition)
+        {
+            case "eq": return "ne";
+            case "ne": return "eq";
+            case "lt": return "ge";
+            case "ge": return "lt";
+            case "gt": return "le";
+            default:   return "gt";
+        }
     }
     
     public void emit()
     {
-        emit("");
+        //inside a method there are no lines to separate until it is lowered
+        if(!methods.containsKey(currentFile))
+            write("");
+    }
+    
+    /**
+     * Emits the .class or .super directive of the current class.
+     */
+    public void emit(Directive dir, String className)
+    {
+        if(classFile == null)
+            write(dir + " " + className);
+        else if(dir == SUPER)
+            classFile.setSuperclass(className);
+        else
+            classFile.setClass(dir.access, className);
+    }
+    
+    /**
+     * Emits a field of the current class.
+     */
+    public void emit(Directive dir, String name, String descriptor)
+    {
+        if(classFile == null)
+            write(dir + " " + name + " " + descriptor);
+        else
+            classFile.addField(dir.access, name, descriptor);
+    }
+    
+    public void emit(Opcode opcode)
+    {
+        emit(new Instruction(opcode));
+    }
+    
+    public void emit(Opcode opcode, Label label)
+    {
+        emit(Instruction.branch(opcode, label.toString()));
     }
     
-    public void emit(Directive dir)
+    /**
+     * Emits new, checkcast, instanceof or anewarray of the class.
+     */
+    public void emit(Opcode opcode, String className)
     {
-        emit(dir.toString());
+        emit(Instruction.withClass(opcode, className));
     }
     
-    public void emit(Directive dir, String str)
+    /**
+     * Emits a field access or a method call.
+     */
+    public void emit(Opcode opcode, String owner, String name, String descriptor)
     {
-        emit(dir.toString() + " " + str);
+        emit(Instruction.member(opcode, owner, name, descriptor));
     }
     
-    public void emit(String str)
+    public void emit(Instruction insn)
     {
-        objectFile.println(str);
+        getMethod().addInstruction(insn);
+    }
+    
+    /**
+     * Starts a method. Its instructions are held back in the intermediate representation until
+     * {@link #emitEndMethod()}, so that the peephole optimizer can rewrite them and their limits can be computed.
+     */
+    public void emitMethod(Directive dir, String name, String descriptor)
+    {
+        methods.put(currentFile, new IrMethod(dir.access, name, descriptor));
+    }
+    
+    /**
+     * Finishes the method being emitted: optimizes it, computes its limits and lowers it, straight
+     * to the class file when building one and to Jasmin otherwise.
+     */
+    public void emitEndMethod()
+    {
+        IrMethod method = methods.remove(currentFile);
+        
+        if(optimizer != null)
+            optimizer.optimize(currentFile.getNameNoExtension(), method);
+        new MethodLimits(method).apply();
+        
+        if(classFile == null)
+        {
+            for(String line : method.toJasmin())
+                write(line);
+            return;
+        }
+        
+        MethodBuilder builder = classFile.addMethod(method.access, method.name, method.descriptor);
+        for(IrMethod.Local local : method.locals)
+            builder.declareLocal(local.slot, local.descriptor);
+        
+        for(BasicBlock block : method.blocks)
+        {
+            for(String label : block.labels)
+                builder.addLabel(label);
+            for(Instruction insn : block.instructions)
+                builder.addInstruction(insn);
+        }
+        
+        builder.setMaxStack(method.maxStack);
+        builder.setMaxLocals(method.maxLocals);
+    }
+    
+    private IrMethod getMethod()
+    {
+        IrMethod method = methods.get(currentFile);
+        if(method == null)
+            throw new IllegalStateException("an instruction outside of a method in " + currentFile.getNameNoExtension());
+        
+        return method;
+    }
+    
+    /**
+     * Writes a line of the current Jasmin file. Nothing is written when building class files.
+     */
+    private void write(String str)
+    {
+        if(classFile == null)
+            currentFile.println(str);
+    }
+    
+    private static class Literal
+    {
+        String name;
+        TypeSpec type;
+        Instruction push;
+        
+        Literal(String name, TypeSpec type, Instruction push)
+        {
+            this.name = name;
+            this.type = type;
+            this.push = push;
+        }
     }
 }
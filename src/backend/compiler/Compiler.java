@@ -3,9 +3,26 @@ package backend.compiler;
 import antlr4.SixtyFortranBaseVisitor;
 import antlr4.SixtyFortranParser;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import backend.assembler.AssemblyReport;
+import backend.bytecode.Instruction;
+import backend.bytecode.Opcode;
+import backend.optimizer.PeepholeOptimizer;
 import backend.semantics.CompilerSemantics;
 import backend.semantics.FileSpec;
+import intermediate.CompilationContext;
 import intermediate.Kind;
 import intermediate.Predefined;
 import intermediate.scope.Scope;
@@ -19,74 +36,450 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     private Scope worldScope;
     private Scope localScope;
     
+    private CompilationContext context;
+    private Predefined predefined;
     private CompilerSemantics semantics;
     private CodeGenerator code;
     
+    //null when constants aren't folded
+    private ConstantFolder folder;
+    
     private FileSpec currentFile;
+    private FileSpec routineFile;
     private String programName;
-
-    public Compiler(Scope worldScope, String programName)
+    
+    //only used for incremental compilation: the top-level definitions, their hashes and which of them are reused
+    private IncrementalCache cache;
+    private LinkedHashMap<ParserRuleContext, String> definitionHashes;
+    private HashSet<ParserRuleContext> reusedDefinitions;
+    private HashSet<FileSpec> reusedFiles;
+    
+    //top-level routines that capture nothing but print and read, which become static methods of the program's class
+    private LinkedHashMap<String, SixtyFortranParser.RoutineDefinitionContext> staticRoutines;
+    
+    public Compiler(CompilationContext context, Scope worldScope, String programName)
+    {
+        this(context, worldScope, programName, false);
+    }
+    
+    /**
+     * @param bytecode whether to build the class files directly instead of writing Jasmin files.
+     */
+    public Compiler(CompilationContext context, Scope worldScope, String programName, boolean bytecode)
     {
         this.worldScope = worldScope;
         this.localScope = worldScope;
-       
-        semantics = new CompilerSemantics(worldScope, programName);
-        code = new CodeGenerator();
+        this.context = context;
+        this.predefined = context.predefined;
+        
+        semantics = new CompilerSemantics(worldScope, programName, bytecode);
+        code = new CodeGenerator(context, bytecode);
+        
+        //variables can only be replaced by their values once the library's operators can't change them
+        folder = (context.fold)? new ConstantFolder(predefined, context.specialize) : null;
         
         currentFile = null;
+        routineFile = null;
         this.programName = programName;
+        
+        cache = null;
+        definitionHashes = new LinkedHashMap<>();
+        reusedDefinitions = new HashSet<>();
+        reusedFiles = new HashSet<>();
+        staticRoutines = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Compiles incrementally: top-level definitions that haven't changed since the cache was
+     * last updated keep their files, and are neither generated nor assembled again.
+     */
+    public void setCache(IncrementalCache cache)
+    {
+        this.cache = cache;
     }
     
     @Override
-    public Object visit(ParseTree tree)
+    public Object visitProgram(SixtyFortranParser.ProgramContext ctx)
+    {
+        //CompilerSemantics walks the whole program once, before any code is generated
+        context.timings.start("CompilerSemantics");
+        semantics.visit(ctx);
+        
+        if(folder != null)
+            folder.findConstants(ctx);
+        
+        findStaticRoutines(ctx);
+        
+        if(cache != null)
+            checkCache(ctx.programBody());
+        
+        context.timings.start("Compiler");
+        return visitChildren(ctx);
+    }
+    
+    /**
+     * @return the number of top-level definitions whose files were reused from the cache, and how many there are.
+     */
+    public int[] getReuseCount()
+    {
+        return new int[] { reusedDefinitions.size(), definitionHashes.size() };
+    }
+    
+    /**
+     * Records the program's definitions in the cache, once its files have been generated (and assembled).
+     */
+    public void updateCache() throws IOException
+    {
+        for(Map.Entry<ParserRuleContext, String> definition : definitionHashes.entrySet())
+        {
+            List<String> outputs = new ArrayList<>();
+            for(FileSpec file : getDefinitionFiles(definition.getKey()))
+                outputs.add(cache.getOutput(file));
+            
+            cache.put(getDefinitionKey(definition.getKey()), definition.getValue(), outputs);
+        }
+        
+        cache.save();
+    }
+    
+    private void checkCache(SixtyFortranParser.ProgramBodyContext ctx)
+    {
+        for(SixtyFortranParser.StatementContext statement : getTopLevelStatements(ctx))
+        {
+            ParserRuleContext definition = statement.typeDefinition();
+            if(definition == null)
+                definition = statement.routineDefinition();
+            if(definition == null || staticRoutines.containsValue(definition))
+                continue;
+            
+            String source = definition.start.getInputStream().getText(Interval.of(definition.start.getStartIndex(), definition.stop.getStopIndex()));
+            String hash = cache.hash(programName, context.getCodeOptions(), source, getDependencies(definition));
+            definitionHashes.put(definition, hash);
+            
+            if(cache.isFresh(getDefinitionKey(definition), hash))
+            {
+                reusedDefinitions.add(definition);
+                reusedFiles.addAll(getDefinitionFiles(definition));
+            }
+        }
+    }
+    
+    private List<SixtyFortranParser.StatementContext> getTopLevelStatements(SixtyFortranParser.ProgramBodyContext ctx)
+    {
+        List<SixtyFortranParser.StatementContext> statements = new ArrayList<>(ctx.statementList().statement());
+        statements.add(ctx.statement());
+        
+        return statements;
+    }
+    
+    /**
+     * Finds the top-level routines that can be static methods of the program's class instead of objects: the ones
+     * that don't use anything of the program's but print and read, and that are only ever called by name from the
+     * program's own statements.
+     */
+    private void findStaticRoutines(SixtyFortranParser.ProgramContext ctx)
+    {
+        HashSet<String> names = new HashSet<>();
+        for(SixtyFortranParser.StatementContext statement : getTopLevelStatements(ctx.programBody()))
+        {
+            SixtyFortranParser.RoutineDefinitionContext definition = statement.routineDefinition();
+            if(definition == null)
+                continue;
+            
+            String name = definition.routine.name;
+            if(names.add(name) && !definition.isStatic && isNonCapturing(definition))
+                staticRoutines.put(name, definition);
+            else
+                staticRoutines.remove(name);
+        }
+        
+        if(!staticRoutines.isEmpty())
+            removeFirstClassRoutines(ctx, false);
+    }
+    
+    /**
+     * @return whether the routine uses nothing of the program's but print and read, and defines nothing of its own.
+     */
+    private boolean isNonCapturing(SixtyFortranParser.RoutineDefinitionContext definition)
+    {
+        //a later declaration of the same name replaces the routine's entry
+        ScopeEntry entry = worldScope.lookupEntryNoParent(definition.routine.name);
+        if(entry == null || !definition.file.getNameNoExtension().equals(entry.type.getPath()))
+            return false;
+        
+        for(ScopeEntry nonlocal : definition.routineScope.getNonlocalEntries())
+        {
+            ScopeEntry global = worldScope.lookupEntryNoParent(nonlocal.name);
+            if(global != predefined.printEntry && global != predefined.readEntry)
+                return false;
+        }
+        
+        return !containsDefinition(definition.statementList());
+    }
+    
+    private boolean containsDefinition(ParseTree tree)
+    {
+        if(tree instanceof SixtyFortranParser.RoutineDefinitionContext || tree instanceof SixtyFortranParser.TypeDefinitionContext)
+            return true;
+        
+        for(int i = 0; i < tree.getChildCount(); i++)
+            if(containsDefinition(tree.getChild(i)))
+                return true;
+        
+        return false;
+    }
+    
+    /**
+     * Keeps the objects of the routines that are used as values, declared over, or called from inside a definition
+     * (which captures the routine's object) or through another value.
+     */
+    private void removeFirstClassRoutines(ParseTree tree, boolean inDefinition)
+    {
+        if(tree instanceof SixtyFortranParser.RoutineDefinitionContext || tree instanceof SixtyFortranParser.TypeDefinitionContext)
+            inDefinition = true;
+        else if(tree instanceof SixtyFortranParser.IdentifierCallContext)
+            staticRoutines.remove(((SixtyFortranParser.IdentifierCallContext) tree).IDENTIFIER().getText());
+        else if(tree instanceof SixtyFortranParser.VarNameContext)
+            staticRoutines.remove(tree.getText());
+        else if(tree instanceof SixtyFortranParser.RoutineCallContext)
+        {
+            SixtyFortranParser.RoutineCallContext call = (SixtyFortranParser.RoutineCallContext) tree;
+            ParseTree user = call.getParent().getParent();
+            
+            if(inDefinition || call.indexModifier() != null || call.call() != null ||
+               !(user instanceof SixtyFortranParser.StatementContext || user instanceof SixtyFortranParser.CallTermContext))
+                staticRoutines.remove(call.IDENTIFIER().getText());
+        }
+        
+        for(int i = 0; i < tree.getChildCount(); i++)
+            removeFirstClassRoutines(tree.getChild(i), inDefinition);
+    }
+    
+    private String getDefinitionKey(ParserRuleContext definition)
+    {
+        if(definition instanceof SixtyFortranParser.TypeDefinitionContext)
+            return "type " + ((SixtyFortranParser.TypeDefinitionContext) definition).type.name;
+        
+        return "routine " + ((SixtyFortranParser.RoutineDefinitionContext) definition).routine.name;
+    }
+    
+    /**
+     * @return the definition's own file, and the files of everything defined inside it.
+     */
+    private List<FileSpec> getDefinitionFiles(ParserRuleContext definition)
+    {
+        FileSpec definitionFile = (definition instanceof SixtyFortranParser.TypeDefinitionContext)?
+                                  ((SixtyFortranParser.TypeDefinitionContext) definition).file :
+                                  ((SixtyFortranParser.RoutineDefinitionContext) definition).file;
+        
+        List<FileSpec> files = new ArrayList<>();
+        for(FileSpec file : semantics.getObjectFiles())
+            for(FileSpec parent = file; parent != null; parent = parent.parent)
+                if(parent == definitionFile)
+                {
+                    files.add(file);
+                    break;
+                }
+        
+        return files;
+    }
+    
+    /**
+     * @return the signatures of every program-level name the definition mentions, and of the types of their fields, and
+     * the values of the ones that are constants.
+     */
+    private String getDependencies(ParseTree definition)
+    {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        collectIdentifiers(definition, names);
+        
+        StringBuilder dependencies = new StringBuilder();
+        HashSet<TypeSpec> visited = new HashSet<>();
+        for(String name : names)
+        {
+            ScopeEntry entry = worldScope.lookupEntry(name);
+            if(entry != null)
+            {
+                dependencies.append(name).append(' ').append(entry.kind).append('\n');
+                appendSignature(entry.type, visited, dependencies);
+                
+                //a constant's value is compiled into the definition in its place
+                Object value = (folder != null)? folder.getConstant(entry) : null;
+                if(value != null)
+                    dependencies.append(name).append(" = ").append(value).append('\n');
+            }
+            
+            TypeSpec type = worldScope.lookupType(name);
+            if(type != null)
+                appendSignature(type, visited, dependencies);
+        }
+        
+        return dependencies.toString();
+    }
+    
+    private void collectIdentifiers(ParseTree tree, LinkedHashSet<String> names)
+    {
+        if(tree instanceof TerminalNode)
+        {
+            if(((TerminalNode) tree).getSymbol().getType() == SixtyFortranParser.IDENTIFIER)
+                names.add(tree.getText());
+            return;
+        }
+        
+        for(int i = 0; i < tree.getChildCount(); i++)
+            collectIdentifiers(tree.getChild(i), names);
+    }
+    
+    private void appendSignature(TypeSpec type, HashSet<TypeSpec> visited, StringBuilder signature)
+    {
+        if(type == null || !visited.add(type))
+            return;
+        
+        signature.append(type.getPath()).append('\n').append(type).append('\n');
+        
+        for(ScopeEntry field : type.getFields())
+            appendSignature(field.type, visited, signature);
+        for(ScopeEntry field : type.getStaticFields())
+            appendSignature(field.type, visited, signature);
+    }
+    
+    /**
+     * @return every file written by the compiler, each of which assembles into its own class.
+     */
+    public List<FileSpec> getObjectFiles()
+    {
+        List<FileSpec> files = new ArrayList<>(semantics.getObjectFiles());
+        files.removeAll(reusedFiles);
+        for(SixtyFortranParser.RoutineDefinitionContext definition : staticRoutines.values())
+            files.remove(definition.file);
+        if(routineFile != null)
+            files.add(routineFile);
+        
+        return files;
+    }
+    
+    /**
+     * @return the peephole optimizer, which knows how many instructions it removed from each method, or null if it is off.
+     */
+    public PeepholeOptimizer getOptimizer()
+    {
+        return code.getOptimizer();
+    }
+    
+    /**
+     * Writes the class files built directly by the code generator (only in bytecode mode).
+     * @return the outcome for each class.
+     */
+    public AssemblyReport writeClassFiles()
+    {
+        return code.writeClassFiles();
+    }
+    
+    /**
+     * Writes the Jasmin files, which are only kept in memory while the program is compiled.
+     */
+    public void writeObjectFiles() throws IOException
     {
-       semantics.visit(tree);
-       //return null;
-       return super.visit(tree);
+        for(FileSpec file : getObjectFiles())
+            file.write();
     }
     
     @Override
     public Object visitProgramBody(SixtyFortranParser.ProgramBodyContext ctx)
     {
         //moves the predefined .class files to the library folder
-        Predefined.movePredefinedTypes(semantics.getBinFolderName());
+        predefined.movePredefinedTypes(semantics.getBinFolderName());
         
         //creates the routine file
-        FileSpec routineFile = new FileSpec(Predefined.ROUTINE);
+        routineFile = new FileSpec(Predefined.ROUTINE);
         routineFile.directory = semantics.getBinFolderName();
-        routineFile.mkFile();
+        semantics.mkFile(routineFile);
         code.setCurrentFile(routineFile);
         code.emitRoutineFile(semantics.getRoutineSignatures());
         
         //starts emitting the actual program
-        enterFile((FileSpec) semantics.visit(ctx), localScope);
+        enterFile(semantics.getMainFile(), localScope);
         
         code.emitMainPrologue(programName);
         
-        code.emitLocalVars(worldScope);
+        //only main's own variables, not the parameters that Semantics also enters in the world scope, nor the static routines
+        List<ScopeEntry> variables = new ArrayList<>();
+        for(ScopeEntry entry : worldScope.getEntries())
+            if(entry.kind == Kind.VARIABLE && !staticRoutines.containsKey(entry.name))
+                variables.add(entry);
+        code.emitLocalVars(variables);
         
-        Predefined.emitPredefinedRoutines(code);
+        predefined.emitPredefinedRoutines(code);
+        emitStaticRoutineGlobals();
         
         visitChildren(ctx);
         code.setCurrentFile(currentFile);
         
-        code.emitMainEpilogue(worldScope.getNumLocals());
+        code.emitMainEpilogue();
+        emitStaticRoutines();
+        code.emitSharedConstants();
         
-        code.close();
-       
         return null;
     }
     
+    /**
+     * @return print and read, if any of the static routines use them.
+     */
+    private LinkedHashSet<ScopeEntry> getStaticRoutineGlobals()
+    {
+        LinkedHashSet<ScopeEntry> globals = new LinkedHashSet<>();
+        for(SixtyFortranParser.RoutineDefinitionContext definition : staticRoutines.values())
+            for(ScopeEntry nonlocal : definition.routineScope.getNonlocalEntries())
+                globals.add(worldScope.lookupEntryNoParent(nonlocal.name));
+        
+        return globals;
+    }
+    
+    /**
+     * Stores print and read in the program's static fields, where the static routines find them.
+     */
+    private void emitStaticRoutineGlobals()
+    {
+        for(ScopeEntry global : getStaticRoutineGlobals())
+        {
+            code.emitLoadEntry(global);
+            code.emit(Opcode.PUTSTATIC, programName, global.name, "L" + global.type.getPath() + ";");
+        }
+    }
+    
+    /**
+     * Emits the static routines as static methods of the program's class.
+     */
+    private void emitStaticRoutines()
+    {
+        if(staticRoutines.isEmpty())
+            return;
+        
+        code.emitStaticFields(getStaticRoutineGlobals());
+        
+        for(SixtyFortranParser.RoutineDefinitionContext definition : staticRoutines.values())
+        {
+            localScope = definition.routineScope;
+            code.setCurrentScope(localScope);
+            
+            code.emit();
+            code.emitStaticRoutineHeader(definition);
+            visitChildren(definition);
+            code.emitRoutineCloser(definition);
+        }
+        
+        localScope = worldScope;
+        code.setCurrentScope(localScope);
+    }
+    
     @Override
     public Object visitIfStatement(SixtyFortranParser.IfStatementContext ctx) {
         //TODO: figure out what the hell is going on here
         if (ctx.elseifBlock() == null && ctx.elseBlock() == null) {
             // Simple if block
-            Label conditional_end = new Label(); // Label for the end of conditional
-            visit(ctx.ifBlock().expression()); // Code to evaluate expression
-            code.emitBoolValue();
-            code.emit("ifeq", conditional_end); // If equal, do statements below. Else, jump to end of
-                                                            // conditional
+            Label conditional_end = context.newLabel(); // Label for the end of conditional
+            emitCondition(ctx.ifBlock().expression(), conditional_end); // Code to evaluate expression. If true, do statements below. Else, jump to end of
+                                                                       // conditional
             localScope = ctx.ifBlock().scope;
             code.setCurrentScope(localScope);
             visit(ctx.ifBlock().statementList()); // Code for the if block
@@ -94,14 +487,12 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             code.setCurrentScope(localScope);
             
             code.emitLabel(conditional_end); // End of conditional block (if)
-           
+            
         } else if (ctx.elseifBlock() == null) {
             // Simple if/else statement
-            Label conditional_end = new Label(); // Label for the end of conditional
-            visit(ctx.ifBlock().expression()); // Code to evaluate boolean expression in if
-            code.emitBoolValue();
-            Label else_label = new Label(); // Else label
-            code.emit("ifeq", else_label); // If equal, do statements below. Else, jump to else block.
+            Label conditional_end = context.newLabel(); // Label for the end of conditional
+            Label else_label = context.newLabel(); // Else label
+            emitCondition(ctx.ifBlock().expression(), else_label); // Code to evaluate boolean expression in if. If true, do statements below. Else, jump to else block.
             
             localScope = ctx.ifBlock().scope;
             code.setCurrentScope(localScope);
@@ -109,7 +500,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             localScope = localScope.getParent();
             code.setCurrentScope(localScope);
             
-            code.emit("goto", conditional_end); // If condition is true and executed if block, jump to end of conditional
+            code.emit(Opcode.GOTO, conditional_end); // If condition is true and executed if block, jump to end of conditional
             code.emitLabel(else_label); // Print else block label (jump here if condition is not true)
             
             localScope = ctx.elseBlock().scope;
@@ -121,11 +512,9 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             code.emitLabel(conditional_end); // End of conditional block (if/else)
         } else {
             // if/(else if)+/else statement
-            Label conditional_end = new Label(); // Label for the end of conditional
-            visit(ctx.ifBlock().expression()); // ***Code to evaluate boolean expression in if
-            code.emitBoolValue();
-            Label next_label = new Label(); // Else label (or else if)
-            code.emit("ifeq", next_label); // ***If equal, do statements below. Else, jump to next block (else if)
+            Label conditional_end = context.newLabel(); // Label for the end of conditional
+            Label next_label = context.newLabel(); // Else label (or else if)
+            emitCondition(ctx.ifBlock().expression(), next_label); // ***Code to evaluate boolean expression in if. If true, do statements below. Else, jump to next block (else if)
             
             localScope = ctx.ifBlock().scope;
             code.setCurrentScope(localScope);
@@ -133,14 +522,12 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             localScope = localScope.getParent();
             code.setCurrentScope(localScope);
             
-            code.emit("goto", conditional_end); // ***If condition is true and executed if block, jump to end of conditional
+            code.emit(Opcode.GOTO, conditional_end); // ***If condition is true and executed if block, jump to end of conditional
             // Print out all elseif statements
             for (int i = 0; i < ctx.elseifBlock().size(); i++) {
                 code.emitLabel(next_label); // ***If if condition false, jump here
-                visit(ctx.elseifBlock(i).expression()); // ***Code to evaluate boolean expression in elseif
-                code.emitBoolValue();
-                next_label = new Label(); // Else label (or else if)
-                code.emit("ifeq", next_label); // ***If equal, do statements below. Else, jump to next block (else if)
+                next_label = context.newLabel(); // Else label (or else if)
+                emitCondition(ctx.elseifBlock(i).expression(), next_label); // ***Code to evaluate boolean expression in elseif. If true, do statements below. Else, jump to next block (else if)
                 
                 localScope = ctx.elseifBlock(i).scope;
                 code.setCurrentScope(localScope);
@@ -148,7 +535,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
                 localScope = localScope.getParent();
                 code.setCurrentScope(localScope);
                 
-                code.emit("goto", conditional_end); // ***If condition is true and executed if block, jump to end of
+                code.emit(Opcode.GOTO, conditional_end); // ***If condition is true and executed if block, jump to end of
                                                 // conditional
             }
             // If any of the blocks were executed, the would jump to conditional_end
@@ -157,7 +544,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             // block, execute statements.
             code.emitLabel(next_label); // Print else block label (jump here if condition is not true)
             // Else statement below (if not null)
-            if (ctx.elseifBlock() != null)
+            if (ctx.elseBlock() != null)
             {
                 localScope = ctx.elseBlock().scope;
                 code.setCurrentScope(localScope);
@@ -165,7 +552,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
                 localScope = localScope.getParent();
                 code.setCurrentScope(localScope);
             }
-           
+            
             code.emitLabel(conditional_end); // End of conditional block (if/else)
         }
         return null; // If statement is a statement and does not return anything
@@ -174,14 +561,12 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitLoopStatement(SixtyFortranParser.LoopStatementContext ctx) {
         //TODO: figure out how the hell to fix this
-        Label loopTopLabel = new Label();
-        Label loopExitLabel = new Label();
+        Label loopTopLabel = context.newLabel();
+        Label loopExitLabel = context.newLabel();
         code.emitLabel(loopTopLabel);
-        visit(ctx.expression());
-        code.emitBoolValue();
-        code.emit("ifeq", loopExitLabel);
+        emitCondition(ctx.expression(), loopExitLabel);
         visit(ctx.statementList());
-        code.emit("goto", loopTopLabel);
+        code.emit(Opcode.GOTO, loopTopLabel);
         code.emitLabel(loopExitLabel);
         return null; // While loop is a statement is a statement and does not return anything
     }
@@ -197,12 +582,25 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             
             String path = entry.type.getPath();
             if(entry.type.name.equals(Predefined.ROUTINE))
-                path = Predefined.routineType.getPath();
+                path = predefined.routineType.getPath();
             
-            code.emit("putstatic " + ctx.type.getPath() + "/" + entry.name + " L" + path + ";");
+            code.emit(Opcode.PUTSTATIC, ctx.type.getPath(), entry.name, "L" + path + ";");
         }
         //handles passing nonlocals to routines
-        code.emit("invokestatic " + ctx.type.getPath() + "/" + "$staticInitialization()V");
+        code.emit(Opcode.INVOKESTATIC, ctx.type.getPath(), "$staticInitialization", "()V");
+        
+        if(reusedDefinitions.contains(ctx))
+        {
+            //the type's files are kept, but the rest of the program still needs its routines' entries
+            localScope = ctx.typeScope;
+            for(SixtyFortranParser.RoutineDefinitionContext routineCtx : ctx.definitionBlock().routineBlock().routineDefinition())
+                getRoutineEntry(routineCtx, ctx.type, false);
+            for(SixtyFortranParser.StaticRoutineDefinitionContext routineCtx : ctx.definitionBlock().routineBlock().staticRoutineDefinition())
+                getRoutineEntry(routineCtx.routineDefinition(), ctx.type, true);
+            
+            localScope = localScope.getParent();
+            return null;
+        }
         
         enterFile(ctx.file, ctx.typeScope);
         localScope = ctx.typeScope;
@@ -219,7 +617,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         {
             routineDefinitionHelper(routineCtx.routineDefinition(), ctx.type, true);
         }
-
+        
         localScope = localScope.getParent();
         exitFile(localScope);
         return null;
@@ -228,6 +626,25 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitAssignExistingVariable(SixtyFortranParser.AssignExistingVariableContext ctx)
     {
+        //the variable's object is kept and only its value changes, which is what operator_assignment does
+        if(isPrimitive(ctx.call().type) && ctx.expression().type == ctx.call().type)
+        {
+            visit(ctx.call());
+            emitUnboxed(ctx.expression());
+            code.emitPutValue(ctx.call().type);
+            return null;
+        }
+        
+        //x = x + e adds e to x's own object instead of making a new object for x + e
+        SixtyFortranParser.ExpressionContext operand = getAccumulatedOperand(ctx);
+        if(operand != null)
+        {
+            visit(ctx.call());
+            visit(operand);
+            code.emitRoutineCall(getAccumulator(operand.getParent()), ctx.call().type, new ArgumentList(operand.type), null, false);
+            return null;
+        }
+        
         ArgumentList arg = new ArgumentList(ctx.expression().type);
         RoutineSpec assignRoutine = ctx.call().type.lookupRoutine(Predefined.OPERATOR_ASSIGN, arg);
         
@@ -236,7 +653,6 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         if(assignRoutine != null)
         {
             visit(ctx.call());
-            code.emitLoadEntry(ctx.call().type.lookupRoutine(Predefined.OPERATOR_ASSIGN));
             visit(ctx.expression());
             code.emitRoutineCall(Predefined.OPERATOR_ASSIGN, ctx.call().type, arg, assignRoutine.returnType, false);
         }
@@ -251,20 +667,147 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         return null;
     }
     
+    /**
+     * @return the e of an assignment x = x op e when x's type has an accumulator for op and e, otherwise null.
+     */
+    private SixtyFortranParser.ExpressionContext getAccumulatedOperand(SixtyFortranParser.AssignExistingVariableContext ctx)
+    {
+        TypeSpec type = ctx.call().type;
+        String name = getVariableName(ctx.call());
+        if(name == null || !isValueType(type))
+            return null;
+        
+        ParserRuleContext operation = skipPassThrough(ctx.expression());
+        
+        SixtyFortranParser.ExpressionContext operand;
+        ParserRuleContext variable;
+        if(operation instanceof SixtyFortranParser.AdditionContext)
+        {
+            operand = ((SixtyFortranParser.AdditionContext) operation).expression();
+            variable = ((SixtyFortranParser.AdditionContext) operation).multiplication();
+        }
+        else if(operation instanceof SixtyFortranParser.MultiplicationContext)
+        {
+            operand = ((SixtyFortranParser.MultiplicationContext) operation).expression();
+            variable = ((SixtyFortranParser.MultiplicationContext) operation).term();
+        }
+        else
+            return null;
+        
+        variable = skipPassThrough(variable);
+        if(!(variable instanceof SixtyFortranParser.CallTermContext) ||
+           !name.equals(getVariableName(((SixtyFortranParser.CallTermContext) variable).call())))
+            return null;
+        
+        String accumulator = getAccumulator(operation);
+        if(ctx.expression().type != type ||
+           type.lookupRoutine(accumulator, new ArgumentList(operand.type)) == null)
+            return null;
+        
+        return operand;
+    }
+    
+    /**
+     * @return the expression that decides the value of one that only passes it on, such as a parenthesized one.
+     */
+    private ParserRuleContext skipPassThrough(ParserRuleContext ctx)
+    {
+        while(ConstantFolder.isPassThrough(ctx))
+        {
+            if(ctx instanceof SixtyFortranParser.ParenTermContext)
+                ctx = ((SixtyFortranParser.ParenTermContext) ctx).expression();
+            else
+                ctx = (ParserRuleContext) ctx.getChild(0);
+        }
+        
+        return ctx;
+    }
+    
+    /**
+     * @return the name of a plain variable such as x, or null for anything else, such as x.y or x[i].
+     */
+    private String getVariableName(SixtyFortranParser.CallContext ctx)
+    {
+        SixtyFortranParser.IdentifierCallContext identifier = ctx.identifierCall();
+        if(identifier == null || identifier.call() != null || identifier.indexModifier() != null)
+            return null;
+        
+        return identifier.IDENTIFIER().getText();
+    }
+    
+    /**
+     * @return the accumulator that applies an addition's or multiplication's operator in place.
+     */
+    private String getAccumulator(ParserRuleContext operation)
+    {
+        if(operation instanceof SixtyFortranParser.AdditionContext)
+            return (((SixtyFortranParser.AdditionContext) operation).addOp().MINUS() != null)? Predefined.OPERATOR_MINUS_ASSIGN : Predefined.OPERATOR_PLUS_ASSIGN;
+        
+        SixtyFortranParser.MulOpContext mulOp = ((SixtyFortranParser.MultiplicationContext) operation).mulOp();
+        if(mulOp.DIV() != null)
+            return Predefined.OPERATOR_SLASH_ASSIGN;
+        else if(mulOp.MOD() != null)
+            return Predefined.OPERATOR_MOD_ASSIGN;
+        
+        return Predefined.OPERATOR_STAR_ASSIGN;
+    }
+    
     @Override
     public Object visitAssignNewVariables(SixtyFortranParser.AssignNewVariablesContext ctx)
     {
-        visit(ctx.expression());
-        for(int i = 0; i < ctx.varDeclaration().entries.size() - 1; i++)
-            code.emit("dup");
+        List<ScopeEntry> entries = ctx.varDeclaration().entries;
+        TypeSpec type = ctx.varDeclaration().typeName().type;
         
-        for(ScopeEntry entry : ctx.varDeclaration().entries)
+        emitNewValue(ctx.expression(), type);
+        code.emitStoreEntry(entries.get(0));
+        
+        //each variable gets its own object, since assignments change the object's value
+        for(int i = 1; i < entries.size(); i++)
         {
-            code.emitLoad(entry.slotNumber);
+            emitOwnCopy(entries.get(0), type);
+            code.emitStoreEntry(entries.get(i));
         }
         
         return null;
     }
+    
+    /**
+     * Emits the initial value of a variable or static field: an integer, real, bool or string gets a new object of its
+     * own, since the expression's object might be shared, or belong to another variable.
+     */
+    void emitNewValue(SixtyFortranParser.ExpressionContext expression, TypeSpec type)
+    {
+        if(isPrimitive(type) && expression.type == type)
+        {
+            code.emitBoxNew(type);
+            emitUnboxed(expression);
+            code.emitBox(type);
+        }
+        else if(isValueType(type) && expression.type == type && !isNew(expression))
+        {
+            code.emitBoxNew(type);
+            visit(expression);
+            code.emitCopy(type);
+        }
+        else
+            visit(expression);
+    }
+    
+    /**
+     * Emits a copy of the variable's or static field's object for another one declared with it, or the same object if it isn't a value.
+     */
+    void emitOwnCopy(ScopeEntry entry, TypeSpec type)
+    {
+        if(isValueType(type))
+        {
+            code.emitBoxNew(type);
+            code.emitLoadEntry(entry);
+            code.emitCopy(type);
+        }
+        else
+            code.emitLoadEntry(entry);
+    }
+    
     @Override
     public Object visitVarDeclaration(SixtyFortranParser.VarDeclarationContext ctx)
     {
@@ -278,7 +821,28 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitRoutineDefinition(SixtyFortranParser.RoutineDefinitionContext ctx)
     {
-        routineDefinitionHelper(ctx, null, ctx.isStatic);
+        //static routines are emitted after the program's main method
+        if(staticRoutines.containsValue(ctx))
+            return null;
+        
+        if(!reusedDefinitions.contains(ctx))
+            routineDefinitionHelper(ctx, null, ctx.isStatic);
+        
+        //creates the routine's object where it's defined, then hands it what it captures
+        ScopeEntry routineEntry = localScope.lookupEntry(ctx.routine.name);
+        code.emitConstructorCall(routineEntry, null);
+        code.emitStoreEntry(routineEntry);
+        for(ScopeEntry nonlocalEntry : ctx.routineScope.getNonlocalEntries())
+        {
+            ScopeEntry entry = localScope.lookupEntry(nonlocalEntry.name);
+            code.emitLoadEntry(entry);
+            
+            String path = entry.type.getPath();
+            if(entry.type.name.equals(Predefined.ROUTINE))
+                path = predefined.routineType.getPath();
+            
+            code.emit(Opcode.PUTSTATIC, routineEntry.type.getPath(), entry.name, "L" + path + ";");
+        }
         
         return null;
     }
@@ -287,27 +851,20 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     {
         enterFile(ctx.file, ctx.routineScope);
         
-        ScopeEntry routineEntry;
-        if(isStatic)
-        {
-            routineEntry = type.lookupStaticRoutine(ctx.routine.name);
-            routineEntry.type.setPath(type.getPath() + "$" + ctx.routine.name);
-        }
-        else
-            routineEntry = localScope.lookupEntry(ctx.routine.name);
-        
-        if(type != null && !isStatic)
-            routineEntry.type.addField(new ScopeEntry("type", type));
+        ScopeEntry routineEntry = getRoutineEntry(ctx, type, isStatic);
         
         localScope = ctx.routineScope;
         
         //TODO: figure out what nonlocals we need
         
         if(type == null)
-            code.emitConstructor(routineEntry.type.getPath(), Predefined.routineType.getPath());
+        {
+            code.emitConstructor(routineEntry.type.getPath(), predefined.routineType.getPath());
+            code.emitStaticFields(localScope.getNonlocalEntries());
+        }
         else
         {
-            code.emitClass(routineEntry.type, Predefined.routineType.getPath(), localScope);
+            code.emitClass(routineEntry.type, predefined.routineType.getPath(), localScope);
         }
         
         //emit all of the methods for the routine object
@@ -320,32 +877,229 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         exitFile(localScope);
     }
     
+    private ScopeEntry getRoutineEntry(SixtyFortranParser.RoutineDefinitionContext ctx, TypeSpec type, boolean isStatic)
+    {
+        ScopeEntry routineEntry;
+        if(isStatic)
+        {
+            routineEntry = type.lookupStaticRoutine(ctx.routine.name);
+            routineEntry.type.setPath(type.getPath() + "$" + ctx.routine.name);
+        }
+        else
+            routineEntry = localScope.lookupEntry(ctx.routine.name);
+        
+        if(type != null && !isStatic)
+            routineEntry.type.addField(new ScopeEntry("type", type));
+        
+        return routineEntry;
+    }
+    
     @Override
-    public Object visitAddition(SixtyFortranParser.AdditionContext ctx)
+    public Object visitExpression(SixtyFortranParser.ExpressionContext ctx)
     {
-        visitChildren(ctx);
+        if(emitConstant(ctx))
+            return null;
         
-        if(ctx.addOp() != null)
+        if(ctx.boolOp() == null)
+            return visitChildren(ctx);
+        
+        if(isPrimitive(ctx.comparison().type, ctx.expression().type))
         {
-            String routineName = Predefined.OPERATOR_PLUS;
-            if(ctx.addOp().MINUS() != null)
-                routineName = Predefined.OPERATOR_MINUS;
-            
-            ArgumentList arg = new ArgumentList(ctx.expression().type);
-            TypeSpec returnType = ctx.type.lookupRoutine(routineName, arg).returnType;
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+        }
+        else
+        {
+            //short-circuits: the left bool is the result if it decides it, otherwise the right one is
+            Label endLabel = context.newLabel();
             
-            code.emitRoutineCall(routineName, ctx.multiplication().type, arg, returnType, false);
+            visit(ctx.comparison());
+            code.emit(Opcode.DUP);
+            code.emitBoolValue();
+            code.emit((ctx.boolOp().AND() != null)? Opcode.IFEQ : Opcode.IFNE, endLabel);
+            code.emit(Opcode.POP);
+            visit(ctx.expression());
+            code.emitLabel(endLabel);
         }
         
         return null;
     }
     
     @Override
-    public Object visitMultiplication(SixtyFortranParser.MultiplicationContext ctx)
+    public Object visitComparison(SixtyFortranParser.ComparisonContext ctx)
     {
-        visitChildren(ctx);
+        if(emitConstant(ctx))
+            return null;
         
-        if(ctx.mulOp() != null)
+        if(ctx.relOp() == null)
+            return visitChildren(ctx);
+        
+        if(isPrimitive(ctx.addition().type, ctx.expression().type))
+        {
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+        }
+        else
+        {
+            visitChildren(ctx);
+            code.emitRoutineCall(getRelOpRoutine(ctx.relOp()), ctx.addition().type, new ArgumentList(ctx.expression().type), ctx.type, false);
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public Object visitAddition(SixtyFortranParser.AdditionContext ctx)
+    {
+        if(emitConstant(ctx))
+            return null;
+        
+        if(ctx.addOp() != null && isPrimitive(ctx.multiplication().type, ctx.expression().type))
+        {
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+            return null;
+        }
+        
+        //a chain of string + builds one string, instead of a string for each +
+        if(isConcatenation(ctx))
+        {
+            ArrayList<ParserRuleContext> parts = new ArrayList<>();
+            addConcatenationParts(ctx, parts);
+            emitConcatenation(parts);
+            return null;
+        }
+        
+        visitChildren(ctx);
+        
+        if(ctx.addOp() != null)
+        {
+            String routineName = Predefined.OPERATOR_PLUS;
+            if(ctx.addOp().MINUS() != null)
+                routineName = Predefined.OPERATOR_MINUS;
+            
+            ArgumentList arg = new ArgumentList(ctx.expression().type);
+            TypeSpec returnType = ctx.type.lookupRoutine(routineName, arg).returnType;
+            
+            code.emitRoutineCall(routineName, ctx.multiplication().type, arg, returnType, false);
+        }
+        
+        return null;
+    }
+    
+    private boolean isConcatenation(ParserRuleContext ctx)
+    {
+        if(!(ctx instanceof SixtyFortranParser.AdditionContext))
+            return false;
+        
+        SixtyFortranParser.AdditionContext addition = (SixtyFortranParser.AdditionContext) ctx;
+        return addition.addOp() != null && addition.addOp().PLUS() != null && addition.type == predefined.stringType &&
+               addition.multiplication().type == predefined.stringType && addition.expression().type == predefined.stringType;
+    }
+    
+    /**
+     * Collects the parts of a concatenation from left to right, through parentheses and nested concatenations.
+     */
+    private void addConcatenationParts(ParserRuleContext ctx, List<ParserRuleContext> parts)
+    {
+        ctx = skipPassThrough(ctx);
+        if(getKnownString(ctx) == null && isConcatenation(ctx))
+        {
+            addConcatenationParts(((SixtyFortranParser.AdditionContext) ctx).multiplication(), parts);
+            addConcatenationParts(((SixtyFortranParser.AdditionContext) ctx).expression(), parts);
+        }
+        else
+            parts.add(ctx);
+    }
+    
+    /**
+     * Emits the parts into a StringBuilder made big enough for the literal parts: strings known at compile time
+     * are appended as constants, string(n) of a specialized integer or real appends the number itself, and
+     * anything else appends its string's value.
+     */
+    private void emitConcatenation(List<ParserRuleContext> parts)
+    {
+        //the size of a part that isn't known is a guess, like StringBuilder's own default
+        int capacity = 0;
+        for(ParserRuleContext part : parts)
+        {
+            String text = getKnownString(part);
+            capacity += (text != null)? text.length() : 16;
+        }
+        
+        code.emitConcatenationStart(capacity);
+        for(ParserRuleContext part : parts)
+        {
+            String text = getKnownString(part);
+            SixtyFortranParser.ExpressionContext number = getStringConversionArgument(part);
+            if(text != null)
+            {
+                code.emit(code.getConstantPush(text));
+                code.emitAppend("Ljava/lang/String;");
+            }
+            else if(number != null)
+            {
+                emitUnboxed(number);
+                code.emitAppend(code.getPrimitiveDescriptor(number.type));
+            }
+            else
+            {
+                visit(part);
+                code.emitUnbox(predefined.stringType);
+                code.emitAppend("Ljava/lang/String;");
+            }
+        }
+        code.emitConcatenationEnd();
+    }
+    
+    /**
+     * @return the text of a string literal or of a string folded at compile time, otherwise null.
+     */
+    private String getKnownString(ParserRuleContext ctx)
+    {
+        if(ctx instanceof SixtyFortranParser.StringTermContext)
+        {
+            String literal = ((SixtyFortranParser.StringTermContext) ctx).STRING().getText();
+            return literal.substring(1, literal.length() - 1);
+        }
+        
+        Object value = (folder != null)? folder.fold(ctx) : null;
+        return (value instanceof String)? (String) value : null;
+    }
+    
+    /**
+     * @return n of string(n) when n is a specialized integer or real, which appends the same text as the library's string(n).
+     */
+    private SixtyFortranParser.ExpressionContext getStringConversionArgument(ParserRuleContext ctx)
+    {
+        if(!(ctx instanceof SixtyFortranParser.CallTermContext))
+            return null;
+        
+        SixtyFortranParser.RoutineCallContext conversion = ((SixtyFortranParser.CallTermContext) ctx).call().routineCall();
+        if(ConstantFolder.getConversionType(conversion, predefined) != predefined.stringType ||
+           localScope.lookupEntry(conversion.IDENTIFIER().getText()) != null)
+            return null;
+        
+        SixtyFortranParser.ExpressionContext argument = conversion.argumentList().expression(0);
+        return (isPrimitive(argument.type) && argument.type != predefined.boolType)? argument : null;
+    }
+    
+    @Override
+    public Object visitMultiplication(SixtyFortranParser.MultiplicationContext ctx)
+    {
+        if(emitConstant(ctx))
+            return null;
+        
+        if(ctx.mulOp() != null && isPrimitive(ctx.term().type, ctx.expression().type))
+        {
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+            return null;
+        }
+        
+        visitChildren(ctx);
+        
+        if(ctx.mulOp() != null)
         {
             String routineName = Predefined.OPERATOR_STAR;
             if(ctx.mulOp().DIV() != null)
@@ -365,53 +1119,531 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitStringTerm(SixtyFortranParser.StringTermContext ctx)
     {
-        code.emit("new " + Predefined.stringType.getPath());
-        code.emit("dup");
-        code.emit("ldc " + ctx.STRING().getText());
-        code.emit("invokespecial " + Predefined.stringType.getPath() + "/<init>(Ljava/lang/String;)V");
-        
+        emitLiteral(ctx, code.getStringPush(ctx.STRING().getText()));
         return null;
     }
     
     @Override
     public Object visitNumTerm(SixtyFortranParser.NumTermContext ctx)
     {
-        if(ctx.INTEGER() != null)
+        emitLiteral(ctx, (ctx.INTEGER() != null)? code.getIntPush(ctx.INTEGER().getText()) : code.getRealPush(ctx.REAL().getText()));
+        return null;
+    }
+    
+    @Override
+    public Object visitBoolTerm(SixtyFortranParser.BoolTermContext ctx)
+    {
+        emitLiteral(ctx, new Instruction((ctx.TRUE() != null)? Opcode.ICONST_1 : Opcode.ICONST_0));
+        return null;
+    }
+    
+    @Override
+    public Object visitNotTerm(SixtyFortranParser.NotTermContext ctx)
+    {
+        if(emitConstant(ctx))
+            return null;
+        
+        if(isPrimitive(ctx.term().type))
         {
-            code.emit("new " + Predefined.intType.getPath());
-            code.emit("dup");
-            code.emit("ldc " + ctx.INTEGER().getText());
-            code.emit("invokespecial " + Predefined.intType.getPath() + "/<init>(I)V");
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+            return null;
         }
-        else
+        
+        emitUnaryOperator(Predefined.UNARY_NOT, ctx.term(), ctx.type);
+        return null;
+    }
+    
+    @Override
+    public Object visitMinusTerm(SixtyFortranParser.MinusTermContext ctx)
+    {
+        if(emitConstant(ctx))
+            return null;
+        
+        if(isPrimitive(ctx.term().type))
         {
-            code.emit("new " + Predefined.realType.getPath());
-            code.emit("dup");
-            code.emit("ldc " + ctx.REAL().getText());
-            code.emit("invokespecial " + Predefined.realType.getPath() + "/<init>(D)V");
+            emitUnboxed(ctx);
+            code.emitValueOf(ctx.type);
+            return null;
         }
         
-        
+        emitUnaryOperator(Predefined.UNARY_MINUS, ctx.term(), ctx.type);
         return null;
     }
     
+    /**
+     * Emits a call of the term's type's static unary operator on the term's object.
+     */
+    private void emitUnaryOperator(String routineName, SixtyFortranParser.TermContext term, TypeSpec returnType)
+    {
+        visit(term);
+        code.emitRoutineCall(routineName, term.type, new ArgumentList(term.type), returnType, true);
+    }
+    
     @Override
-    public Object visitBoolTerm(SixtyFortranParser.BoolTermContext ctx)
+    public Object visitCallTerm(SixtyFortranParser.CallTermContext ctx)
     {
-        code.emit("new " + Predefined.boolType.getPath());
-        code.emit("dup");
+        if(emitConstant(ctx))
+            return null;
         
-        if(ctx.TRUE() != null)
-            code.emit("iload_1");
+        //a conversion between specialized types is the conversion instruction, and only its result is boxed
+        if(isConversion(ctx.call()))
+        {
+            if(isShared(ctx))
+            {
+                emitUnboxed(ctx);
+                code.emitValueOf(ctx.type);
+            }
+            else
+            {
+                code.emitBoxNew(ctx.type);
+                emitUnboxed(ctx);
+                code.emitBox(ctx.type);
+            }
+            return null;
+        }
+        
+        return visitChildren(ctx);
+    }
+    
+    /**
+     * Emits the expression's value as a new object if it is known at compile time.
+     * @return whether it was.
+     */
+    private boolean emitConstant(ParserRuleContext ctx)
+    {
+        Object value = (folder != null)? folder.fold(ctx) : null;
+        if(value == null)
+            return false;
+        
+        emitLiteral(ctx, folder.getType(value), code.getConstantPush(value));
+        return true;
+    }
+    
+    private void emitLiteral(ParserRuleContext ctx, Instruction push)
+    {
+        emitLiteral(ctx, ((SixtyFortranParser.TermContext) ctx).type, push);
+    }
+    
+    /**
+     * Emits a literal as the class's shared object if nothing can hold on to it, otherwise as a new object.
+     */
+    private void emitLiteral(ParserRuleContext ctx, TypeSpec type, Instruction push)
+    {
+        if(isShared(ctx))
+            code.emitSharedConstant(type, push);
         else
-            code.emit("iload_0");
+            code.emitConstant(type, push);
+    }
+    
+    /**
+     * An expression's object can be shared when it is only read: the library's operators, conversions and print
+     * don't change or keep their operands, and assignment copies the value. Anything else, such as a new variable,
+     * a routine's argument or an and/or whose result is one of its operands, could keep the object and change it.
+     * @return whether the expression's object is only read.
+     */
+    private boolean isShared(ParserRuleContext ctx)
+    {
+        ParserRuleContext parent = ctx.getParent();
+        while(ConstantFolder.isPassThrough(parent))
+        {
+            ctx = parent;
+            parent = parent.getParent();
+        }
         
-        code.emit("invokespecial " + Predefined.boolType.getPath() + "/<init>(I)V");
-        return null;
+        if(parent instanceof SixtyFortranParser.ExpressionContext)
+        {
+            SixtyFortranParser.ExpressionContext expression = (SixtyFortranParser.ExpressionContext) parent;
+            return isPrimitive(expression.comparison().type, expression.expression().type) || isShared(expression);
+        }
+        else if(parent instanceof SixtyFortranParser.ComparisonContext)
+            return isValueType(((SixtyFortranParser.ComparisonContext) parent).addition().type);
+        else if(parent instanceof SixtyFortranParser.AdditionContext)
+            return isValueType(((SixtyFortranParser.AdditionContext) parent).multiplication().type);
+        else if(parent instanceof SixtyFortranParser.MultiplicationContext)
+            return isValueType(((SixtyFortranParser.MultiplicationContext) parent).term().type);
+        else if(parent instanceof SixtyFortranParser.NotTermContext || parent instanceof SixtyFortranParser.MinusTermContext)
+            return isValueType(((SixtyFortranParser.TermContext) ctx).type);
+        else if(parent instanceof SixtyFortranParser.IfBlockContext || parent instanceof SixtyFortranParser.ElseifBlockContext ||
+                parent instanceof SixtyFortranParser.LoopStatementContext)
+            return true;
+        else if(parent instanceof SixtyFortranParser.AssignExistingVariableContext)
+        {
+            SixtyFortranParser.AssignExistingVariableContext assignment = (SixtyFortranParser.AssignExistingVariableContext) parent;
+            return isValueType(assignment.call().type) &&
+                   assignment.call().type.lookupRoutine(Predefined.OPERATOR_ASSIGN, new ArgumentList(assignment.expression().type)) != null;
+        }
+        else if(parent instanceof SixtyFortranParser.ArgumentListContext && parent.getParent() instanceof SixtyFortranParser.RoutineCallContext)
+        {
+            SixtyFortranParser.RoutineCallContext call = (SixtyFortranParser.RoutineCallContext) parent.getParent();
+            ScopeEntry entry = localScope.lookupEntry(call.IDENTIFIER().getText());
+            if(entry != null)
+                return entry.type == predefined.printType && call.call() == null;
+            
+            return ConstantFolder.getConversionType(call, predefined) != null;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return whether the expression's object is made by it and only it holds the object, such as a literal's that isn't shared.
+     */
+    private boolean isNew(ParserRuleContext ctx)
+    {
+        if(folder != null && folder.fold(ctx) != null)
+            return true;
+        
+        ctx = skipPassThrough(ctx);
+        return ctx instanceof SixtyFortranParser.NumTermContext || ctx instanceof SixtyFortranParser.StringTermContext ||
+               ctx instanceof SixtyFortranParser.BoolTermContext ||
+               (ctx instanceof SixtyFortranParser.CallTermContext && isConversion(((SixtyFortranParser.CallTermContext) ctx).call()));
     }
+    
+    /**
+     * @return whether the type is one of the library's integer, real, bool or string.
+     */
+    private boolean isValueType(TypeSpec type)
+    {
+        return type == predefined.intType || type == predefined.realType || type == predefined.boolType || type == predefined.stringType;
+    }
+    
+    /**
+     * @return the expression's value if it is known at compile time and is an integer, real or bool, otherwise null.
+     */
+    private Object getPrimitiveConstant(ParserRuleContext ctx)
+    {
+        Object value = (folder != null)? folder.fold(ctx) : null;
+        return (value instanceof String)? null : value;
+    }
+    
+    //-------- type specialization: integer, real and bool as JVM ints and doubles --------\\
+    
+    /**
+     * @return whether all of the types are integer, real or bool and expressions of them are specialized.
+     */
+    private boolean isPrimitive(TypeSpec... types)
+    {
+        if(!context.specialize)
+            return false;
+        
+        for(TypeSpec type : types)
+            if(type == null || (type != predefined.intType && type != predefined.realType && type != predefined.boolType))
+                return false;
+        
+        return true;
+    }
+    
+    /**
+     * Emits an if or while condition, which jumps to the label if it is false and falls through if it is true.
+     */
+    private void emitCondition(SixtyFortranParser.ExpressionContext ctx, Label falseLabel)
+    {
+        //a constant condition either always jumps or never does, and the blocks that can't run are removed later
+        Object value = getPrimitiveConstant(ctx);
+        if(value instanceof Boolean)
+        {
+            if(!(Boolean) value)
+                code.emit(Opcode.GOTO, falseLabel);
+        }
+        else if(isPrimitive(ctx.type))
+            emitJump(ctx, false, falseLabel);
+        else
+        {
+            visit(ctx);
+            code.emitBoolValue();
+            code.emit(Opcode.IFEQ, falseLabel);
+        }
+    }
+    
+    /**
+     * Emits a bool expression as branches: it jumps to the label if the expression is whenTrue, and falls through otherwise.
+     * Comparisons of integers and reals branch on the comparison itself, and and/or become chains of branches,
+     * so no bool is computed unless it comes from a routine or a variable.
+     */
+    private void emitJump(ParserRuleContext ctx, boolean whenTrue, Label target)
+    {
+        Object value = getPrimitiveConstant(ctx);
+        if(value instanceof Boolean)
+        {
+            if((Boolean) value == whenTrue)
+                code.emit(Opcode.GOTO, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.ExpressionContext)
+        {
+            SixtyFortranParser.ExpressionContext expression = (SixtyFortranParser.ExpressionContext) ctx;
+            
+            if(expression.boolOp() == null)
+                emitJump(expression.comparison(), whenTrue, target);
+            else if(isPrimitive(expression.comparison().type, expression.expression().type))
+            {
+                boolean isOr = (expression.boolOp().OR() != null);
+                
+                if(isOr == whenTrue)
+                {
+                    //either operand alone decides the jump: "a or b" is true as soon as a is, "a and b" is false as soon as a is
+                    emitJump(expression.comparison(), whenTrue, target);
+                    emitJump(expression.expression(), whenTrue, target);
+                }
+                else
+                {
+                    //the left operand can only decide that there is no jump
+                    Label skip = context.newLabel();
+                    emitJump(expression.comparison(), !whenTrue, skip);
+                    emitJump(expression.expression(), whenTrue, target);
+                    code.emitLabel(skip);
+                }
+            }
+            else
+                emitValueJump(ctx, whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.ComparisonContext)
+        {
+            SixtyFortranParser.ComparisonContext comparison = (SixtyFortranParser.ComparisonContext) ctx;
+            
+            if(comparison.relOp() == null)
+                emitJump(comparison.addition(), whenTrue, target);
+            else if(isPrimitive(comparison.addition().type, comparison.expression().type))
+            {
+                emitUnboxed(comparison.addition());
+                emitUnboxed(comparison.expression());
+                code.emitCompareBranch(getRelOpRoutine(comparison.relOp()), comparison.addition().type, target, whenTrue);
+            }
+            else
+                emitValueJump(ctx, whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.AdditionContext && ((SixtyFortranParser.AdditionContext) ctx).addOp() == null)
+        {
+            emitJump(((SixtyFortranParser.AdditionContext) ctx).multiplication(), whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.MultiplicationContext && ((SixtyFortranParser.MultiplicationContext) ctx).mulOp() == null)
+        {
+            emitJump(((SixtyFortranParser.MultiplicationContext) ctx).term(), whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.ParenTermContext)
+        {
+            emitJump(((SixtyFortranParser.ParenTermContext) ctx).expression(), whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.NotTermContext && isPrimitive(((SixtyFortranParser.NotTermContext) ctx).term().type))
+        {
+            emitJump(((SixtyFortranParser.NotTermContext) ctx).term(), !whenTrue, target);
+        }
+        else if(ctx instanceof SixtyFortranParser.BoolTermContext)
+        {
+            if((((SixtyFortranParser.BoolTermContext) ctx).TRUE() != null) == whenTrue)
+                code.emit(Opcode.GOTO, target);
+        }
+        else
+            emitValueJump(ctx, whenTrue, target);
+    }
+    
+    /**
+     * Emits a bool expression made of branches as a value: 0 (false) or 1 (true).
+     * Like in a condition, the right operand of and/or is only evaluated if the left one doesn't decide the result.
+     */
+    private void emitBoolFromJump(ParserRuleContext ctx)
+    {
+        Label falseLabel = context.newLabel();
+        Label endLabel = context.newLabel();
+        
+        emitJump(ctx, false, falseLabel);
+        code.emit(Opcode.ICONST_1);
+        code.emit(Opcode.GOTO, endLabel);
+        code.emitLabel(falseLabel);
+        code.emit(Opcode.ICONST_0);
+        code.emitLabel(endLabel);
+    }
+    
+    private void emitValueJump(ParserRuleContext ctx, boolean whenTrue, Label target)
+    {
+        emitUnboxed(ctx);
+        code.emit((whenTrue)? Opcode.IFNE : Opcode.IFEQ, target);
+    }
+    
+    /**
+     * Emits an expression of type integer, real or bool, leaving its value on the stack as an int or a double.
+     * Only the parts that can't be specialized (such as routine calls) create objects, which are unboxed right away.
+     */
+    private void emitUnboxed(ParserRuleContext ctx)
+    {
+        Object value = getPrimitiveConstant(ctx);
+        if(value != null)
+            code.emitPrimitiveConstant(value);
+        else if(ctx instanceof SixtyFortranParser.ExpressionContext)
+        {
+            SixtyFortranParser.ExpressionContext expression = (SixtyFortranParser.ExpressionContext) ctx;
+            
+            if(expression.boolOp() == null)
+                emitUnboxed(expression.comparison());
+            else if(isPrimitive(expression.comparison().type, expression.expression().type))
+                emitBoolFromJump(expression);
+            else
+            {
+                visit(expression);
+                code.emitUnbox(expression.type);
+            }
+        }
+        else if(ctx instanceof SixtyFortranParser.ComparisonContext)
+        {
+            SixtyFortranParser.ComparisonContext comparison = (SixtyFortranParser.ComparisonContext) ctx;
+            
+            if(comparison.relOp() == null)
+                emitUnboxed(comparison.addition());
+            else if(isPrimitive(comparison.addition().type, comparison.expression().type))
+                emitBoolFromJump(comparison);
+            else
+            {
+                visit(comparison);
+                code.emitUnbox(comparison.type);
+            }
+        }
+        else if(ctx instanceof SixtyFortranParser.AdditionContext)
+        {
+            SixtyFortranParser.AdditionContext addition = (SixtyFortranParser.AdditionContext) ctx;
+            
+            if(addition.addOp() == null)
+                emitUnboxed(addition.multiplication());
+            else if(isPrimitive(addition.multiplication().type, addition.expression().type))
+            {
+                emitUnboxed(addition.multiplication());
+                emitUnboxed(addition.expression());
+                code.emitArithmetic((addition.addOp().MINUS() != null)? Predefined.OPERATOR_MINUS : Predefined.OPERATOR_PLUS, addition.type);
+            }
+            else
+            {
+                visit(addition);
+                code.emitUnbox(addition.type);
+            }
+        }
+        else if(ctx instanceof SixtyFortranParser.MultiplicationContext)
+        {
+            SixtyFortranParser.MultiplicationContext multiplication = (SixtyFortranParser.MultiplicationContext) ctx;
+            
+            if(multiplication.mulOp() == null)
+                emitUnboxed(multiplication.term());
+            else if(isPrimitive(multiplication.term().type, multiplication.expression().type))
+            {
+                String routineName = Predefined.OPERATOR_STAR;
+                if(multiplication.mulOp().DIV() != null)
+                    routineName = Predefined.OPERATOR_SLASH;
+                else if(multiplication.mulOp().MOD() != null)
+                    routineName = Predefined.OPERATOR_MOD;
+                
+                emitUnboxed(multiplication.term());
+                emitUnboxed(multiplication.expression());
+                code.emitArithmetic(routineName, multiplication.type);
+            }
+            else
+            {
+                visit(multiplication);
+                code.emitUnbox(multiplication.type);
+            }
+        }
+        else if(ctx instanceof SixtyFortranParser.NumTermContext)
+        {
+            SixtyFortranParser.NumTermContext num = (SixtyFortranParser.NumTermContext) ctx;
+            
+            if(num.INTEGER() != null)
+                code.emitIntConstant(num.INTEGER().getText());
+            else
+                code.emitRealConstant(num.REAL().getText());
+        }
+        else if(ctx instanceof SixtyFortranParser.BoolTermContext)
+        {
+            code.emit((((SixtyFortranParser.BoolTermContext) ctx).TRUE() != null)? Opcode.ICONST_1 : Opcode.ICONST_0);
+        }
+        else if(ctx instanceof SixtyFortranParser.NotTermContext && isPrimitive(((SixtyFortranParser.NotTermContext) ctx).term().type))
+        {
+            emitUnboxed(((SixtyFortranParser.NotTermContext) ctx).term());
+            code.emit(Opcode.ICONST_1);
+            code.emit(Opcode.IXOR);
+        }
+        else if(ctx instanceof SixtyFortranParser.MinusTermContext && isPrimitive(((SixtyFortranParser.MinusTermContext) ctx).term().type))
+        {
+            SixtyFortranParser.TermContext term = ((SixtyFortranParser.MinusTermContext) ctx).term();
+            
+            emitUnboxed(term);
+            code.emit((term.type == predefined.realType)? Opcode.DNEG : Opcode.INEG);
+        }
+        else if(ctx instanceof SixtyFortranParser.ParenTermContext)
+        {
+            emitUnboxed(((SixtyFortranParser.ParenTermContext) ctx).expression());
+        }
+        else if(ctx instanceof SixtyFortranParser.CallTermContext && isConversion(((SixtyFortranParser.CallTermContext) ctx).call()))
+        {
+            SixtyFortranParser.RoutineCallContext conversion = ((SixtyFortranParser.CallTermContext) ctx).call().routineCall();
+            SixtyFortranParser.ExpressionContext argument = conversion.argumentList().expression(0);
+            TypeSpec type = localScope.lookupType(conversion.IDENTIFIER().getText());
+            
+            //integer(real) truncates like a Java cast, and bool is 0 or 1 either way
+            emitUnboxed(argument);
+            if(type == predefined.realType && argument.type != predefined.realType)
+                code.emit(Opcode.I2D);
+            else if(type != predefined.realType && argument.type == predefined.realType)
+                code.emit(Opcode.D2I);
+        }
+        else
+        {
+            SixtyFortranParser.TermContext term = (SixtyFortranParser.TermContext) ctx;
+            
+            visit(term);
+            code.emitUnbox(term.type);
+        }
+    }
+    
+    /**
+     * @return whether the call is a conversion such as real(n) from one specialized type to another.
+     */
+    private boolean isConversion(SixtyFortranParser.CallContext ctx)
+    {
+        SixtyFortranParser.RoutineCallContext routineCall = ctx.routineCall();
+        if(routineCall == null || routineCall.indexModifier() != null || routineCall.call() != null || routineCall.argumentList() == null)
+            return false;
+        
+        String id = routineCall.IDENTIFIER().getText();
+        List<SixtyFortranParser.ExpressionContext> arguments = routineCall.argumentList().expression();
+        
+        return localScope.lookupEntry(id) == null && arguments.size() == 1 &&
+               isPrimitive(localScope.lookupType(id), arguments.get(0).type);
+    }
+    
+    static String getRelOpRoutine(SixtyFortranParser.RelOpContext ctx)
+    {
+        if(ctx.GREATER_EQUALS() != null)
+            return Predefined.OPERATOR_GREATER_EQUALS;
+        else if(ctx.LESS_EQUALS() != null)
+            return Predefined.OPERATOR_LESS_EQUALS;
+        else if(ctx.LESS_THAN() != null)
+            return Predefined.OPERATOR_LESS_THAN;
+        else if(ctx.GREATER_THAN() != null)
+            return Predefined.OPERATOR_GREATER_THAN;
+        else if(ctx.NOT_EQUALS() != null)
+            return Predefined.OPERATOR_NOT_EQUALS;
+        
+        return Predefined.OPERATOR_EQUALS;
+    }
+    
     //-------- https://www.youtube.com/watch?v=-1qju6V1jLM --------\\
     
     
+    /**
+     * @return whether the call is integer(read()) or real(read()).
+     */
+    private boolean isConvertedRead(SixtyFortranParser.RoutineCallContext ctx)
+    {
+        TypeSpec type = ConstantFolder.getConversionType(ctx, predefined);
+        if(type != predefined.intType && type != predefined.realType)
+            return false;
+        
+        ParserRuleContext argument = skipPassThrough(ctx.argumentList().expression(0));
+        if(!(argument instanceof SixtyFortranParser.CallTermContext))
+            return false;
+        
+        SixtyFortranParser.RoutineCallContext call = ((SixtyFortranParser.CallTermContext) argument).call().routineCall();
+        return call != null && call.call() == null && call.indexModifier() == null && call.argumentList() == null &&
+               localScope.lookupEntry(call.IDENTIFIER().getText()) == predefined.readEntry;
+    }
+    
     @Override
     public Object visitIdentifierCall(SixtyFortranParser.IdentifierCallContext ctx)
     {
@@ -426,7 +1658,7 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             if(entry.kind == Kind.FIELD && localScope.getParent().getKind() == Kind.TYPE)
             {
                 code.emitLoad(0);
-                code.emit("getfield " + currentFile.getNameNoExtension() + "/type" + " L" + entry.instanceType.getPath() + ";");
+                code.emit(Opcode.GETFIELD, currentFile.getNameNoExtension(), "type", "L" + entry.instanceType.getPath() + ";");
             }
             code.emitLoadEntry(entry);
             
@@ -440,11 +1672,39 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             //we know that we're calling a static field, so we don't need to emit anything
             callHelper(ctx.call(), typeEntry, true);
         }
-       
+        
         code.emit();
         return null;
     }
     
+    @Override
+    public Object visitArgumentList(SixtyFortranParser.ArgumentListContext ctx)
+    {
+        for(SixtyFortranParser.ExpressionContext argument : ctx.expression())
+        {
+            //a routine can assign to its parameters, which changes the argument's object, so it only gets a variable's own object or a copy
+            if(isValueType(argument.type) && !isShared(argument) && !isNew(argument) && !isVariable(argument))
+            {
+                code.emitBoxNew(argument.type);
+                visit(argument);
+                code.emitCopy(argument.type);
+            }
+            else
+                visit(argument);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @return whether the expression is a plain variable such as x.
+     */
+    private boolean isVariable(ParserRuleContext ctx)
+    {
+        ctx = skipPassThrough(ctx);
+        return ctx instanceof SixtyFortranParser.CallTermContext && getVariableName(((SixtyFortranParser.CallTermContext) ctx).call()) != null;
+    }
+    
     @Override
     public Object visitRoutineCall(SixtyFortranParser.RoutineCallContext ctx)
     {
@@ -457,22 +1717,30 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         
         ArgumentList routineArgs = (ctx.argumentList() == null)? new ArgumentList() : ctx.argumentList().args;
         
-        if(entry != null)
+        SixtyFortranParser.RoutineDefinitionContext staticRoutine = staticRoutines.get(id);
+        if(staticRoutine != null && entry == worldScope.lookupEntryNoParent(id))
+        {
+            if(ctx.argumentList() != null)
+                visit(ctx.argumentList());
+            
+            code.emitStaticRoutineCall(programName, staticRoutine.routine);
+        }
+        else if(entry != null)
         {
             TypeSpec entryType = entry.type;
-
+            
             RoutineSpec routine = entryType.lookupRoutine(routineName, routineArgs);
             if(routine == null) //basically, the routineSpec's name may be OPERATOR_PAREN, or it could be the name of the routine itself. I don't know if I've fixed this. 
                 routine = entryType.lookupRoutine(entryType.name, routineArgs);
             
             //TODO: apparently routine can still be null?
-            TypeSpec returnType = null;
+            TypeSpec returnType = (routine != null)? routine.returnType : null;
             
             //if we're calling a field and the parent scope is a type, then that means we are in a routine accessing one of the types field and thus we need to load a ref to that instance first
             if(entry.kind == Kind.FIELD && localScope.getParent().getKind() == Kind.TYPE)
             {
                 code.emitLoad(0);
-                code.emit("getfield " + currentFile.getNameNoExtension() + "/type" + " L" + entry.instanceType.getPath() + ";");
+                code.emit(Opcode.GETFIELD, currentFile.getNameNoExtension(), "type", "L" + entry.instanceType.getPath() + ";");
             }
             code.emitLoadEntry(entry);
             
@@ -482,6 +1750,13 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             
             code.emitRoutineCall(routineName, entryType, routineArgs, returnType, false);            
         }
+        else if(staticType != null && isConvertedRead(ctx))
+        {
+            //integer(read()) and real(read()) parse the number straight from the input, without the line's string
+            code.emitLoadEntry(predefined.readEntry);
+            code.emitRoutineCall((staticType == predefined.intType)? Predefined.READ_INTEGER : Predefined.READ_REAL,
+                                 predefined.readType, new ArgumentList(), staticType, false);
+        }
         else if(staticType != null)
         {
             TypeSpec returnType = staticType.lookupStaticRoutine(routineName, routineArgs).returnType;
@@ -568,12 +1843,12 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
             routine = entry.type.lookupRoutine(Predefined.OPERATOR_PAREN, args);
         
         //since the parent type doesn't store the path to the routine, we need to construct it ourself
-        String routinePath = Predefined.routineType.getPath();
+        String routinePath = predefined.routineType.getPath();
         
         if(isStatic)
-            code.emit("getstatic " + parentType.getPath() + "/" + id + " L" + routinePath + ";");
+            code.emit(Opcode.GETSTATIC, parentType.getPath(), id, "L" + routinePath + ";");
         else
-            code.emit("getfield " + parentType.getPath() + "/" + id + " L" + routinePath + ";");
+            code.emit(Opcode.GETFIELD, parentType.getPath(), id, "L" + routinePath + ";");
         
         code.emitRoutineCall(Predefined.OPERATOR_PAREN, entry.type, args, routine.returnType, false);
     }
@@ -591,5 +1866,5 @@ public class Compiler extends SixtyFortranBaseVisitor<Object>
         code.setCurrentFile(currentFile);
         code.setCurrentScope(newScope);
     }
-            
+
 }
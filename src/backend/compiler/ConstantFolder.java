@@ -0,0 +1,449 @@
+package backend.compiler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import antlr4.SixtyFortranParser;
+import intermediate.Predefined;
+import intermediate.scope.ScopeEntry;
+import intermediate.type.ArgumentList;
+import intermediate.type.RoutineSpec;
+import intermediate.type.TypeSpec;
+
+/**
+ * <h1>ConstantFolder</h1>
+ *
+ * <p>Works out the values of expressions that only depend on literals, as an Integer, Double,
+ * Boolean or String. An operator is only evaluated if the operator tables of the predefined
+ * types have it for the operands' types, and it is evaluated the way the library does it.
+ * Anything that would fail at run time, such as a division by zero, is left alone.</p>
+ *
+ * <p>With propagation on, variables of the predefined types that are declared with a constant
+ * value and are only ever read by operators and conversions (so that nothing can change them)
+ * are constants as well.</p>
+ */
+public class ConstantFolder
+{
+    //cached for expressions that aren't constant
+    private static final Object NOT_CONSTANT = new Object();
+    
+    private Predefined predefined;
+    private boolean propagate;
+    private HashMap<ParserRuleContext, Object> values;
+    private HashMap<ScopeEntry, Object> variables;
+    
+    /**
+     * @param propagate whether constant variables are replaced by their values.
+     */
+    public ConstantFolder(Predefined predefined, boolean propagate)
+    {
+        this.predefined = predefined;
+        this.propagate = propagate;
+        this.values = new HashMap<>();
+        this.variables = new HashMap<>();
+    }
+    
+    /**
+     * Finds the program's constant variables, once Semantics has given every expression its type.
+     */
+    public void findConstants(ParseTree program)
+    {
+        if(!propagate)
+            return;
+        
+        HashSet<String> changed = new HashSet<>();
+        findChangedNames(program, changed);
+        findConstantVariables(program, changed);
+    }
+    
+    /**
+     * @return the expression's value, or null if it isn't known at compile time.
+     */
+    public Object fold(ParserRuleContext ctx)
+    {
+        Object value = values.get(ctx);
+        if(value == null)
+        {
+            value = evaluate(ctx);
+            values.put(ctx, (value == null)? NOT_CONSTANT : value);
+        }
+        
+        return (value == NOT_CONSTANT)? null : value;
+    }
+    
+    /**
+     * @return the value that replaces the variable, or null if it isn't a constant.
+     */
+    public Object getConstant(ScopeEntry entry)
+    {
+        return variables.get(entry);
+    }
+    
+    public TypeSpec getType(Object value)
+    {
+        if(value instanceof Integer)
+            return predefined.intType;
+        else if(value instanceof Double)
+            return predefined.realType;
+        else if(value instanceof Boolean)
+            return predefined.boolType;
+        else
+            return predefined.stringType;
+    }
+    
+    private Object evaluate(ParserRuleContext ctx)
+    {
+        if(ctx instanceof SixtyFortranParser.ExpressionContext)
+        {
+            SixtyFortranParser.ExpressionContext expression = (SixtyFortranParser.ExpressionContext) ctx;
+            if(expression.boolOp() == null)
+                return fold(expression.comparison());
+            
+            //and/or short-circuit, so a left operand that decides the result is enough
+            String routineName = (expression.boolOp().AND() != null)? Predefined.OPERATOR_AND : Predefined.OPERATOR_OR;
+            Object left = fold(expression.comparison());
+            if(left instanceof Boolean && expression.expression().type == predefined.boolType &&
+               (Boolean) left == routineName.equals(Predefined.OPERATOR_OR))
+                return left;
+            
+            return evaluate(routineName, left, fold(expression.expression()));
+        }
+        else if(ctx instanceof SixtyFortranParser.ComparisonContext)
+        {
+            SixtyFortranParser.ComparisonContext comparison = (SixtyFortranParser.ComparisonContext) ctx;
+            if(comparison.relOp() == null)
+                return fold(comparison.addition());
+            
+            return evaluate(Compiler.getRelOpRoutine(comparison.relOp()), fold(comparison.addition()), fold(comparison.expression()));
+        }
+        else if(ctx instanceof SixtyFortranParser.AdditionContext)
+        {
+            SixtyFortranParser.AdditionContext addition = (SixtyFortranParser.AdditionContext) ctx;
+            if(addition.addOp() == null)
+                return fold(addition.multiplication());
+            
+            String routineName = (addition.addOp().MINUS() != null)? Predefined.OPERATOR_MINUS : Predefined.OPERATOR_PLUS;
+            return evaluate(routineName, fold(addition.multiplication()), fold(addition.expression()));
+        }
+        else if(ctx instanceof SixtyFortranParser.MultiplicationContext)
+        {
+            SixtyFortranParser.MultiplicationContext multiplication = (SixtyFortranParser.MultiplicationContext) ctx;
+            if(multiplication.mulOp() == null)
+                return fold(multiplication.term());
+            
+            String routineName = Predefined.OPERATOR_STAR;
+            if(multiplication.mulOp().DIV() != null)
+                routineName = Predefined.OPERATOR_SLASH;
+            else if(multiplication.mulOp().MOD() != null)
+                routineName = Predefined.OPERATOR_MOD;
+            
+            return evaluate(routineName, fold(multiplication.term()), fold(multiplication.expression()));
+        }
+        else if(ctx instanceof SixtyFortranParser.NumTermContext)
+        {
+            SixtyFortranParser.NumTermContext num = (SixtyFortranParser.NumTermContext) ctx;
+            try
+            {
+                if(num.INTEGER() != null)
+                    return Integer.parseInt(num.INTEGER().getText());
+                
+                return finite(Double.parseDouble(num.REAL().getText()));
+            } catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+        else if(ctx instanceof SixtyFortranParser.BoolTermContext)
+        {
+            return ((SixtyFortranParser.BoolTermContext) ctx).TRUE() != null;
+        }
+        else if(ctx instanceof SixtyFortranParser.StringTermContext)
+        {
+            //strings with escapes are left to the assembler
+            String text = ((SixtyFortranParser.StringTermContext) ctx).STRING().getText();
+            String value = text.substring(1, text.length() - 1);
+            return (value.contains("\\") || value.contains("\""))? null : value;
+        }
+        else if(ctx instanceof SixtyFortranParser.NotTermContext)
+        {
+            Object operand = fold(((SixtyFortranParser.NotTermContext) ctx).term());
+            if(operand == null || getType(operand).lookupStaticRoutine(Predefined.UNARY_NOT, new ArgumentList(getType(operand))) == null)
+                return null;
+            
+            return !(Boolean) operand;
+        }
+        else if(ctx instanceof SixtyFortranParser.MinusTermContext)
+        {
+            Object operand = fold(((SixtyFortranParser.MinusTermContext) ctx).term());
+            if(operand == null || getType(operand).lookupStaticRoutine(Predefined.UNARY_MINUS, new ArgumentList(getType(operand))) == null)
+                return null;
+            
+            return (operand instanceof Integer)? (Object) (-(Integer) operand) : (Object) (-(Double) operand);
+        }
+        else if(ctx instanceof SixtyFortranParser.ParenTermContext)
+        {
+            return fold(((SixtyFortranParser.ParenTermContext) ctx).expression());
+        }
+        else if(ctx instanceof SixtyFortranParser.CallTermContext)
+        {
+            return evaluateCall(((SixtyFortranParser.CallTermContext) ctx).call());
+        }
+        
+        return null;
+    }
+    
+    private Object evaluateCall(SixtyFortranParser.CallContext ctx)
+    {
+        if(ctx.identifierCall() != null)
+        {
+            SixtyFortranParser.IdentifierCallContext identifier = ctx.identifierCall();
+            if(identifier.call() != null || identifier.indexModifier() != null)
+                return null;
+            
+            return variables.get(identifier.callEntry);
+        }
+        
+        TypeSpec type = getConversionType(ctx.routineCall(), predefined);
+        if(type == null)
+            return null;
+        
+        Object argument = fold(ctx.routineCall().argumentList().expression(0));
+        if(argument == null || type.lookupStaticRoutine(Predefined.OPERATOR_PAREN, new ArgumentList(getType(argument))) == null)
+            return null;
+        
+        return convert(argument, type);
+    }
+    
+    /**
+     * Evaluates a binary operator, if the left operand's type has it for the right operand's type.
+     */
+    private Object evaluate(String routineName, Object left, Object right)
+    {
+        if(left == null || right == null)
+            return null;
+        
+        RoutineSpec routine = getType(left).lookupRoutine(routineName, new ArgumentList(getType(right)));
+        if(routine == null)
+            return null;
+        
+        if(left instanceof Integer)
+        {
+            int a = (Integer) left;
+            int b = (Integer) right;
+            
+            if(routineName.equals(Predefined.OPERATOR_PLUS))
+                return a + b;
+            else if(routineName.equals(Predefined.OPERATOR_MINUS))
+                return a - b;
+            else if(routineName.equals(Predefined.OPERATOR_STAR))
+                return a * b;
+            else if(routineName.equals(Predefined.OPERATOR_SLASH))
+                return (b == 0)? null : (Object) (a / b);
+            else if(routineName.equals(Predefined.OPERATOR_MOD))
+                return (b == 0)? null : (Object) (a % b);
+            
+            return compare(routineName, Integer.compare(a, b), a == b);
+        }
+        else if(left instanceof Double)
+        {
+            double a = (Double) left;
+            double b = (Double) right;
+            
+            if(routineName.equals(Predefined.OPERATOR_PLUS))
+                return finite(a + b);
+            else if(routineName.equals(Predefined.OPERATOR_MINUS))
+                return finite(a - b);
+            else if(routineName.equals(Predefined.OPERATOR_STAR))
+                return finite(a * b);
+            else if(routineName.equals(Predefined.OPERATOR_SLASH))
+                return finite(a / b);
+            
+            return compare(routineName, Double.compare(a, b), a == b);
+        }
+        else if(left instanceof Boolean)
+        {
+            boolean a = (Boolean) left;
+            boolean b = (Boolean) right;
+            
+            if(routineName.equals(Predefined.OPERATOR_AND))
+                return a && b;
+            else if(routineName.equals(Predefined.OPERATOR_OR))
+                return a || b;
+            
+            return compare(routineName, 0, a == b);
+        }
+        
+        if(routineName.equals(Predefined.OPERATOR_PLUS))
+            return (String) left + (String) right;
+        
+        return compare(routineName, 0, left.equals(right));
+    }
+    
+    /**
+     * @param order the sign of left - right, for the operators that order their operands.
+     */
+    private Object compare(String routineName, int order, boolean equal)
+    {
+        if(routineName.equals(Predefined.OPERATOR_EQUALS))
+            return equal;
+        else if(routineName.equals(Predefined.OPERATOR_NOT_EQUALS))
+            return !equal;
+        else if(routineName.equals(Predefined.OPERATOR_LESS_THAN))
+            return order < 0;
+        else if(routineName.equals(Predefined.OPERATOR_LESS_EQUALS))
+            return order <= 0;
+        else if(routineName.equals(Predefined.OPERATOR_GREATER_THAN))
+            return order > 0;
+        else if(routineName.equals(Predefined.OPERATOR_GREATER_EQUALS))
+            return order >= 0;
+        
+        return null;
+    }
+    
+    private Object convert(Object value, TypeSpec type)
+    {
+        if(type == predefined.stringType)
+        {
+            if(value instanceof Boolean)
+                return ((Boolean) value)? "true" : "false";
+            
+            return value.toString();
+        }
+        else if(type == predefined.boolType)
+            return (value instanceof String)? (Object) value.equals("true") : null;
+        
+        try
+        {
+            if(value instanceof String)
+                return (type == predefined.intType)? (Object) Integer.parseInt((String) value) : finite(Double.parseDouble((String) value));
+        } catch (NumberFormatException e)
+        {
+            return null;
+        }
+        
+        int number = (value instanceof Boolean)? (((Boolean) value)? 1 : 0) : 0;
+        if(value instanceof Integer)
+            number = (Integer) value;
+        
+        if(type == predefined.intType)
+            return (value instanceof Double)? (int) (double) (Double) value : number;
+        
+        return (value instanceof Double)? value : (Object) (double) number;
+    }
+    
+    private static Object finite(double value)
+    {
+        return (Double.isInfinite(value) || Double.isNaN(value))? null : (Object) value;
+    }
+    
+    /**
+     * @return the predefined type a call such as real(n) converts its argument to, or null if it isn't such a conversion.
+     */
+    static TypeSpec getConversionType(SixtyFortranParser.RoutineCallContext ctx, Predefined predefined)
+    {
+        if(ctx == null || ctx.call() != null || ctx.indexModifier() != null || ctx.argumentList() == null ||
+           ctx.argumentList().expression().size() != 1)
+            return null;
+        
+        TypeSpec type = ctx.type;
+        String id = ctx.IDENTIFIER().getText();
+        if(type == null || !id.equals(type.name))
+            return null;
+        
+        return (type == predefined.intType || type == predefined.realType || type == predefined.boolType || type == predefined.stringType)? type : null;
+    }
+    
+    //-------- propagation --------\\
+    
+    /**
+     * Collects the names of the variables that might change after they're declared: those that are
+     * assigned, and those that are used anywhere but as the operand of an operator or a conversion.
+     * Nonlocal variables can have other scope entries inside routines, so names are safer than entries.
+     */
+    private void findChangedNames(ParseTree tree, HashSet<String> changed)
+    {
+        if(tree instanceof SixtyFortranParser.IdentifierCallContext)
+        {
+            SixtyFortranParser.IdentifierCallContext identifier = (SixtyFortranParser.IdentifierCallContext) tree;
+            if(identifier.call() != null || identifier.indexModifier() != null || !isReadOnly(identifier))
+                changed.add(identifier.IDENTIFIER().getText());
+        }
+        
+        for(int i = 0; i < tree.getChildCount(); i++)
+            findChangedNames(tree.getChild(i), changed);
+    }
+    
+    private boolean isReadOnly(SixtyFortranParser.IdentifierCallContext identifier)
+    {
+        ParserRuleContext ctx = identifier.getParent();
+        if(!(ctx instanceof SixtyFortranParser.CallContext) || !(ctx.getParent() instanceof SixtyFortranParser.CallTermContext))
+            return false;
+        
+        //skip the parts of the expression that only pass the value up
+        ctx = ctx.getParent();
+        ParserRuleContext parent = ctx.getParent();
+        while(isPassThrough(parent))
+        {
+            ctx = parent;
+            parent = parent.getParent();
+        }
+        
+        if(parent instanceof SixtyFortranParser.ExpressionContext || parent instanceof SixtyFortranParser.ComparisonContext ||
+           parent instanceof SixtyFortranParser.AdditionContext || parent instanceof SixtyFortranParser.MultiplicationContext ||
+           parent instanceof SixtyFortranParser.NotTermContext || parent instanceof SixtyFortranParser.MinusTermContext ||
+           parent instanceof SixtyFortranParser.IfBlockContext || parent instanceof SixtyFortranParser.ElseifBlockContext ||
+           parent instanceof SixtyFortranParser.LoopStatementContext)
+            return true;
+        
+        //the library's conversions don't change their argument
+        if(parent instanceof SixtyFortranParser.ArgumentListContext && parent.getParent() instanceof SixtyFortranParser.RoutineCallContext)
+            return getConversionType((SixtyFortranParser.RoutineCallContext) parent.getParent(), predefined) != null;
+        
+        //a new variable of a specialized type gets its own copy of the value
+        if(parent instanceof SixtyFortranParser.AssignNewVariablesContext)
+        {
+            TypeSpec type = ((SixtyFortranParser.AssignNewVariablesContext) parent).varDeclaration().typeName().type;
+            return type == predefined.intType || type == predefined.realType || type == predefined.boolType;
+        }
+        
+        return false;
+    }
+    
+    static boolean isPassThrough(ParserRuleContext ctx)
+    {
+        if(ctx instanceof SixtyFortranParser.ExpressionContext)
+            return ((SixtyFortranParser.ExpressionContext) ctx).boolOp() == null;
+        else if(ctx instanceof SixtyFortranParser.ComparisonContext)
+            return ((SixtyFortranParser.ComparisonContext) ctx).relOp() == null;
+        else if(ctx instanceof SixtyFortranParser.AdditionContext)
+            return ((SixtyFortranParser.AdditionContext) ctx).addOp() == null;
+        else if(ctx instanceof SixtyFortranParser.MultiplicationContext)
+            return ((SixtyFortranParser.MultiplicationContext) ctx).mulOp() == null;
+        
+        return ctx instanceof SixtyFortranParser.ParenTermContext;
+    }
+    
+    /**
+     * Goes through the declarations in the order they run, so a constant can be declared from an earlier one.
+     */
+    private void findConstantVariables(ParseTree tree, HashSet<String> changed)
+    {
+        if(tree instanceof SixtyFortranParser.AssignNewVariablesContext)
+        {
+            SixtyFortranParser.AssignNewVariablesContext assignment = (SixtyFortranParser.AssignNewVariablesContext) tree;
+            TypeSpec type = assignment.varDeclaration().typeName().type;
+            Object value = fold(assignment.expression());
+            
+            if(value != null && getType(value) == type)
+                for(ScopeEntry entry : assignment.varDeclaration().entries)
+                    if(!changed.contains(entry.name))
+                        variables.put(entry, value);
+        }
+        
+        for(int i = 0; i < tree.getChildCount(); i++)
+            findConstantVariables(tree.getChild(i), changed);
+    }
+}
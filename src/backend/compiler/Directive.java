@@ -1,5 +1,7 @@
 package backend.compiler;
 
+import static backend.bytecode.AccessFlags.*;
+
 /**
  * <h1>Directive</h1>
  *
@@ -10,15 +12,16 @@ package backend.compiler;
  */
 public enum Directive
 {
-    CLASS_PUBLIC(".class public"),
+    CLASS_PUBLIC(".class public", PUBLIC),
     END_CLASS(".end class"),
     SUPER(".super"),
-    FIELD(".field public"),
-    FIELD_STATIC(".field public static"),
-    METHOD_PUBLIC(".method public"),
-    METHOD_STATIC(".method static"),
-    METHOD_PUBLIC_STATIC(".method public static"),
-    METHOD_PRIVATE_STATIC(".method private static"),
+    FIELD(".field public", PUBLIC),
+    FIELD_STATIC(".field public static", PUBLIC | STATIC),
+    FIELD_PRIVATE_STATIC_FINAL(".field private static final", PRIVATE | STATIC | FINAL),
+    METHOD_PUBLIC(".method public", PUBLIC),
+    METHOD_STATIC(".method static", STATIC),
+    METHOD_PUBLIC_STATIC(".method public static", PUBLIC | STATIC),
+    METHOD_PRIVATE_STATIC(".method private static", PRIVATE | STATIC),
     END_METHOD(".end method"),
     LIMIT_LOCALS(".limit locals"),
     LIMIT_STACK(".limit stack"),
@@ -26,12 +29,24 @@ public enum Directive
     LINE(".line");
 
     private String text;
+    public final int access;       // the access flags of a class, field or method directive
+
+    /**
+     * Constructor.
+     * @param text the text for the directive.
+     */
+    Directive(String text) { this(text, 0); }
 
     /**
      * Constructor.
      * @param text the text for the directive.
+     * @param access the access flags it gives.
      */
-    Directive(String text) { this.text = text; }
+    Directive(String text, int access)
+    {
+        this.text = text;
+        this.access = access;
+    }
 
     /**
      * Generate the directive string that is emitted.
@@ -0,0 +1,170 @@
+package backend.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import backend.semantics.FileSpec;
+
+/**
+ * <h1>IncrementalCache</h1>
+ *
+ * <p>Remembers, for each top-level type and routine definition of a program, a hash of its
+ * source text and of the signatures it uses, together with the files that were generated
+ * for it. When a definition's hash hasn't changed and its files are still there, the compiler
+ * keeps those files as they are instead of generating and assembling them again.</p>
+ *
+ * <p>The index is kept in {@value #INDEX_FILE} in the program's bin folder, one definition per line:</p>
+ * <pre>
+ * key \t hash \t file \t file...
+ * </pre>
+ */
+public class IncrementalCache
+{
+    public static final String INDEX_FILE = "compile.cache";
+    
+    //change whenever the generated code changes, so that older files aren't reused
+    public static final String VERSION = "10";
+    
+    private File index;
+    private String mode;
+    private LinkedHashMap<String, Entry> entries;
+    private LinkedHashMap<String, Entry> updated;
+    
+    /**
+     * @param binFolder the program's bin folder.
+     * @param mode how the files are generated: "jasmin" or "bytecode" for class files, "j" for Jasmin files only.
+     */
+    public IncrementalCache(String binFolder, String mode)
+    {
+        this.index = new File(binFolder, INDEX_FILE);
+        this.mode = mode;
+        this.entries = new LinkedHashMap<>();
+        this.updated = new LinkedHashMap<>();
+        
+        load();
+    }
+    
+    /**
+     * @return the hash of all the parts, as a hex string.
+     */
+    public String hash(String... parts)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((VERSION + "\0" + mode + "\0").getBytes(StandardCharsets.UTF_8));
+            for(String part : parts)
+            {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest())
+                hex.append(String.format("%02x", b));
+            
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * @return the file generated for a file spec: its class file, or its Jasmin file when nothing is assembled.
+     */
+    public String getOutput(FileSpec file)
+    {
+        return (mode.equals("j"))? file.getFullName() : file.getNameNoExtension() + ".class";
+    }
+    
+    /**
+     * @return whether the definition was last compiled with the same hash, and all of its files are still there.
+     */
+    public boolean isFresh(String key, String hash)
+    {
+        Entry entry = entries.get(key);
+        if(entry == null || !entry.hash.equals(hash))
+            return false;
+        
+        for(String output : entry.outputs)
+            if(!new File(output).isFile())
+                return false;
+        
+        return true;
+    }
+    
+    /**
+     * Records a definition for the next compilation.
+     */
+    public void put(String key, String hash, List<String> outputs)
+    {
+        updated.put(key, new Entry(hash, outputs));
+    }
+    
+    /**
+     * Replaces the index with the definitions recorded by {@link #put}.
+     */
+    public void save() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        for(String key : updated.keySet())
+        {
+            Entry entry = updated.get(key);
+            lines.add(key + "\t" + entry.hash + ((entry.outputs.isEmpty())? "" : "\t" + String.join("\t", entry.outputs)));
+        }
+        
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), lines, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Forgets everything, so that the next compilation generates every file again.
+     */
+    public void clear()
+    {
+        entries.clear();
+        updated.clear();
+        index.delete();
+    }
+    
+    private void load()
+    {
+        if(!index.isFile())
+            return;
+        
+        try
+        {
+            for(String line : Files.readAllLines(index.toPath(), StandardCharsets.UTF_8))
+            {
+                String[] fields = line.split("\t");
+                if(fields.length >= 2)
+                    entries.put(fields[0], new Entry(fields[1], Arrays.asList(fields).subList(2, fields.length)));
+            }
+        } catch (IOException e)
+        {
+            //a broken index only means everything gets generated again
+            entries.clear();
+        }
+    }
+    
+    private static class Entry
+    {
+        String hash;
+        List<String> outputs;
+        
+        Entry(String hash, List<String> outputs)
+        {
+            this.hash = hash;
+            this.outputs = outputs;
+        }
+    }
+}
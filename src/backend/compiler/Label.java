@@ -2,13 +2,13 @@ package backend.compiler;
 
 public class Label
 {
-    private static int index = 0;  // index for generating label strings
     private String label;          // the label string
 
     /**
      * Constructor.
+     * @param index the label's number, handed out by the compilation's context.
      */
-    public Label() { this.label = "L" + String.format("%03d", ++index); }
+    public Label(int index) { this.label = "L" + String.format("%03d", index); }
 
     /**
      * Generate the label string. 
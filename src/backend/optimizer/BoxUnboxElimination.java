@@ -0,0 +1,103 @@
+package backend.optimizer;
+
+import java.util.List;
+
+import backend.bytecode.Instruction;
+import backend.bytecode.Opcode;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>BoxUnboxElimination</h1>
+ *
+ * <p>Removes an object that is created around a value only to have the value read back out of it:</p>
+ * <pre>
+ * new library/integer
+ * dup
+ * ...                                      the value
+ * invokespecial library/integer/&lt;init&gt;(I)V
+ * invokevirtual library/integer/getValue()I
+ * </pre>
+ * <p>leaves just the code that computes the value. The pass only looks inside a block, so no branch
+ * can jump into or out of the code between the new and the getValue.</p>
+ */
+public class BoxUnboxElimination implements PeepholePass
+{
+    @Override
+    public String getName()
+    {
+        return "box/unbox elimination";
+    }
+    
+    @Override
+    public boolean apply(IrMethod method)
+    {
+        boolean changed = false;
+        
+        for(BasicBlock block : method.blocks)
+        {
+            List<Instruction> code = block.instructions;
+            for(int i = 0; i + 1 < code.size(); i++)
+            {
+                String type = getBoxedType(code.get(i), code.get(i + 1));
+                if(type == null)
+                    continue;
+                
+                int start = findNew(code, i, type);
+                if(start < 0)
+                    continue;
+                
+                code.remove(i + 1);
+                code.remove(i);
+                code.remove(start + 1);
+                code.remove(start);
+                
+                i = Math.max(start - 1, 0);
+                changed = true;
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * @return the class if the instructions construct it from a single value and then read that value back, or null.
+     */
+    private String getBoxedType(Instruction constructor, Instruction getter)
+    {
+        if(constructor.opcode != Opcode.INVOKESPECIAL || getter.opcode != Opcode.INVOKEVIRTUAL)
+            return null;
+        
+        if(!getter.name.equals("getValue") || !getter.descriptor.startsWith("()") || !getter.owner.equals(constructor.owner))
+            return null;
+        
+        String value = getter.descriptor.substring("()".length());
+        return (constructor.name.equals("<init>") && constructor.descriptor.equals("(" + value + ")V"))? constructor.owner : null;
+    }
+    
+    /**
+     * @return the index of the new that the constructor call at the end belongs to (it must be followed by dup), or -1.
+     */
+    private int findNew(List<Instruction> code, int end, String type)
+    {
+        int depth = 0;
+        for(int i = end - 1; i >= 0; i--)
+        {
+            Instruction insn = code.get(i);
+            
+            if(insn.opcode == Opcode.INVOKESPECIAL && insn.name.equals("<init>"))
+                depth++;
+            else if(insn.opcode == Opcode.NEW)
+            {
+                if(depth > 0)
+                    depth--;
+                else if(insn.owner.equals(type) && i + 1 < end && code.get(i + 1).opcode == Opcode.DUP)
+                    return i;
+                else
+                    return -1;
+            }
+        }
+        
+        return -1;
+    }
+}
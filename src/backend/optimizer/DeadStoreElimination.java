@@ -0,0 +1,156 @@
+package backend.optimizer;
+
+import java.util.HashSet;
+import java.util.List;
+
+import backend.bytecode.Instruction;
+import backend.bytecode.Opcode;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>DeadStoreElimination</h1>
+ *
+ * <p>Replaces stores to local variables that the method never loads with pops, and then removes
+ * whatever no longer does anything:</p>
+ * <ul>
+ * <li>dup or a load followed by pop, or dup2 or a long or double load followed by pop2,</li>
+ * <li>a new integer, real, bool or string (whose constructors only set their value), from nothing or from a constant, followed by pop,</li>
+ * <li>the valueOf or of factory of one of them followed by pop, which only pops the primitive value.</li>
+ * </ul>
+ */
+public class DeadStoreElimination implements PeepholePass
+{
+    private static final String[] VALUE_TYPES = { "library/integer", "library/real", "library/bool", "library/string" };
+    
+    @Override
+    public String getName()
+    {
+        return "dead store removal";
+    }
+    
+    @Override
+    public boolean apply(IrMethod method)
+    {
+        boolean changed = false;
+        
+        HashSet<Integer> loaded = new HashSet<>();
+        for(BasicBlock block : method.blocks)
+            for(Instruction insn : block.instructions)
+                if(insn.loadsLocal() || insn.opcode == Opcode.IINC)
+                    loaded.add(insn.getLocalSlot());
+        
+        for(BasicBlock block : method.blocks)
+        {
+            List<Instruction> code = block.instructions;
+            for(int i = 0; i < code.size(); i++)
+            {
+                Instruction insn = code.get(i);
+                if(insn.storesLocal() && !loaded.contains(insn.getLocalSlot()))
+                {
+                    code.set(i, new Instruction(insn.isWide()? Opcode.POP2 : Opcode.POP));
+                    changed = true;
+                }
+            }
+            
+            changed |= removePops(code);
+        }
+        
+        return changed;
+    }
+    
+    private boolean removePops(List<Instruction> code)
+    {
+        boolean changed = false;
+        
+        for(int i = 1; i < code.size(); i++)
+        {
+            Instruction previous = code.get(i - 1);
+            if(code.get(i).opcode == Opcode.POP2)
+            {
+                if(previous.opcode == Opcode.DUP2 || (previous.loadsLocal() && previous.isWide()))
+                {
+                    code.remove(i);
+                    code.remove(i - 1);
+                    i = Math.max(i - 2, 0);
+                    changed = true;
+                }
+                continue;
+            }
+            
+            if(code.get(i).opcode != Opcode.POP)
+                continue;
+            
+            if(previous.opcode == Opcode.DUP || (previous.loadsLocal() && !previous.isWide()))
+            {
+                code.remove(i);
+                code.remove(i - 1);
+                i = Math.max(i - 2, 0);
+                changed = true;
+            }
+            else if(i >= 3 && isValueConstruction(code.subList(i - 3, i)))
+            {
+                code.subList(i - 3, i + 1).clear();
+                i = Math.max(i - 4, 0);
+                changed = true;
+            }
+            else if(i >= 4 && isConstantConstruction(code.subList(i - 4, i)))
+            {
+                code.subList(i - 4, i + 1).clear();
+                i = Math.max(i - 5, 0);
+                changed = true;
+            }
+            else if(isFactory(previous))
+            {
+                code.remove(i);
+                code.set(i - 1, new Instruction(previous.descriptor.startsWith("(D)")? Opcode.POP2 : Opcode.POP));
+                i = Math.max(i - 2, 0);
+                changed = true;
+            }
+        }
+        
+        return changed;
+    }
+    
+    private boolean isValueType(String type)
+    {
+        for(String valueType : VALUE_TYPES)
+            if(valueType.equals(type))
+                return true;
+        
+        return false;
+    }
+    
+    private boolean isValueConstruction(List<Instruction> code)
+    {
+        Instruction init = code.get(2);
+        return code.get(0).opcode == Opcode.NEW && isValueType(code.get(0).owner) &&
+               code.get(1).opcode == Opcode.DUP &&
+               init.opcode == Opcode.INVOKESPECIAL && init.owner.equals(code.get(0).owner) &&
+               init.name.equals("<init>") && init.descriptor.equals("()V");
+    }
+    
+    private boolean isFactory(Instruction insn)
+    {
+        return insn.opcode == Opcode.INVOKESTATIC && isValueType(insn.owner) &&
+               (insn.name.equals("valueOf") || insn.name.equals("of"));
+    }
+    
+    /**
+     * @return whether the instructions are new, dup, a constant and the constructor that takes it, for one of the value types.
+     */
+    private boolean isConstantConstruction(List<Instruction> code)
+    {
+        String constant = code.get(2).opcode.mnemonic;
+        if(!constant.startsWith("iconst_") && !constant.startsWith("dconst_") && !constant.startsWith("ldc") &&
+           !constant.equals("bipush") && !constant.equals("sipush"))
+            return false;
+        
+        if(code.get(0).opcode != Opcode.NEW || !isValueType(code.get(0).owner) || code.get(1).opcode != Opcode.DUP)
+            return false;
+        
+        Instruction init = code.get(3);
+        return init.opcode == Opcode.INVOKESPECIAL && init.owner.equals(code.get(0).owner) && init.name.equals("<init>") &&
+               (init.descriptor.equals("(I)V") || init.descriptor.equals("(D)V") || init.descriptor.equals("(Ljava/lang/String;)V"));
+    }
+}
@@ -0,0 +1,197 @@
+package backend.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import backend.bytecode.Instruction;
+import backend.bytecode.Opcode;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>JumpThreading</h1>
+ *
+ * <p>Simplifies the jumps and blocks of a method:</p>
+ * <ul>
+ * <li>a branch to a goto branches straight to the goto's target,</li>
+ * <li>a branch to the block right after it is removed (a conditional one only pops its operands),</li>
+ * <li>blocks that can't be reached from the start of the method are removed,</li>
+ * <li>labels that nothing jumps to are removed, and a block that nothing jumps to any more is
+ * merged into the block before it.</li>
+ * </ul>
+ */
+public class JumpThreading implements PeepholePass
+{
+    @Override
+    public String getName()
+    {
+        return "jump threading";
+    }
+    
+    @Override
+    public boolean apply(IrMethod method)
+    {
+        boolean changed = threadJumps(method);
+        changed |= removeJumpsToNext(method);
+        if(changed)
+            method.link();
+        
+        changed |= removeUnreachable(method);
+        changed |= removeUnusedLabels(method);
+        changed |= mergeBlocks(method);
+        
+        return changed;
+    }
+    
+    private boolean threadJumps(IrMethod method)
+    {
+        HashMap<String, BasicBlock> targets = method.getLabelBlocks();
+        
+        boolean changed = false;
+        for(BasicBlock block : method.blocks)
+        {
+            Instruction branch = block.getLast();
+            if(branch == null || !branch.opcode.isBranch())
+                continue;
+            
+            String threaded = branch.label;
+            HashSet<String> visited = new HashSet<>();
+            
+            //follows chains of gotos, and stops at a loop of them
+            while(visited.add(threaded))
+            {
+                BasicBlock target = targets.get(threaded);
+                Instruction next = (target == null)? null : getFirstInstruction(method.blocks, method.blocks.indexOf(target));
+                if(next == null || next.opcode != Opcode.GOTO)
+                    break;
+                
+                threaded = next.label;
+            }
+            
+            if(!threaded.equals(branch.label))
+            {
+                block.instructions.set(block.instructions.size() - 1, Instruction.branch(branch.opcode, threaded));
+                changed = true;
+            }
+        }
+        
+        return changed;
+    }
+    
+    private boolean removeJumpsToNext(IrMethod method)
+    {
+        boolean changed = false;
+        
+        List<BasicBlock> blocks = method.blocks;
+        for(int i = 0; i < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            Instruction branch = block.getLast();
+            if(branch == null || !branch.opcode.isBranch())
+                continue;
+            
+            //the blocks in between are empty, so execution would get to the target anyway
+            for(int j = i + 1; j < blocks.size(); j++)
+            {
+                if(blocks.get(j).labels.contains(branch.label))
+                {
+                    //a conditional branch still has to take its operands off the stack
+                    int last = block.instructions.size() - 1;
+                    if(branch.opcode == Opcode.GOTO)
+                        block.instructions.remove(last);
+                    else
+                        block.instructions.set(last, new Instruction(branch.opcode.mnemonic.startsWith("if_")? Opcode.POP2 : Opcode.POP));
+                    
+                    changed = true;
+                    break;
+                }
+                
+                if(!blocks.get(j).instructions.isEmpty())
+                    break;
+            }
+        }
+        
+        return changed;
+    }
+    
+    private boolean removeUnreachable(IrMethod method)
+    {
+        HashSet<BasicBlock> reached = new HashSet<>();
+        ArrayDeque<BasicBlock> work = new ArrayDeque<>();
+        reached.add(method.getEntry());
+        work.add(method.getEntry());
+        
+        while(!work.isEmpty())
+            for(BasicBlock successor : work.poll().successors)
+                if(reached.add(successor))
+                    work.add(successor);
+        
+        return method.blocks.removeIf(block -> !reached.contains(block));
+    }
+    
+    private boolean removeUnusedLabels(IrMethod method)
+    {
+        HashSet<String> targets = new HashSet<>();
+        for(BasicBlock block : method.blocks)
+        {
+            Instruction last = block.getLast();
+            if(last != null && last.opcode.isBranch())
+                targets.add(last.label);
+        }
+        
+        boolean changed = false;
+        for(BasicBlock block : method.blocks)
+            changed |= block.labels.removeIf(label -> !targets.contains(label));
+        
+        return changed;
+    }
+    
+    /**
+     * Moves the labels of empty blocks to the block after them, and appends each block without labels
+     * to the block before it, which can only fall through into it.
+     */
+    private boolean mergeBlocks(IrMethod method)
+    {
+        boolean changed = false;
+        
+        List<BasicBlock> blocks = method.blocks;
+        for(int i = 0; i + 1 < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            if(block.instructions.isEmpty())
+            {
+                blocks.get(i + 1).labels.addAll(0, block.labels);
+                blocks.remove(i--);
+                changed = true;
+            }
+        }
+        
+        for(int i = 1; i < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            BasicBlock previous = blocks.get(i - 1);
+            if(block.labels.isEmpty() && !previous.isClosed())
+            {
+                previous.instructions.addAll(block.instructions);
+                blocks.remove(i--);
+                changed = true;
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * @return the first instruction at or after the start of the block, or null if there is none before the end of the method.
+     */
+    private Instruction getFirstInstruction(List<BasicBlock> blocks, int start)
+    {
+        for(int i = start; i < blocks.size(); i++)
+            if(!blocks.get(i).instructions.isEmpty())
+                return blocks.get(i).instructions.get(0);
+        
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package backend.optimizer;
+
+import java.util.List;
+
+import backend.bytecode.Instruction;
+import backend.bytecode.Opcode;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>LoadStoreShortcuts</h1>
+ *
+ * <p>Uses the short forms of instructions: aload_0 to aload_3 (and the same for the other
+ * loads and stores), iconst_m1 to iconst_5, bipush and sipush for small integer constants,
+ * and dconst_0 and dconst_1.</p>
+ */
+public class LoadStoreShortcuts implements PeepholePass
+{
+    @Override
+    public String getName()
+    {
+        return "load/store shortcuts";
+    }
+    
+    @Override
+    public boolean apply(IrMethod method)
+    {
+        boolean changed = false;
+        
+        for(BasicBlock block : method.blocks)
+        {
+            List<Instruction> code = block.instructions;
+            for(int i = 0; i < code.size(); i++)
+            {
+                Instruction shortcut = getShortcut(code.get(i));
+                if(shortcut != null)
+                {
+                    code.set(i, shortcut);
+                    changed = true;
+                }
+            }
+        }
+        
+        return changed;
+    }
+    
+    private Instruction getShortcut(Instruction insn)
+    {
+        if(insn.opcode.operand == Opcode.Operand.LOCAL)
+            return (insn.operand <= 3)? new Instruction(Opcode.forMnemonic(insn.opcode.mnemonic + "_" + insn.operand)) : null;
+        
+        if(insn.opcode == Opcode.LDC && insn.constant instanceof Integer)
+        {
+            int value = (Integer) insn.constant;
+            if(value >= -1 && value <= 5)
+                return new Instruction(Opcode.forMnemonic((value == -1)? "iconst_m1" : "iconst_" + value));
+            else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+                return Instruction.withOperand(Opcode.BIPUSH, value);
+            else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+                return Instruction.withOperand(Opcode.SIPUSH, value);
+        }
+        else if(insn.opcode == Opcode.LDC2_W && insn.constant instanceof Double)
+        {
+            long bits = Double.doubleToLongBits((Double) insn.constant);
+            if(bits == Double.doubleToLongBits(0.0))
+                return new Instruction(Opcode.DCONST_0);
+            else if(bits == Double.doubleToLongBits(1.0))
+                return new Instruction(Opcode.DCONST_1);
+        }
+        
+        return null;
+    }
+}
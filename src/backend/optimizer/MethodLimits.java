@@ -0,0 +1,196 @@
+package backend.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import backend.bytecode.Descriptor;
+import backend.bytecode.Instruction;
+import intermediate.ir.BasicBlock;
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>MethodLimits</h1>
+ *
+ * <p>Computes the exact maximum stack depth and number of locals of a method. The stack depth
+ * is followed along every edge of the method's control-flow graph, starting at its entry block,
+ * and the locals are the highest slot that the method's parameters, declared variables and loads
+ * and stores reach.</p>
+ */
+public class MethodLimits
+{
+    private IrMethod method;
+    private int maxStack;
+    private int maxLocals;
+    
+    public MethodLimits(IrMethod method)
+    {
+        this.method = method;
+        
+        method.link();
+        computeLocals();
+        computeStack();
+    }
+    
+    public int getMaxStack()
+    {
+        return maxStack;
+    }
+    
+    public int getMaxLocals()
+    {
+        return maxLocals;
+    }
+    
+    /**
+     * Sets the method's limits to the computed ones.
+     * @return the method.
+     */
+    public IrMethod apply()
+    {
+        method.maxStack = maxStack;
+        method.maxLocals = maxLocals;
+        
+        return method;
+    }
+    
+    private void computeLocals()
+    {
+        maxLocals = Descriptor.argumentSize(method.descriptor) + (method.isStatic()? 0 : 1);
+        
+        for(IrMethod.Local local : method.locals)
+            maxLocals = Math.max(maxLocals, local.slot + size(local.descriptor));
+        
+        for(BasicBlock block : method.blocks)
+            for(Instruction insn : block.instructions)
+                if(insn.getLocalSlot() >= 0)
+                    maxLocals = Math.max(maxLocals, insn.getLocalSlot() + (insn.isWide()? 2 : 1));
+    }
+    
+    private void computeStack()
+    {
+        HashMap<BasicBlock, Integer> depths = new HashMap<>();
+        ArrayDeque<BasicBlock> work = new ArrayDeque<>();
+        depths.put(method.getEntry(), 0);
+        work.add(method.getEntry());
+        maxStack = 0;
+        
+        while(!work.isEmpty())
+        {
+            BasicBlock block = work.poll();
+            int depth = depths.get(block);
+            
+            for(Instruction insn : block.instructions)
+            {
+                depth += stackChange(insn);
+                maxStack = Math.max(maxStack, depth);
+            }
+            
+            for(BasicBlock successor : block.successors)
+            {
+                if(depth > depths.getOrDefault(successor, -1))
+                {
+                    depths.put(successor, depth);
+                    work.add(successor);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return how much deeper the stack is after the instruction than before it.
+     */
+    private static int stackChange(Instruction insn)
+    {
+        switch(insn.opcode)
+        {
+            case NOP: case SWAP: case IINC: case GOTO: case RETURN:
+            case INEG: case LNEG: case FNEG: case DNEG:
+            case I2F: case F2I: case L2D: case D2L:
+            case ANEWARRAY: case ARRAYLENGTH: case CHECKCAST: case INSTANCEOF:
+                return 0;
+            
+            case ACONST_NULL: case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2: case ICONST_3: case ICONST_4: case ICONST_5:
+            case FCONST_0: case FCONST_1: case FCONST_2: case BIPUSH: case SIPUSH: case LDC: case LDC_W:
+            case ILOAD: case FLOAD: case ALOAD:
+            case ILOAD_0: case ILOAD_1: case ILOAD_2: case ILOAD_3:
+            case FLOAD_0: case FLOAD_1: case FLOAD_2: case FLOAD_3:
+            case ALOAD_0: case ALOAD_1: case ALOAD_2: case ALOAD_3:
+            case DUP: case DUP_X1: case DUP_X2:
+            case I2L: case I2D: case F2L: case F2D: case NEW:
+                return 1;
+            
+            case LCONST_0: case LCONST_1: case DCONST_0: case DCONST_1: case LDC2_W:
+            case LLOAD: case DLOAD:
+            case LLOAD_0: case LLOAD_1: case LLOAD_2: case LLOAD_3:
+            case DLOAD_0: case DLOAD_1: case DLOAD_2: case DLOAD_3:
+            case DUP2: case DUP2_X1: case DUP2_X2:
+                return 2;
+            
+            case IALOAD: case FALOAD: case AALOAD: case BALOAD: case CALOAD: case SALOAD:
+            case ISTORE: case FSTORE: case ASTORE:
+            case ISTORE_0: case ISTORE_1: case ISTORE_2: case ISTORE_3:
+            case FSTORE_0: case FSTORE_1: case FSTORE_2: case FSTORE_3:
+            case ASTORE_0: case ASTORE_1: case ASTORE_2: case ASTORE_3:
+            case POP:
+            case IADD: case FADD: case ISUB: case FSUB: case IMUL: case FMUL: case IDIV: case FDIV: case IREM: case FREM:
+            case ISHL: case ISHR: case IUSHR: case LSHL: case LSHR: case LUSHR: case IAND: case IOR: case IXOR:
+            case L2I: case L2F: case D2I: case D2F: case FCMPL: case FCMPG:
+            case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE: case IFNULL: case IFNONNULL:
+            case IRETURN: case FRETURN: case ARETURN: case ATHROW:
+                return -1;
+            
+            case LALOAD: case DALOAD:
+                return 0;
+            
+            case LSTORE: case DSTORE:
+            case LSTORE_0: case LSTORE_1: case LSTORE_2: case LSTORE_3:
+            case DSTORE_0: case DSTORE_1: case DSTORE_2: case DSTORE_3:
+            case POP2:
+            case LADD: case DADD: case LSUB: case DSUB: case LMUL: case DMUL: case LDIV: case DDIV: case LREM: case DREM:
+            case LAND: case LOR: case LXOR:
+            case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+            case IF_ACMPEQ: case IF_ACMPNE:
+            case LRETURN: case DRETURN:
+                return -2;
+            
+            case IASTORE: case FASTORE: case AASTORE: case BASTORE: case CASTORE: case SASTORE:
+            case LCMP: case DCMPL: case DCMPG:
+                return -3;
+            
+            case LASTORE: case DASTORE:
+                return -4;
+            
+            case GETSTATIC:
+                return size(insn.descriptor);
+            case PUTSTATIC:
+                return -size(insn.descriptor);
+            case GETFIELD:
+                return size(insn.descriptor) - 1;
+            case PUTFIELD:
+                return -size(insn.descriptor) - 1;
+            
+            case INVOKESTATIC: case INVOKEDYNAMIC:
+                return invokeChange(insn.descriptor);
+            case INVOKEVIRTUAL: case INVOKESPECIAL: case INVOKEINTERFACE:
+                return invokeChange(insn.descriptor) - 1;
+        }
+        
+        throw new IllegalArgumentException("no stack effect for '" + insn.opcode + "'");
+    }
+    
+    private static int invokeChange(String descriptor)
+    {
+        return size(Descriptor.returnType(descriptor)) - Descriptor.argumentSize(descriptor);
+    }
+    
+    private static int size(String descriptor)
+    {
+        switch(descriptor)
+        {
+            case "V": return 0;
+            case "J":
+            case "D": return 2;
+            default:  return 1;
+        }
+    }
+}
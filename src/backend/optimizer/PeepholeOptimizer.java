@@ -0,0 +1,143 @@
+package backend.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>PeepholeOptimizer</h1>
+ *
+ * <p>The pass manager of the intermediate representation: it rewrites each method between code
+ * generation and lowering, with a list of {@link PeepholePass}es that can be extended with
+ * {@link #addPass(PeepholePass)}. The passes run over the method again and again until none of
+ * them changes anything (or after {@value #MAX_ROUNDS} rounds), and the optimizer remembers how
+ * many instructions each method lost.</p>
+ */
+public class PeepholeOptimizer
+{
+    private static final int MAX_ROUNDS = 10;
+    
+    private ArrayList<PeepholePass> passes;
+    private ArrayList<MethodResult> results;
+    
+    public PeepholeOptimizer()
+    {
+        passes = new ArrayList<>();
+        results = new ArrayList<>();
+    }
+    
+    /**
+     * @return an optimizer with every standard pass.
+     */
+    public static PeepholeOptimizer standard()
+    {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        optimizer.addPass(new BoxUnboxElimination());
+        optimizer.addPass(new DeadStoreElimination());
+        optimizer.addPass(new JumpThreading());
+        optimizer.addPass(new LoadStoreShortcuts());
+        
+        return optimizer;
+    }
+    
+    public void addPass(PeepholePass pass)
+    {
+        passes.add(pass);
+    }
+    
+    public List<PeepholePass> getPasses()
+    {
+        return passes;
+    }
+    
+    /**
+     * @param className the class the method belongs to.
+     * @return the optimized method (the same one), with its block edges up to date.
+     */
+    public IrMethod optimize(String className, IrMethod method)
+    {
+        MethodResult result = new MethodResult(className, method.name + method.descriptor);
+        result.before = method.getInstructionCount();
+        
+        method.link();
+        boolean changed = true;
+        for(int round = 0; round < MAX_ROUNDS && changed; round++)
+        {
+            changed = false;
+            for(PeepholePass pass : passes)
+            {
+                if(pass.apply(method))
+                {
+                    method.link();
+                    changed = true;
+                }
+            }
+        }
+        
+        result.after = method.getInstructionCount();
+        results.add(result);
+        
+        return method;
+    }
+    
+    public List<MethodResult> getResults()
+    {
+        return results;
+    }
+    
+    public int getRemovedCount()
+    {
+        int removed = 0;
+        for(MethodResult result : results)
+            removed += result.getRemovedCount();
+        
+        return removed;
+    }
+    
+    /**
+     * @return one line with the total number of instructions removed.
+     */
+    public String getSummary()
+    {
+        int before = 0;
+        for(MethodResult result : results)
+            before += result.before;
+        
+        return String.format("The peephole optimizer removed %d of %d instructions.", getRemovedCount(), before);
+    }
+    
+    /**
+     * @return the number of instructions removed from each method that lost any.
+     */
+    public String getReport()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%8s %8s  %s\n", "removed", "before", "method"));
+        
+        for(MethodResult result : results)
+            if(result.getRemovedCount() > 0)
+                report.append(String.format("%8d %8d  %s.%s\n", result.getRemovedCount(), result.before, result.className, result.method));
+        
+        return report.toString();
+    }
+    
+    public static class MethodResult
+    {
+        public String className;
+        public String method;
+        public int before;
+        public int after;
+        
+        public MethodResult(String className, String method)
+        {
+            this.className = className;
+            this.method = method;
+        }
+        
+        public int getRemovedCount()
+        {
+            return before - after;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package backend.optimizer;
+
+import intermediate.ir.IrMethod;
+
+/**
+ * <h1>PeepholePass</h1>
+ *
+ * <p>One rule of the {@link PeepholeOptimizer}. A pass rewrites the blocks of a single method
+ * in place, and the optimizer keeps running its passes until none of them changes anything.</p>
+ */
+public interface PeepholePass
+{
+    String getName();
+    
+    /**
+     * @param method the method, whose block edges are up to date when the pass starts.
+     * @return whether the pass changed anything.
+     */
+    boolean apply(IrMethod method);
+}
@@ -1,7 +1,9 @@
 package backend.semantics;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -27,10 +29,19 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
     
     private String bin_folder;
     
-    private boolean filesGenerated;
     private HashSet<RoutineSpec> routineSignatures;
+    private ArrayList<FileSpec> objectFiles;
+    private boolean bytecode;
     
     public CompilerSemantics(Scope scope, String programName)
+    {
+        this(scope, programName, false);
+    }
+    
+    /**
+     * @param bytecode whether class files are built directly, in which case no Jasmin files are created.
+     */
+    public CompilerSemantics(Scope scope, String programName, boolean bytecode)
     {
         this.localScope = scope;
         this.bin_folder = programName + "_bin/";
@@ -38,8 +49,9 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
         mainFile = new FileSpec(programName);
         mainFile.kind = Kind.MAIN;
         
-        filesGenerated = false;
         routineSignatures = new HashSet<>();
+        objectFiles = new ArrayList<>();
+        this.bytecode = bytecode;
     }
     
     public Set<RoutineSpec> getRoutineSignatures()
@@ -47,6 +59,28 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
         return routineSignatures;
     }
     
+    /**
+     * @return every file that gets its own class: the main file, types and routines (in the order they were created).
+     */
+    public List<FileSpec> getObjectFiles()
+    {
+        return objectFiles;
+    }
+    
+    /**
+     * Creates (or empties) the Jasmin file for a file spec, unless class files are built directly.
+     */
+    public void mkFile(FileSpec file)
+    {
+        if(!bytecode)
+            file.mkFile();
+    }
+    
+    public FileSpec getMainFile()
+    {
+        return mainFile;
+    }
+    
     public String getBinFolderName()
     {
         return bin_folder;
@@ -65,34 +99,27 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
     {
         currentFile = mainFile;
         //we make the main file in the same folder as the bin file, but we say that the main file's directory is main_bin so that all of the other files are created there
-        currentFile.mkFile();
+        mkFile(currentFile);
+        objectFiles.add(mainFile);
         new File(bin_folder).mkdir();
         
         visitChildren(ctx);
         
-        filesGenerated = true;
         return mainFile;
     }
     
     @Override
     public Object visitTypeDefinition(SixtyFortranParser.TypeDefinitionContext ctx)
     {
-        FileSpec typeFile;
+        FileSpec typeFile = new FileSpec(ctx.type.name, Kind.TYPE, currentFile);
+        typeFile.directory = bin_folder; 
+        ctx.file = typeFile;
         
-        if(!filesGenerated)
-        {
-            typeFile = new FileSpec(ctx.type.name, Kind.TYPE, currentFile);
-            typeFile.directory = bin_folder; 
-            ctx.file = typeFile;
-        }
-        else
-            typeFile = ctx.file;
-            
+
         //sets the path to lookup the type's class file
         ctx.type.setPath(typeFile.getNameNoExtension());
         
-        if(!filesGenerated)
-            new File(typeFile.directory).mkdirs();
+        new File(typeFile.directory).mkdirs();
         
         currentFile = typeFile;
         
@@ -102,8 +129,8 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
         
         currentFile = typeFile.parent;
         
-        if(!filesGenerated)
-            typeFile.mkFile();
+        mkFile(typeFile);
+        objectFiles.add(typeFile);
         
         return typeFile;
     }
@@ -111,16 +138,9 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitRoutineDefinition(SixtyFortranParser.RoutineDefinitionContext ctx)
     {
-        FileSpec routineFile;
-        if(!filesGenerated)
-        {
-            routineFile = new FileSpec(ctx.routine.name, Kind.ROUTINE, currentFile);
-            routineFile.directory = bin_folder;
-            ctx.file = routineFile;
-        }
-        else
-            routineFile = ctx.file;
-        
+        FileSpec routineFile = new FileSpec(ctx.routine.name, Kind.ROUTINE, currentFile);
+        routineFile.directory = bin_folder;
+        ctx.file = routineFile;
         
         //sets the path to the routine's class file
         if(!ctx.isStatic)
@@ -138,8 +158,8 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
         
         currentFile = routineFile.parent;
         
-        if(!filesGenerated)
-            routineFile.mkFile();
+        mkFile(routineFile);
+        objectFiles.add(routineFile);
         
         return routineFile;
     }
@@ -216,12 +236,24 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
     
     //-------- ZA WARUDO --------\\
     
+    /**
+     * @return the entry if it belongs to the method being compiled: it is in the local scope, or in one of the if and while blocks around it.
+     */
+    private ScopeEntry lookupMethodEntry(String id)
+    {
+        Scope scope = localScope;
+        while(scope.getKind() == Kind.INNER && scope.lookupEntryNoParent(id) == null)
+            scope = scope.getParent();
+        
+        return scope.lookupEntryNoParent(id);
+    }
+    
     @Override
     public Object visitIdentifierCall(SixtyFortranParser.IdentifierCallContext ctx)
     {
         String id = ctx.IDENTIFIER().getText();
         
-        ScopeEntry localEntry = localScope.lookupEntryNoParent(id);
+        ScopeEntry localEntry = lookupMethodEntry(id);
         ScopeEntry nonlocalEntry = localScope.lookupEntry(id);
         TypeSpec type = localScope.lookupType(id);
         
@@ -259,7 +291,7 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
         
         String id = ctx.IDENTIFIER().getText();
         
-        ScopeEntry localEntry = localScope.lookupEntryNoParent(id);
+        ScopeEntry localEntry = lookupMethodEntry(id);
         ScopeEntry nonlocalEntry = localScope.lookupEntry(id);
         TypeSpec type = localScope.lookupType(id);
         
@@ -292,8 +324,10 @@ public class CompilerSemantics extends SixtyFortranBaseVisitor<Object>
             
             if(routine == null)
                 routine = nonlocalEntry.type.lookupRoutine(Predefined.OPERATOR_PAREN, arguments);
-
-           // putRoutineSignature(new RoutineSpec(Predefined.OPERATOR_PAREN, arguments, routine.returnType));
+            
+            //a routine value, like a routine parameter, is called through Routine, which needs a method to override
+            if(routine != null && nonlocalEntry.type.name.equals(Predefined.ROUTINE))
+                putRoutineSignature(new RoutineSpec(Predefined.OPERATOR_PAREN, arguments, routine.returnType));
             
             if(ctx.call() != null)
                 callHelper(ctx.call(), routine.returnType, false);
@@ -2,6 +2,11 @@ package backend.semantics;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import intermediate.Kind;
 import intermediate.type.TypeSpec;
@@ -17,6 +22,9 @@ public class FileSpec
     public Kind kind = Kind.OTHER;
     public TypeSpec type = null;
     
+    //the generated code, kept in memory until the whole program has been compiled
+    public StringBuilder code = new StringBuilder();
+    
     public FileSpec(String name)
     {
         this.name = name;
@@ -55,16 +63,33 @@ public class FileSpec
         return directory + prefix + name;
     }
     
+    /**
+     * Starts the file over. Nothing is written to disk until {@link #write()}.
+     */
     public void mkFile()
     {
-        File file = new File(directory + prefix + name + SUFFIX);
-        try
-        {
-            file.delete();
-            file.createNewFile();
-        } catch (IOException e)
+        code.setLength(0);
+    }
+    
+    public void println(String line)
+    {
+        code.append(line).append('\n');
+    }
+    
+    /**
+     * Writes the generated code to the file in a single channel write, replacing whatever was there.
+     */
+    public void write() throws IOException
+    {
+        File file = new File(getFullName());
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(code));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
         {
-            e.printStackTrace();
+            while(bytes.hasRemaining())
+                channel.write(bytes);
         }
     }
 }
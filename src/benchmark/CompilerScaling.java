@@ -0,0 +1,162 @@
+package benchmark;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.File;
+
+import antlr4.SixtyFortranLexer;
+import antlr4.SixtyFortranParser;
+import backend.compiler.Compiler;
+import frontend.Semantics;
+import intermediate.CompilationContext;
+
+/**
+ * <h1>CompilerScaling</h1>
+ *
+ * <p>Regression benchmark for the compiler pass (CompilerSemantics and code generation).
+ * It compiles synthetic programs that double in size and checks that the time
+ * doubles with them instead of growing quadratically. There are two series:</p>
+ * <ul>
+ * <li>statements: more and more short statements and type definitions,</li>
+ * <li>depth: one statement of ever more deeply nested routine calls.</li>
+ * </ul>
+ *
+ * <p>The programs are compiled in memory (as with -bytecode, without writing class files).
+ * The exit status is 1 if either series grows faster than {@value #MAX_GROWTH} times per doubling.</p>
+ */
+public class CompilerScaling
+{
+    private static final String PROGRAM_NAME = "scaling_benchmark";
+    private static final int[] SIZES = { 25, 50, 100, 200, 400 };
+    private static final int ROUNDS = 5;
+    private static final double MAX_GROWTH = 3.0;
+    
+    public static void main(String[] args) throws Exception
+    {
+        //deep nesting means deep recursion in the parser and the visitors
+        boolean[] passed = new boolean[1];
+        Thread thread = new Thread(null, () -> passed[0] = run(), "scaling", 1L << 30);
+        thread.start();
+        thread.join();
+        
+        new File(PROGRAM_NAME + "_bin").delete();
+        System.exit(passed[0]? 0 : 1);
+    }
+    
+    private static boolean run()
+    {
+        try
+        {
+            //warm up the JIT on the smaller sizes first
+            for(int size : SIZES)
+            {
+                time(statements(size));
+                time(nested(size));
+            }
+            
+            boolean passed = series("statements", true);
+            passed &= series("depth", false);
+            
+            System.out.println(passed? "Compile time grows linearly." : "Compile time grows faster than linearly.");
+            return passed;
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    private static boolean series(String name, boolean statements) throws Exception
+    {
+        System.out.println();
+        System.out.printf("%-10s %8s %12s %8s\n", name, "size", "compile ms", "growth");
+        
+        double previous = 0;
+        double worst = 0;
+        for(int size : SIZES)
+        {
+            double millis = time(statements? statements(size) : nested(size));
+            double growth = (previous > 0)? millis / previous : 0;
+            worst = Math.max(worst, growth);
+            
+            System.out.printf("%-10s %8d %12.2f %8s\n", "", size, millis, (previous > 0)? String.format("%.2fx", growth) : "");
+            previous = millis;
+        }
+        
+        return worst <= MAX_GROWTH;
+    }
+    
+    /**
+     * @return the best time of the compiler pass over a few rounds, in milliseconds.
+     */
+    private static double time(String source) throws Exception
+    {
+        long best = Long.MAX_VALUE;
+        
+        for(int round = 0; round < ROUNDS; round++)
+        {
+            CompilationContext context = new CompilationContext(System.out);
+            
+            SixtyFortranLexer lexer = new SixtyFortranLexer(CharStreams.fromString(source));
+            SixtyFortranParser parser = new SixtyFortranParser(new CommonTokenStream(lexer));
+            ParseTree tree = parser.program();
+            if(parser.getNumberOfSyntaxErrors() > 0 || parser.getTokenStream().LA(1) != Token.EOF)
+                throw new IllegalStateException("the benchmark program doesn't parse to the end");
+            
+            Semantics semantics = new Semantics(context);
+            semantics.visit(tree);
+            if(context.semanticErrors.getErrorCount() > 0)
+                throw new IllegalStateException("the benchmark program has semantic errors");
+            
+            long start = System.nanoTime();
+            new Compiler(context, semantics.getWorldScope(), PROGRAM_NAME, true).visit(tree);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        
+        return best / 1e6;
+    }
+    
+    private static String statements(int size)
+    {
+        StringBuilder source = new StringBuilder();
+        
+        for(int i = 0; i < size; i++)
+        {
+            source.append("type Counter" + i + ":\n");
+            source.append("\tinteger count\n");
+            source.append("\t\n");
+            source.append("\tdef show:\n");
+            source.append("\t\tprint(string(count))\n");
+            source.append("\tend show\n");
+            source.append("end Counter" + i + "\n");
+            source.append("Counter" + i + " c" + i + "\n");
+            source.append("c" + i + ".count = " + i + " * 2 + 1\n");
+            source.append("c" + i + ".show()\n");
+        }
+        
+        for(int i = 0; i < size * 10; i++)
+        {
+            source.append("integer a" + i + "\n");
+            source.append("a" + i + " = " + i + " + 2 * 3 - 1\n");
+        }
+        source.append("print(\"done\")\n");
+        
+        return source.toString();
+    }
+    
+    private static String nested(int size)
+    {
+        StringBuilder source = new StringBuilder("print(string(");
+        for(int i = 0; i < size; i++)
+            source.append("integer(real(");
+        source.append("1");
+        for(int i = 0; i < size; i++)
+            source.append("))");
+        source.append("))\n");
+        
+        return source.toString();
+    }
+}
@@ -0,0 +1,377 @@
+package benchmark;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import antlr4.SixtyFortranLexer;
+import antlr4.SixtyFortranParser;
+import backend.compiler.Compiler;
+import frontend.Semantics;
+import frontend.SyntaxErrorHandler;
+import frontend.TwoStageParser;
+import intermediate.CompilationContext;
+import intermediate.scope.Scope;
+
+/**
+ * <h1>FrontEndBenchmark</h1>
+ *
+ * <p>Microbenchmarks for each stage of the pipeline, run the way JMH runs them in average-time
+ * mode: a few warm-up iterations, then timed iterations of a fixed length, reporting the mean
+ * time per operation and its 99.9% confidence interval. Work a benchmark needs but doesn't
+ * measure (like parsing before Semantics) is done outside the timed section, on every operation.</p>
+ *
+ * <ul>
+ * <li>lex.cold, lex.warm: tokenizing the whole source.</li>
+ * <li>parse.cold, parse.warm: SixtyFortranParser.program() over an already tokenized source, with full LL prediction.</li>
+ * <li>parse.sll: the driver's TwoStageParser, which tries SLL prediction first (warm).</li>
+ * <li>semantics: the Semantics pass.</li>
+ * <li>compiler: CompilerSemantics and code generation (class files are built in memory, not written).</li>
+ * </ul>
+ *
+ * <p>"cold" gives the lexer or parser a new, empty DFA cache for every operation, as in the first
+ * compilation of a JVM. "warm" uses the cache ANTLR shares between all of them.</p>
+ *
+ * <p>Every source is benchmarked as it is and scaled up: the scaled versions repeat the program
+ * several times, with the names it defines renamed in each copy so that they don't clash.</p>
+ *
+ * <pre>
+ * USAGE: FrontEndBenchmark [-dir sourceDirectory] [-bench regex] [-scales 1,4,16] [sourceFileName...]
+ * </pre>
+ */
+public class FrontEndBenchmark
+{
+    //sample programs that compile, and that the parser reads to the end (it stops quietly after the longest program it finds)
+    private static final String[] BUNDLED_SOURCES = { "squareRoots.f", "cmp.f", "staticField.f", "combine.f", "ugly.f" };
+    private static final String PROGRAM_NAME = "frontend_benchmark";
+    
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    //Student's t for 99.9% confidence with MEASUREMENT_ITERATIONS - 1 degrees of freedom
+    private static final double T_999 = 4.781;
+    
+    //results are folded in here so the JIT can't throw the work away
+    public static volatile long sink;
+    
+    private interface Operation
+    {
+        /**
+         * Runs one operation.
+         * @return the time spent in the measured part, in nanoseconds.
+         */
+        long run(String source);
+    }
+    
+    public static void main(String[] args) throws Exception
+    {
+        String directory = "src";
+        Pattern include = Pattern.compile(".*");
+        int[] scales = { 1, 4, 16 };
+        List<String> sourceFileNames = new ArrayList<>();
+        
+        for(int i = 0; i < args.length; i++)
+        {
+            if(args[i].equals("-dir") && i + 1 < args.length)
+                directory = args[++i];
+            else if(args[i].equals("-bench") && i + 1 < args.length)
+                include = Pattern.compile(args[++i]);
+            else if(args[i].equals("-scales") && i + 1 < args.length)
+            {
+                String[] values = args[++i].split(",");
+                scales = new int[values.length];
+                for(int j = 0; j < values.length; j++)
+                    scales[j] = Integer.parseInt(values[j].trim());
+            }
+            else if(!args[i].startsWith("-"))
+                sourceFileNames.add(args[i]);
+            else
+            {
+                System.out.println("USAGE: FrontEndBenchmark [-dir sourceDirectory] [-bench regex] [-scales 1,4,16] [sourceFileName...]");
+                return;
+            }
+        }
+        
+        if(sourceFileNames.isEmpty())
+            for(String name : BUNDLED_SOURCES)
+                sourceFileNames.add(new File(directory, name).getPath());
+        
+        String[] names = { "lex.cold", "lex.warm", "parse.cold", "parse.warm", "parse.sll", "semantics", "compiler" };
+        Operation[] operations = { s -> lex(s, true), s -> lex(s, false), s -> parse(s, true), s -> parse(s, false),
+                                   FrontEndBenchmark::parseTwoStage, FrontEndBenchmark::semantics, FrontEndBenchmark::compiler };
+        
+        System.out.printf("%-12s %-20s %6s %10s %14s %12s\n", "benchmark", "source", "scale", "tokens", "us/op", "error");
+        
+        for(String sourceFileName : sourceFileNames)
+        {
+            String original = new String(Files.readAllBytes(new File(sourceFileName).toPath()), StandardCharsets.UTF_8);
+            
+            for(int scale : scales)
+            {
+                String source = scale(original, scale);
+                int tokens = tokenize(source, false).size();
+                
+                for(int i = 0; i < names.length; i++)
+                {
+                    if(!include.matcher(names[i]).find())
+                        continue;
+                    
+                    String label = String.format("%-12s %-20s %6d %10d", names[i], new File(sourceFileName).getName(), scale, tokens);
+                    System.out.println(label + " " + measure(operations[i], source));
+                }
+            }
+        }
+        
+        deleteAll(new File(PROGRAM_NAME + "_bin"));
+    }
+    
+    /**
+     * @return the mean time per operation and its error, or why the benchmark can't run on this source.
+     */
+    private static String measure(Operation operation, String source)
+    {
+        try
+        {
+            for(int i = 0; i < WARM_UP_ITERATIONS; i++)
+                iteration(operation, source);
+            
+            double[] scores = new double[MEASUREMENT_ITERATIONS];
+            for(int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+                scores[i] = iteration(operation, source);
+            
+            double mean = 0;
+            for(double score : scores)
+                mean += score / scores.length;
+            
+            double variance = 0;
+            for(double score : scores)
+                variance += (score - mean) * (score - mean) / (scores.length - 1);
+            
+            double error = T_999 * Math.sqrt(variance / scores.length);
+            return String.format("%14.3f %12s", mean / 1e3, String.format("+- %.3f", error / 1e3));
+        } catch (RuntimeException e)
+        {
+            return String.format("%14s   fails: %s", "-", e);
+        }
+    }
+    
+    /**
+     * @return the mean measured time of the operations that fit in one iteration, in nanoseconds.
+     */
+    private static double iteration(Operation operation, String source)
+    {
+        long measured = 0;
+        long operations = 0;
+        long end = System.nanoTime() + ITERATION_NANOS;
+        
+        do
+        {
+            measured += operation.run(source);
+            operations++;
+        } while(System.nanoTime() < end);
+        
+        return (double) measured / operations;
+    }
+    
+    private static long lex(String source, boolean cold)
+    {
+        long start = System.nanoTime();
+        List<Token> tokens = tokenize(source, cold);
+        long elapsed = System.nanoTime() - start;
+        
+        sink += tokens.size();
+        return elapsed;
+    }
+    
+    private static long parse(String source, boolean cold)
+    {
+        CommonTokenStream tokens = new CommonTokenStream(newLexer(source, false));
+        tokens.fill();
+        
+        long start = System.nanoTime();
+        SixtyFortranParser parser = newParser(tokens, cold);
+        ParseTree tree = parser.program();
+        long elapsed = System.nanoTime() - start;
+        
+        checkFullyParsed(parser);
+        sink += tree.getChildCount();
+        return elapsed;
+    }
+    
+    private static long parseTwoStage(String source)
+    {
+        CommonTokenStream tokens = new CommonTokenStream(newLexer(source, false));
+        tokens.fill();
+        
+        long start = System.nanoTime();
+        SixtyFortranParser parser = new SixtyFortranParser(tokens);
+        ParseTree tree = TwoStageParser.parse(parser, new SyntaxErrorHandler(Discard.STREAM));
+        long elapsed = System.nanoTime() - start;
+        
+        checkFullyParsed(parser);
+        sink += tree.getChildCount();
+        return elapsed;
+    }
+    
+    private static long semantics(String source)
+    {
+        ParseTree tree = parseChecked(source);
+        CompilationContext context = new CompilationContext(Discard.STREAM);
+        
+        long start = System.nanoTime();
+        new Semantics(context).visit(tree);
+        long elapsed = System.nanoTime() - start;
+        
+        sink += context.semanticErrors.getErrorCount();
+        return elapsed;
+    }
+    
+    private static long compiler(String source)
+    {
+        ParseTree tree = parseChecked(source);
+        CompilationContext context = new CompilationContext(Discard.STREAM);
+        Semantics semantics = new Semantics(context);
+        semantics.visit(tree);
+        if(context.semanticErrors.getErrorCount() > 0)
+            throw new IllegalStateException("semantic errors");
+        
+        long start = System.nanoTime();
+        Compiler compiler = new Compiler(context, semantics.getWorldScope(), PROGRAM_NAME, true);
+        compiler.visit(tree);
+        long elapsed = System.nanoTime() - start;
+        
+        sink += compiler.getObjectFiles().size();
+        return elapsed;
+    }
+    
+    /**
+     * Parses a source for the passes after parsing, which can't run on a program with syntax errors.
+     */
+    private static ParseTree parseChecked(String source)
+    {
+        SixtyFortranParser parser = newParser(new CommonTokenStream(newLexer(source, false)), false);
+        ParseTree tree = parser.program();
+        checkFullyParsed(parser);
+        
+        return tree;
+    }
+    
+    /**
+     * Fails unless the parser read the whole source. The program rule doesn't end with EOF, so the parser
+     * stops quietly after the longest program it finds at the start, and the rest would go unmeasured.
+     */
+    private static void checkFullyParsed(SixtyFortranParser parser)
+    {
+        if(parser.getNumberOfSyntaxErrors() > 0)
+            throw new IllegalStateException("syntax errors");
+        if(parser.getTokenStream().LA(1) != Token.EOF)
+            throw new IllegalStateException("parsing stopped at line " + parser.getTokenStream().LT(1).getLine());
+    }
+    
+    private static List<Token> tokenize(String source, boolean cold)
+    {
+        CommonTokenStream tokens = new CommonTokenStream(newLexer(source, cold));
+        tokens.fill();
+        return tokens.getTokens();
+    }
+    
+    private static SixtyFortranLexer newLexer(String source, boolean cold)
+    {
+        SixtyFortranLexer lexer = new SixtyFortranLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        
+        if(cold)
+            lexer.setInterpreter(new LexerATNSimulator(lexer, lexer.getATN(), newDecisionCache(lexer.getATN()), new PredictionContextCache()));
+        
+        return lexer;
+    }
+    
+    private static SixtyFortranParser newParser(CommonTokenStream tokens, boolean cold)
+    {
+        SixtyFortranParser parser = new SixtyFortranParser(tokens);
+        parser.removeErrorListeners();
+        
+        if(cold)
+            parser.setInterpreter(new ParserATNSimulator(parser, parser.getATN(), newDecisionCache(parser.getATN()), new PredictionContextCache()));
+        
+        return parser;
+    }
+    
+    private static DFA[] newDecisionCache(ATN atn)
+    {
+        DFA[] cache = new DFA[atn.getNumberOfDecisions()];
+        for(int i = 0; i < cache.length; i++)
+            cache[i] = new DFA(atn.getDecisionState(i), i);
+        
+        return cache;
+    }
+    
+    /**
+     * Repeats a program, renaming everything it defines in each copy (predefined names are left alone).
+     */
+    static String scale(String source, int copies)
+    {
+        if(copies <= 1)
+            return source;
+        
+        Scope predefined = new Semantics(new CompilationContext(Discard.STREAM)).getWorldScope();
+        List<Token> tokens = tokenize(source, false);
+        StringBuilder scaled = new StringBuilder();
+        
+        for(int copy = 0; copy < copies; copy++)
+        {
+            int position = 0;
+            for(Token token : tokens)
+            {
+                if(token.getType() != SixtyFortranLexer.IDENTIFIER)
+                    continue;
+                
+                String name = token.getText();
+                if(predefined.lookupEntry(name) != null || predefined.lookupType(name) != null)
+                    continue;
+                
+                scaled.append(source, position, token.getStartIndex()).append(name).append("_").append(copy);
+                position = token.getStopIndex() + 1;
+            }
+            scaled.append(source, position, source.length());
+            
+            if(!source.endsWith("\n"))
+                scaled.append("\n");
+        }
+        
+        return scaled.toString();
+    }
+    
+    private static void deleteAll(File file)
+    {
+        File[] children = file.listFiles();
+        if(children != null)
+            for(File child : children)
+                deleteAll(child);
+        
+        file.delete();
+    }
+    
+    private static class Discard extends OutputStream
+    {
+        static final PrintStream STREAM = new PrintStream(new Discard());
+        
+        @Override
+        public void write(int b) {}
+    }
+}
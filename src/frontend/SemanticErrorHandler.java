@@ -1,5 +1,7 @@
 package frontend;
 
+import java.io.PrintStream;
+
 import org.antlr.v4.runtime.ParserRuleContext;
 
 import intermediate.Predefined;
@@ -8,10 +10,20 @@ import intermediate.type.*;
 public class SemanticErrorHandler
 {
     private int count;
+    private PrintStream out;
     
     public SemanticErrorHandler()
+    {
+        this(System.out);
+    }
+    
+    /**
+     * @param out where the errors are printed.
+     */
+    public SemanticErrorHandler(PrintStream out)
     {
         count = 0;
+        this.out = out;
     }
     
     public int getErrorCount()
@@ -125,7 +137,7 @@ public class SemanticErrorHandler
     
     public void printError(String error, ParserRuleContext ctx)
     {
-        System.out.println("Error on line " + ctx.getStart().getLine() + ": " + error + ". Found at: " + ctx.getText());
+        out.println("Error on line " + ctx.getStart().getLine() + ": " + error + ". Found at: " + ctx.getText());
         count++;
     }
 }
\ No newline at end of file
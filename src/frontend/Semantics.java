@@ -1,6 +1,7 @@
 package frontend;
 
 import antlr4.*;
+import intermediate.CompilationContext;
 import intermediate.Kind;
 import intermediate.Predefined;
 import intermediate.scope.Scope;
@@ -12,15 +13,17 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     private Scope worldScope;
     private Scope localScope;
     private SemanticErrorHandler error;
+    private Predefined predefined;
     
-    public Semantics(SemanticErrorHandler error)
+    public Semantics(CompilationContext context)
     {
-        this.error = error;
+        this.error = context.semanticErrors;
+        this.predefined = context.predefined;
         worldScope = new Scope(null, Kind.MAIN);
         localScope = worldScope;
         
-        Predefined.addPredefinedTypesToScope(worldScope);
-        Predefined.addPredefinedRoutinesToScope(worldScope);
+        predefined.addPredefinedTypesToScope(worldScope);
+        predefined.addPredefinedRoutinesToScope(worldScope);
     }
     
     public Scope getWorldScope()
@@ -37,13 +40,17 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     public Object visitIfBlock(SixtyFortranParser.IfBlockContext ctx) {
         localScope = new Scope(localScope, Kind.INNER); // Create a new local scope for an else if block
         ctx.scope = localScope; // Set the current scope to this else if block scope
+        visit(ctx.expression()); // Assign the condition its type
         // *** Type checking ***
         if (ctx.expression().type == null) // If type is null
+        {
+            localScope = localScope.getParent(); // Go back to the parent scope before leaving
             return null; // Message printed down the line
-        else if (!TypeChecker.areTypesCompatible(Predefined.boolType, ctx.expression().type)) // If type is not boolType
+        }
+        else if (!TypeChecker.areTypesCompatible(predefined.boolType, ctx.expression().type)) // If type is not boolType
             error.boolTypeError(ctx.expression().type, ctx); // Throw a boolType exception
         else // If type is okay (no semantic problem)
-            visitChildren(ctx); // Visit rest of block (children)
+            visit(ctx.statementList()); // Visit rest of block (children)
         localScope = localScope.getParent(); // After visiting if block, go back to the parent scope
         return null;
     }
@@ -52,13 +59,17 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     public Object visitElseifBlock(SixtyFortranParser.ElseifBlockContext ctx) {
         localScope = new Scope(localScope, Kind.INNER); // Create a new local scope for an else if block
         ctx.scope = localScope; // Set the current scope to this else if block scope
+        visit(ctx.expression()); // Assign the condition its type
         // *** Type checking ***
         if (ctx.expression().type == null) // If type is null
+        {
+            localScope = localScope.getParent(); // Go back to the parent scope before leaving
             return null; // Message printed down the line
-        else if (!TypeChecker.areTypesCompatible(Predefined.boolType, ctx.expression().type)) // If type is not boolType
+        }
+        else if (!TypeChecker.areTypesCompatible(predefined.boolType, ctx.expression().type)) // If type is not boolType
             error.boolTypeError(ctx.expression().type, ctx); // Throw a boolType exception
         else // If type is okay (no semantic problem)
-            visitChildren(ctx); // Visit rest of block (children)
+            visit(ctx.statementList()); // Visit rest of block (children)
         localScope = localScope.getParent(); // After visiting if block, go back to the parent scope
         return null;
     }
@@ -76,13 +87,17 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     public Object visitLoopStatement(SixtyFortranParser.LoopStatementContext ctx) {
         localScope = new Scope(localScope, Kind.INNER); // Create a new local scope for an else if block
         ctx.scope = localScope; // Set the current scope to this else if block scope
+        visit(ctx.expression()); // Assign the condition its type
         // *** Type checking ***
         if (ctx.expression().type == null) // If type is null
+        {
+            localScope = localScope.getParent(); // Go back to the parent scope before leaving
             return null; // Message printed down the line
-        else if (!TypeChecker.areTypesCompatible(Predefined.boolType, ctx.expression().type)) // If type is not boolType
+        }
+        else if (!TypeChecker.areTypesCompatible(predefined.boolType, ctx.expression().type)) // If type is not boolType
             error.boolTypeError(ctx.expression().type, ctx); // Throw a boolType exception
         else // If type is okay (no semantic problem)
-            visitChildren(ctx); // Visit rest of block (children)
+            visit(ctx.statementList()); // Visit rest of block (children)
         localScope = localScope.getParent(); // After visiting if block, go back to the parent scope
         return null;
     }
@@ -166,7 +181,7 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
         {
             return null;
         }
-        else if(TypeChecker.isAssignmentCompatible(varDeclarations.entries.get(0), type, expType)) //if the expression type can be converted to the variable's type
+        else if(TypeChecker.isAssignmentCompatible(null, type, expType) || TypeChecker.areTypesCompatible(type, expType)) //if the expression type can be converted to the variable's type (the entries don't exist yet)
         {
             visit(ctx.varDeclaration()); //visits the variable declaration, checks if they've been added to the scope, and if not, adds them
         }
@@ -624,11 +639,11 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     {
         if(ctx.INTEGER() != null)
         {
-            ctx.type = Predefined.intType;
+            ctx.type = predefined.intType;
         }
         else
         {
-            ctx.type = Predefined.realType;
+            ctx.type = predefined.realType;
         }
         
         return null;
@@ -637,7 +652,7 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitBoolTerm(SixtyFortranParser.BoolTermContext ctx)
     {
-        ctx.type = Predefined.boolType;
+        ctx.type = predefined.boolType;
         
         return null;
     }
@@ -645,7 +660,7 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
     @Override
     public Object visitStringTerm(SixtyFortranParser.StringTermContext ctx)
     {
-        ctx.type = Predefined.stringType;
+        ctx.type = predefined.stringType;
         
         return null;
     }
@@ -656,17 +671,21 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
         visit(ctx.term()); //visit the term to get it's type
         
         TypeSpec termType = ctx.term().type;
-        ArgumentList arg = new ArgumentList(termType);
-        
-        RoutineSpec unaryNot = termType.lookupRoutine(Predefined.UNARY_NOT, arg);
         
-        if(unaryNot != null) //if the type has a unary not routine that fits the given arguments, then set the type of the term to the routine's return type
-        {
-            ctx.type = unaryNot.returnType;
-        }
-        else //otherwise, just throw an error
+        if(termType != null)
         {
-            error.routineNotFoundError(Predefined.UNARY_NOT, arg, termType, ctx);
+            ArgumentList arg = new ArgumentList(termType);
+            
+            RoutineSpec unaryNot = termType.lookupStaticRoutine(Predefined.UNARY_NOT, arg);
+            
+            if(unaryNot != null) //if the type has a unary not routine that fits the given arguments, then set the type of the term to the routine's return type
+            {
+                ctx.type = unaryNot.returnType;
+            }
+            else //otherwise, just throw an error
+            {
+                error.routineNotFoundError(Predefined.UNARY_NOT, arg, termType, ctx);
+            }
         }
         
         return null;
@@ -880,7 +899,7 @@ public class Semantics extends SixtyFortranBaseVisitor<Object>
             RoutineSpec routineSpec;
             
             //the names of for the routineSpec in a ROUTINE type (or a print or read type) are either OPERATOR_PAREN or the name of the routine itself. I know it's janky. Too bad.
-            if(idEntry.type.name.equals(Predefined.ROUTINE) || idEntry.type == Predefined.printType || idEntry.type == Predefined.readType)
+            if(idEntry.type.name.equals(Predefined.ROUTINE) || idEntry.type == predefined.printType || idEntry.type == predefined.readType)
             {
                 routineSpec = idEntry.type.lookupRoutine(routineName, arguments);
                 
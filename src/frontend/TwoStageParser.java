@@ -0,0 +1,78 @@
+package frontend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import antlr4.SixtyFortranParser;
+
+/**
+ * <h1>TwoStageParser</h1>
+ *
+ * <p>Parses a program with ANTLR's faster SLL prediction first, bailing out at the first
+ * error. Only if that fails is the program parsed again with full LL prediction and the
+ * normal error recovery, which reports the errors (if there really are any) through the
+ * SyntaxErrorHandler. SLL gives the same tree as LL for every program it accepts.</p>
+ *
+ * <p>The counters are kept for the whole JVM, so the daemon and batch driver can show
+ * how often the fallback fires.</p>
+ */
+public class TwoStageParser
+{
+    private static final AtomicLong parses = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
+    
+    /**
+     * @param parser a new parser over a token stream.
+     * @param errorHandler where syntax errors are reported.
+     * @return the parse tree of the program.
+     */
+    public static ParseTree parse(SixtyFortranParser parser, SyntaxErrorHandler errorHandler)
+    {
+        parses.incrementAndGet();
+        
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        
+        try
+        {
+            return parser.program();
+        } catch (ParseCancellationException e)
+        {
+            fallbacks.incrementAndGet();
+        }
+        
+        parser.reset();
+        parser.addErrorListener(errorHandler);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        
+        return parser.program();
+    }
+    
+    /**
+     * @return the number of programs parsed since the JVM started.
+     */
+    public static long getParseCount()
+    {
+        return parses.get();
+    }
+    
+    /**
+     * @return the number of those programs that SLL couldn't parse and had to be parsed again with full LL.
+     */
+    public static long getFallbackCount()
+    {
+        return fallbacks.get();
+    }
+    
+    public static String getCounts()
+    {
+        return String.format("%d of %d parses fell back from SLL to full LL.", getFallbackCount(), getParseCount());
+    }
+}
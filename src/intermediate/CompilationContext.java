@@ -0,0 +1,75 @@
+package intermediate;
+
+import java.io.PrintStream;
+
+import backend.assembler.ParallelAssembler;
+import backend.compiler.Label;
+import frontend.SemanticErrorHandler;
+import frontend.SyntaxErrorHandler;
+
+/**
+ * <h1>CompilationContext</h1>
+ *
+ * <p>Everything that belongs to a single compilation: the predefined types, the label
+ * numbering, the error handlers, the code generation options, the phase timings and where messages go. Each compilation gets its own
+ * context, so any number of them can run at once in the same JVM.</p>
+ */
+public class CompilationContext
+{
+    public Predefined predefined;
+    public SyntaxErrorHandler syntaxErrors;
+    public SemanticErrorHandler semanticErrors;
+    public PrintStream out;
+    public PhaseTimings timings;
+    
+    //whether integer, real and bool are kept as JVM ints and doubles while expressions are evaluated
+    public boolean specialize;
+    
+    //whether each method goes through the peephole optimizer before it is assembled
+    public boolean peephole;
+    
+    //whether expressions whose values are known at compile time are replaced by those values
+    public boolean fold;
+    
+    //shared by every compilation in a batch, or null to assemble with a private one
+    public ParallelAssembler assembler;
+    
+    private int labelIndex;
+    
+    public CompilationContext()
+    {
+        this(System.out);
+    }
+    
+    /**
+     * @param out where the compiler's messages are printed.
+     */
+    public CompilationContext(PrintStream out)
+    {
+        this.out = out;
+        
+        predefined = new Predefined();
+        syntaxErrors = new SyntaxErrorHandler(out);
+        semanticErrors = new SemanticErrorHandler(out);
+        timings = new PhaseTimings();
+        assembler = null;
+        specialize = true;
+        peephole = true;
+        fold = true;
+        
+        labelIndex = 0;
+    }
+    
+    /**
+     * @return the options that change the generated code, so that files generated with other options aren't reused.
+     */
+    public String getCodeOptions()
+    {
+        return ((specialize)? "specialized" : "boxed") + ((peephole)? ",peephole" : "") + ((fold)? ",fold" : "");
+    }
+    
+    public Label newLabel()
+    {
+        return new Label(++labelIndex);
+    }
+}
@@ -0,0 +1,180 @@
+package intermediate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>PhaseTimings</h1>
+ *
+ * <p>Measures each phase of a compilation: wall time, CPU time and bytes allocated by the
+ * compiling thread, and the peak heap while the phase ran. Work done on other threads (the
+ * assembler's fork-join pool) is added with {@link #addWork(long, long)}.</p>
+ *
+ * <p>The heap is shared by the whole JVM, so the peak heap is only meaningful when a single
+ * compilation is running.</p>
+ */
+public class PhaseTimings
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    private ArrayList<Phase> phases;
+    private Phase current;
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+    
+    public PhaseTimings()
+    {
+        phases = new ArrayList<>();
+        current = null;
+    }
+    
+    /**
+     * Ends the current phase (if any) and starts measuring a new one.
+     */
+    public void start(String name)
+    {
+        stop();
+        
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if(pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        
+        current = new Phase(name);
+        startWall = System.nanoTime();
+        startCpu = threadCpuTime();
+        startAllocated = threadAllocatedBytes();
+    }
+    
+    public void stop()
+    {
+        if(current == null)
+            return;
+        
+        current.wallNanos += System.nanoTime() - startWall;
+        current.cpuNanos += threadCpuTime() - startCpu;
+        current.allocatedBytes += threadAllocatedBytes() - startAllocated;
+        
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                current.peakHeapBytes += pool.getPeakUsage().getUsed();
+        
+        phases.add(current);
+        current = null;
+    }
+    
+    /**
+     * Adds work that other threads did for the current phase.
+     */
+    public void addWork(long cpuNanos, long allocatedBytes)
+    {
+        if(current == null)
+            return;
+        
+        current.cpuNanos += cpuNanos;
+        current.allocatedBytes += allocatedBytes;
+    }
+    
+    public List<Phase> getPhases()
+    {
+        return phases;
+    }
+    
+    /**
+     * @return the CPU time of the current thread in nanoseconds, or 0 if the JVM can't measure it.
+     */
+    public static long threadCpuTime()
+    {
+        return (THREADS.isCurrentThreadCpuTimeSupported())? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+    
+    /**
+     * @return the bytes allocated so far by the current thread, or 0 if the JVM can't measure it.
+     */
+    public static long threadAllocatedBytes()
+    {
+        if(THREADS instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        
+        return 0;
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%-18s %10s %10s %14s %14s\n", "phase", "wall ms", "cpu ms", "allocated KB", "peak heap KB"));
+        
+        Phase total = new Phase("total");
+        for(Phase phase : phases)
+        {
+            str.append(phase).append('\n');
+            total.add(phase);
+        }
+        str.append(total);
+        
+        return str.toString();
+    }
+    
+    /**
+     * @param program the name of the compiled program.
+     * @return the timings as a JSON object, with every value in nanoseconds or bytes.
+     */
+    public String toJson(String program)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"program\": \"").append(program.replace("\\", "\\\\").replace("\"", "\\\"")).append("\", \"phases\": [");
+        
+        Phase total = new Phase("total");
+        for(int i = 0; i < phases.size(); i++)
+        {
+            json.append((i > 0)? ", " : "").append(phases.get(i).toJson());
+            total.add(phases.get(i));
+        }
+        json.append("], \"total\": ").append(total.toJson()).append("}");
+        
+        return json.toString();
+    }
+    
+    public static class Phase
+    {
+        public String name;
+        public long wallNanos;
+        public long cpuNanos;
+        public long allocatedBytes;
+        public long peakHeapBytes;
+        
+        public Phase(String name)
+        {
+            this.name = name;
+        }
+        
+        private void add(Phase other)
+        {
+            wallNanos += other.wallNanos;
+            cpuNanos += other.cpuNanos;
+            allocatedBytes += other.allocatedBytes;
+            peakHeapBytes = Math.max(peakHeapBytes, other.peakHeapBytes);
+        }
+        
+        private String toJson()
+        {
+            return String.format("{\"name\": \"%s\", \"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d, \"peakHeapBytes\": %d}",
+                                 name, wallNanos, cpuNanos, allocatedBytes, peakHeapBytes);
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("%-18s %10.2f %10.2f %14d %14d", name, wallNanos / 1e6, cpuNanos / 1e6, allocatedBytes / 1024, peakHeapBytes / 1024);
+        }
+    }
+}
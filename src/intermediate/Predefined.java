@@ -32,7 +32,7 @@ public class Predefined
     public static String OPERATOR_MOD = "operator_mod";
     
     public static String OPERATOR_PLUS = "operator_plus";
-    public static String OPERATOR_MINUS = UNARY_MINUS;
+    public static String OPERATOR_MINUS = "operator_minus";
     
     public static String OPERATOR_EQUALS = "operator_equals";
     public static String OPERATOR_NOT_EQUALS = "operator_not_equals";
@@ -49,22 +49,33 @@ public class Predefined
     
     public static String OPERATOR_ASSIGN = "operator_assignment";
     
+    //read's fast paths for integer(read()) and real(read())
+    public static String READ_INTEGER = "readInteger";
+    public static String READ_REAL = "readReal";
+    
+    //the accumulators change a variable's own object, e.g. x = x + 1 without a new object for x + 1
+    public static String OPERATOR_PLUS_ASSIGN = "operator_plus_assignment";
+    public static String OPERATOR_MINUS_ASSIGN = "operator_minus_assignment";
+    public static String OPERATOR_STAR_ASSIGN = "operator_star_assignment";
+    public static String OPERATOR_SLASH_ASSIGN = "operator_slash_assignment";
+    public static String OPERATOR_MOD_ASSIGN = "operator_mod_assignment";
+    
     //defines the types
-    public static TypeSpec intType = new TypeSpec(INT);
-    public static TypeSpec realType = new TypeSpec(REAL);
-    public static TypeSpec stringType = new TypeSpec(STRING);
-    public static TypeSpec boolType = new TypeSpec(BOOL);
-    public static TypeSpec routineType = new TypeSpec(ROUTINE);
+    public TypeSpec intType = new TypeSpec(INT);
+    public TypeSpec realType = new TypeSpec(REAL);
+    public TypeSpec stringType = new TypeSpec(STRING);
+    public TypeSpec boolType = new TypeSpec(BOOL);
+    public TypeSpec routineType = new TypeSpec(ROUTINE);
     
     //printType and readType are special types that aren't routines
-    public static TypeSpec printType = new TypeSpec("print");
-    public static TypeSpec readType = new TypeSpec("read");
+    public TypeSpec printType = new TypeSpec("print");
+    public TypeSpec readType = new TypeSpec("read");
     
     //defines the world scope's routines
-    public static ScopeEntry printEntry;
-    public static ScopeEntry readEntry;
+    public ScopeEntry printEntry;
+    public ScopeEntry readEntry;
     
-    public static void addPredefinedTypesToScope(Scope scope)
+    public void addPredefinedTypesToScope(Scope scope)
     {
         //adds the types to the scope
         scope.addType(intType);
@@ -87,31 +98,37 @@ public class Predefined
         stringType.addStaticRoutine(stringParenInt);        
     }
     
-    public static void addPredefinedRoutinesToScope(Scope scope)
+    public void addPredefinedRoutinesToScope(Scope scope)
     {
         RoutineSpec print = new RoutineSpec(OPERATOR_PAREN, new ArgumentList(stringType), null);
-        TypeSpec printType = Predefined.printType; //print has to be a special type
+        TypeSpec printType = this.printType; //print has to be a special type
         printType.setPath("print");
         printType.addRoutine(print);
         printEntry = new ScopeEntry("print", printType);
         scope.addEntry(printEntry);
         
         RoutineSpec read = new RoutineSpec(OPERATOR_PAREN, new ArgumentList(), stringType);
-        TypeSpec readType = Predefined.readType; //print is a special type
+        TypeSpec readType = this.readType; //print is a special type
         readType.setPath("read");
         readType.addRoutine(read);
+        readType.addRoutine(new RoutineSpec(READ_INTEGER, new ArgumentList(), intType));
+        readType.addRoutine(new RoutineSpec(READ_REAL, new ArgumentList(), realType));
         readEntry = new ScopeEntry("read", readType);
         scope.addEntry(readEntry);
     }
     
-    public static void emitPredefinedRoutines(CodeGenerator code)
+    public void emitPredefinedRoutines(CodeGenerator code)
     {
         //emit print
         code.emitConstructorCall(printEntry, null);
         code.emitStoreEntry(printEntry);
+        
+        //emit read
+        code.emitConstructorCall(readEntry, null);
+        code.emitStoreEntry(readEntry);
     }
     
-    public static void movePredefinedTypes(String binFolder)
+    public void movePredefinedTypes(String binFolder)
     {
         routineType.setPath(binFolder + ROUTINE);
         intType.setPath("library/" + Predefined.INT);
@@ -122,30 +139,43 @@ public class Predefined
         printEntry.type.setPath("library/print");
         readEntry.type.setPath("library/read");
         
-        new File("library").mkdir();
-        
-        for(File predefinedFile : new File("bin/library").listFiles())
+        //compilations running in parallel all copy into the same library folder
+        synchronized(Predefined.class)
         {
-            if(predefinedFile.getName().endsWith(".class"))
+            new File("library").mkdir();
+            
+            File[] predefinedFiles = new File("bin/library").listFiles();
+            if(predefinedFiles == null)
+                return;
+            
+            for(File predefinedFile : predefinedFiles)
             {
-                Path sourcePath = Paths.get("bin/library/" + predefinedFile.getName());
-                Path destinationpath = Paths.get("library/" + predefinedFile.getName());
-                try
-                {
-                    Files.copy(sourcePath, destinationpath, StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException e)
+                if(predefinedFile.getName().endsWith(".class"))
                 {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+                    Path sourcePath = Paths.get("bin/library/" + predefinedFile.getName());
+                    Path destinationpath = Paths.get("library/" + predefinedFile.getName());
+                    try
+                    {
+                        Files.copy(sourcePath, destinationpath, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e)
+                    {
+                        // TODO Auto-generated catch block
+                        e.printStackTrace();
+                    }
                 }
             }
         }
     }
     
-    private static void initIntegerType()
+    private void initIntegerType()
     {
         //assignment operator
         RoutineSpec intAssign = new RoutineSpec(OPERATOR_ASSIGN, new ArgumentList(intType), null);
+        RoutineSpec intPlusAssign = new RoutineSpec(OPERATOR_PLUS_ASSIGN, new ArgumentList(intType), null);
+        RoutineSpec intMinusAssign = new RoutineSpec(OPERATOR_MINUS_ASSIGN, new ArgumentList(intType), null);
+        RoutineSpec intStarAssign = new RoutineSpec(OPERATOR_STAR_ASSIGN, new ArgumentList(intType), null);
+        RoutineSpec intSlashAssign = new RoutineSpec(OPERATOR_SLASH_ASSIGN, new ArgumentList(intType), null);
+        RoutineSpec intModAssign = new RoutineSpec(OPERATOR_MOD_ASSIGN, new ArgumentList(intType), null);
         
         //mathematical operators
         RoutineSpec intAddInt = new RoutineSpec(OPERATOR_PLUS, new ArgumentList(intType), intType);
@@ -171,6 +201,11 @@ public class Predefined
         RoutineSpec intGE = new RoutineSpec(OPERATOR_GREATER_EQUALS, new ArgumentList(intType), boolType);
         
         intType.addRoutine(intAssign);
+        intType.addRoutine(intPlusAssign);
+        intType.addRoutine(intMinusAssign);
+        intType.addRoutine(intStarAssign);
+        intType.addRoutine(intSlashAssign);
+        intType.addRoutine(intModAssign);
         intType.addRoutine(intAddInt);
         intType.addRoutine(intMinusInt);
         intType.addRoutine(intTimesInt);
@@ -190,10 +225,14 @@ public class Predefined
         intType.addRoutine(intGE);
     }
     
-    private static void initRealType()
+    private void initRealType()
     {
         //assignment operators
         RoutineSpec realAssign = new RoutineSpec(OPERATOR_ASSIGN, new ArgumentList(realType), null);
+        RoutineSpec realPlusAssign = new RoutineSpec(OPERATOR_PLUS_ASSIGN, new ArgumentList(realType), null);
+        RoutineSpec realMinusAssign = new RoutineSpec(OPERATOR_MINUS_ASSIGN, new ArgumentList(realType), null);
+        RoutineSpec realStarAssign = new RoutineSpec(OPERATOR_STAR_ASSIGN, new ArgumentList(realType), null);
+        RoutineSpec realSlashAssign = new RoutineSpec(OPERATOR_SLASH_ASSIGN, new ArgumentList(realType), null);
         
         //mathematical operators
         RoutineSpec realAddReal = new RoutineSpec(OPERATOR_PLUS, new ArgumentList(realType), realType);
@@ -218,6 +257,10 @@ public class Predefined
         RoutineSpec realGE = new RoutineSpec(OPERATOR_GREATER_EQUALS, new ArgumentList(realType), boolType);
         
         realType.addRoutine(realAssign);
+        realType.addRoutine(realPlusAssign);
+        realType.addRoutine(realMinusAssign);
+        realType.addRoutine(realStarAssign);
+        realType.addRoutine(realSlashAssign);
         realType.addRoutine(realAddReal);
         realType.addRoutine(realMinusReal);
         realType.addRoutine(realTimesReal);
@@ -236,10 +279,11 @@ public class Predefined
         realType.addRoutine(realGE);
     }
     
-    private static void initStringType()
+    private void initStringType()
     {
         //assignment operator
         RoutineSpec strAssignment = new RoutineSpec(OPERATOR_ASSIGN, new ArgumentList(stringType), null);
+        RoutineSpec strPlusAssignment = new RoutineSpec(OPERATOR_PLUS_ASSIGN, new ArgumentList(stringType), null);
         
         //concatenation operator
         RoutineSpec strAddStr = new RoutineSpec(OPERATOR_PLUS, new ArgumentList(stringType), stringType);
@@ -257,6 +301,7 @@ public class Predefined
         RoutineSpec strNotEquality = new RoutineSpec(OPERATOR_NOT_EQUALS, new ArgumentList(stringType), boolType);
         
         stringType.addRoutine(strAssignment);
+        stringType.addRoutine(strPlusAssignment);
         stringType.addRoutine(strAddStr);
         stringType.addRoutine(substr);
         
@@ -268,7 +313,7 @@ public class Predefined
         stringType.addRoutine(strNotEquality);
     }
     
-    private static void initBoolType()
+    private void initBoolType()
     {
         //assignment operator
         RoutineSpec boolAssignment = new RoutineSpec(OPERATOR_ASSIGN, new ArgumentList(boolType), null);
@@ -0,0 +1,55 @@
+package intermediate.ir;
+
+import java.util.ArrayList;
+
+import backend.bytecode.Instruction;
+
+/**
+ * <h1>BasicBlock</h1>
+ *
+ * <p>A straight line of instructions that is only entered at the top, through one of its labels
+ * or by falling through from the block before it, and only left at the bottom.</p>
+ */
+public class BasicBlock
+{
+    public ArrayList<String> labels;
+    public ArrayList<Instruction> instructions;
+    
+    //filled in by IrMethod.link()
+    public ArrayList<BasicBlock> successors;
+    public ArrayList<BasicBlock> predecessors;
+    
+    public BasicBlock()
+    {
+        labels = new ArrayList<>();
+        instructions = new ArrayList<>();
+        successors = new ArrayList<>();
+        predecessors = new ArrayList<>();
+    }
+    
+    /**
+     * @return the last instruction of the block, or null if it is empty.
+     */
+    public Instruction getLast()
+    {
+        return (instructions.isEmpty())? null : instructions.get(instructions.size() - 1);
+    }
+    
+    /**
+     * @return whether the block ends with a jump or a return, after which nothing more can be added to it.
+     */
+    public boolean isClosed()
+    {
+        Instruction last = getLast();
+        return last != null && (last.opcode.isBranch() || last.opcode.isUnconditional());
+    }
+    
+    /**
+     * @return whether execution can continue with the block after this one.
+     */
+    public boolean fallsThrough()
+    {
+        Instruction last = getLast();
+        return last == null || !last.opcode.isUnconditional();
+    }
+}
@@ -0,0 +1,198 @@
+package intermediate.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import backend.bytecode.AccessFlags;
+import backend.bytecode.Instruction;
+
+/**
+ * <h1>IrMethod</h1>
+ *
+ * <p>One method in the compiler's intermediate representation: typed JVM instructions (iadd and
+ * dadd are different operations, and every operand is a number, a label, a constant or a member
+ * reference rather than text) in basic blocks, linked into a control-flow graph by {@link #link()}.</p>
+ *
+ * <p>The code generator builds a method as the compiler walks the annotated parse tree, the
+ * peephole optimizer's passes rewrite it, and then it is lowered to Jasmin or to a class file.</p>
+ */
+public class IrMethod
+{
+    public int access;
+    public String name;
+    public String descriptor;
+    
+    public ArrayList<Local> locals;
+    public ArrayList<BasicBlock> blocks;
+    
+    //filled in by MethodLimits once the passes are done
+    public int maxStack;
+    public int maxLocals;
+    
+    public IrMethod(int access, String name, String descriptor)
+    {
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        
+        locals = new ArrayList<>();
+        blocks = new ArrayList<>();
+        blocks.add(new BasicBlock());
+        maxStack = -1;
+        maxLocals = -1;
+    }
+    
+    public boolean isStatic()
+    {
+        return (access & AccessFlags.STATIC) != 0;
+    }
+    
+    public void declareLocal(int slot, String name, String descriptor)
+    {
+        locals.add(new Local(slot, name, descriptor));
+    }
+    
+    /**
+     * Adds a label before the next instruction, which starts a new block unless the current one is still empty.
+     */
+    public void addLabel(String label)
+    {
+        BasicBlock block = getCurrent();
+        if(!block.instructions.isEmpty())
+        {
+            block = new BasicBlock();
+            blocks.add(block);
+        }
+        
+        block.labels.add(label);
+    }
+    
+    /**
+     * Adds an instruction at the end of the method. The instruction after a jump or a return starts a new block.
+     */
+    public void addInstruction(Instruction insn)
+    {
+        BasicBlock block = getCurrent();
+        if(block.isClosed())
+        {
+            block = new BasicBlock();
+            blocks.add(block);
+        }
+        
+        block.instructions.add(insn);
+    }
+    
+    private BasicBlock getCurrent()
+    {
+        return blocks.get(blocks.size() - 1);
+    }
+    
+    public BasicBlock getEntry()
+    {
+        return blocks.get(0);
+    }
+    
+    /**
+     * Recomputes every block's successors and predecessors, after blocks or their last instructions were changed.
+     */
+    public void link()
+    {
+        HashMap<String, BasicBlock> targets = getLabelBlocks();
+        for(BasicBlock block : blocks)
+        {
+            block.successors.clear();
+            block.predecessors.clear();
+        }
+        
+        for(int i = 0; i < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            Instruction last = block.getLast();
+            
+            if(last != null && last.opcode.isBranch())
+            {
+                BasicBlock target = targets.get(last.label);
+                if(target == null)
+                    throw new IllegalStateException("branch to unknown label '" + last.label + "' in " + name);
+                addEdge(block, target);
+            }
+            
+            if(block.fallsThrough() && i + 1 < blocks.size())
+                addEdge(block, blocks.get(i + 1));
+        }
+    }
+    
+    /**
+     * @return the block that each label starts.
+     */
+    public HashMap<String, BasicBlock> getLabelBlocks()
+    {
+        HashMap<String, BasicBlock> targets = new HashMap<>();
+        for(BasicBlock block : blocks)
+            for(String label : block.labels)
+                targets.put(label, block);
+        
+        return targets;
+    }
+    
+    private static void addEdge(BasicBlock from, BasicBlock to)
+    {
+        if(from.successors.contains(to))
+            return;
+        
+        from.successors.add(to);
+        to.predecessors.add(from);
+    }
+    
+    public int getInstructionCount()
+    {
+        int count = 0;
+        for(BasicBlock block : blocks)
+            count += block.instructions.size();
+        
+        return count;
+    }
+    
+    /**
+     * @return the method as Jasmin lines, from its .method directive to its .end method directive.
+     */
+    public List<String> toJasmin()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add(".method " + AccessFlags.toString(access) + " " + name + descriptor);
+        
+        for(Local local : locals)
+            lines.add(".var " + local.slot + " is " + local.name + " " + local.descriptor);
+        
+        for(BasicBlock block : blocks)
+        {
+            for(String label : block.labels)
+                lines.add(label + ":");
+            for(Instruction insn : block.instructions)
+                lines.add(insn.toString());
+        }
+        
+        if(maxLocals >= 0)
+            lines.add(".limit locals " + maxLocals);
+        if(maxStack >= 0)
+            lines.add(".limit stack " + maxStack);
+        lines.add(".end method");
+        
+        return lines;
+    }
+    
+    public static class Local
+    {
+        public int slot;
+        public String name;
+        public String descriptor;
+        
+        public Local(int slot, String name, String descriptor)
+        {
+            this.slot = slot;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+}
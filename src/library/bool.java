@@ -1,77 +1,119 @@
 package library;
 
-public class bool {
+// Values are never changed by the operators, so the same object can be shared by any number of
+// expressions. Only a variable's own object changes, through operator_assignment, which the
+// shared objects reject.
+public final class bool {
 
-	public int value;
+	private int value;
+	private final boolean shared;
+	
+	private static final bool TRUE = new bool(1, true);
+	private static final bool FALSE = new bool(0, true);
 	
 	public bool()
 	{
 	    value = 0;
+	    shared = false;
 	}
 	
 	// Constructor for int
 	public bool(int value) {
-		this.value = value;
+		this(value, false);
 	}
 
 	// Constructor for boolean
 	public bool(boolean value) {
-		if (value)
-			this.value = 1;
-		else
-			this.value = 0;
+		this(value? 1 : 0, false);
+	}
+
+	private bool(int value, boolean shared) {
+		this.value = value;
+		this.shared = shared;
+	}
+
+	// a new object that is never changed, such as a literal that a compiled class shares
+	public static bool constant(int value) {
+		return new bool(value, true);
+	}
+
+	// the shared true or false, for values that no variable owns
+	public static bool of(int value) {
+		return (value == 0)? FALSE : TRUE;
+	}
+
+	public static bool of(boolean value) {
+		return value? TRUE : FALSE;
+	}
+
+	// the value, for the compiled code and the other library types, which can't change it
+	public int getValue() {
+		return value;
+	}
+
+	// the shared objects are read by any number of expressions, so only a variable's own object may change
+	private void checkOwned() {
+		if (shared)
+			throw new UnsupportedOperationException("a shared bool can't be changed");
+	}
+
+	// self = value, for a value that the compiled code has already unboxed
+	public void operator_assignment(int value) {
+		checkOwned();
+		this.value = value;
 	}
 
 	// self = other
 	public void operator_assignment(bool other) {
+		checkOwned();
 		this.value = other.value;
 	}
  
 	public bool operator_equals(bool bool2) {
 		if(value == bool2.value)
-      return new bool(1);
+      return bool.of(1);
     else
-      return new bool(0);
+      return bool.of(0);
 	}
 
 	// bool1 != bool2
 	public bool operator_not_equals(bool bool2) {
     if(value == bool2.value)
-      return new bool(0);
+      return bool.of(0);
     else
-      return new bool(1);
+      return bool.of(1);
 	}
   
   public static bool operator_parenthesis(string str)
   {
-    if(str.value.equals("true"))
-      return new bool(1);
+    if(str.getValue().equals("true"))
+      return bool.of(1);
     else
-      return new bool(0);
+      return bool.of(0);
   }
   
   public static bool operator_not(bool bool1)
   {
     if(bool1.value == 0)
-      return new bool(1);
+      return bool.of(1);
     else
-      return new bool(0);
+      return bool.of(0);
   }
   
   public bool operator_or(bool bool1)
   {
     if(value + bool1.value == 1 || value + bool1.value == 2)
-      return new bool(1);
+      return bool.of(1);
     else
-      return new bool(0);
+      return bool.of(0);
   }
   
   public bool operator_and(bool bool1)
   {
     if(value + bool1.value == 2)
-      return new bool(1);
+      return bool.of(1);
     else
-      return new bool(0);
+      return bool.of(0);
   }
 
 	@Override
@@ -1,93 +1,173 @@
 package library;
-public class integer {
-	public int value = 0;
+// Values are never changed by the operators, so the same object can be shared by any number of
+// expressions. Only a variable's own object changes, through operator_assignment and the
+// operator_..._assignment accumulators, which the shared objects reject.
+public final class integer {
+	private int value = 0;
+	private final boolean shared;
+
+	// the range of values that are shared, which can be widened with -Dlibrary.integer.cache.low=n and -Dlibrary.integer.cache.high=n
+	private static final int CACHE_LOW = Integer.getInteger("library.integer.cache.low", -128);
+	private static final int CACHE_HIGH = Math.max(Integer.getInteger("library.integer.cache.high", 127), CACHE_LOW - 1);
+	private static final integer[] CACHE = new integer[CACHE_HIGH - CACHE_LOW + 1];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++)
+			CACHE[i] = new integer(CACHE_LOW + i, true);
+	}
 
 	public integer()
 	{
 	    value = 0;
+	    shared = false;
 	}
 	public integer(int value) {
+		this(value, false);
+	}
+
+	private integer(int value, boolean shared) {
+		this.value = value;
+		this.shared = shared;
+	}
+
+	// a new object that is never changed, such as a literal that a compiled class shares
+	public static integer constant(int value) {
+		return new integer(value, true);
+	}
+
+	// a shared object for values in the cached range, otherwise a new one, for values that no variable owns
+	public static integer valueOf(int value) {
+		if (value >= CACHE_LOW && value <= CACHE_HIGH)
+			return CACHE[value - CACHE_LOW];
+		return new integer(value);
+	}
+
+	// the value, for the compiled code and the other library types, which can't change it
+	public int getValue() {
+		return value;
+	}
+
+	// the shared objects are read by any number of expressions, so only a variable's own object may change
+	private void checkOwned() {
+		if (shared)
+			throw new UnsupportedOperationException("a shared integer can't be changed");
+	}
+
+	// self = value, for a value that the compiled code has already unboxed
+	public void operator_assignment(int value) {
+		checkOwned();
 		this.value = value;
 	}
 
 	// self = other
 	public void operator_assignment(integer other) {
+		checkOwned();
 		this.value = other.value;
 	}
 
+	// self += other
+	public void operator_plus_assignment(integer other) {
+		checkOwned();
+		this.value += other.value;
+	}
+
+	// self -= other
+	public void operator_minus_assignment(integer other) {
+		checkOwned();
+		this.value -= other.value;
+	}
+
+	// self *= other
+	public void operator_star_assignment(integer other) {
+		checkOwned();
+		this.value *= other.value;
+	}
+
+	// self /= other
+	public void operator_slash_assignment(integer other) {
+		checkOwned();
+		this.value /= other.value;
+	}
+
+	// self %= other
+	public void operator_mod_assignment(integer other) {
+		checkOwned();
+		this.value %= other.value;
+	}
+
 	// self + other
 	public integer operator_plus(integer other) {
-		return new integer(this.value += other.value);
+		return integer.valueOf(this.value + other.value);
 	}
 
 	// self - other
 	public integer operator_minus(integer other) {
-		return new integer(this.value - other.value);
+		return integer.valueOf(this.value - other.value);
 	}
 
 	// self * other
 	public integer operator_star(integer other) {
-		return new integer(this.value * other.value);
+		return integer.valueOf(this.value * other.value);
 	}
 
 	// self / other
 	public integer operator_slash(integer other) {
-		return new integer(value / other.value);
+		return integer.valueOf(value / other.value);
 	}
   
   public integer operator_mod(integer other)
   {
-    return new integer(value % other.value);
+    return integer.valueOf(value % other.value);
   }
 
   public static integer unary_minus(integer i)
   {
-    return new integer(-i.value);
+    return integer.valueOf(-i.value);
   }
   
 	// integer(string(x))
 	public static integer operator_parenthesis(string str) {
-		return new integer(Integer.parseInt(str.value));
+		return integer.valueOf(Integer.parseInt(str.getValue()));
 	}
 
 	// integer(real(x))
 	public static integer operator_parenthesis(real real) {
-		return new integer((int) real.value);
+		return integer.valueOf((int) real.getValue());
 	}
 
 	// integer(bool(x))
 	public static integer operator_parenthesis(bool bool) {
-		return new integer(bool.value);
+		return integer.valueOf(bool.getValue());
 	}
 
 	// int1 == int2
 	public bool operator_equals(integer int2) {
-		return new bool(value == int2.value);
+		return bool.of(value == int2.value);
 	}
 
 	// int1 != int2
 	public bool operator_not_equals(integer int2) {
-		return new bool(value != int2.value);
+		return bool.of(value != int2.value);
 	}
 
 	// int1 <= int2
 	public bool operator_less_equals(integer int2) {
-		return new bool(value <= int2.value);
+		return bool.of(value <= int2.value);
 	}
 
 	// int1 >= int2
 	public bool operator_greater_equals(integer int2) {
-		return new bool(value >= int2.value);
+		return bool.of(value >= int2.value);
 	}
 
 	// int1 < int2
 	public bool operator_less_than(integer int2) {
-		return new bool(value < int2.value);
+		return bool.of(value < int2.value);
 	}
 
 	// int1 > int2
 	public bool operator_greater_than(integer int2) {
-		return new bool(value > int2.value);
+		return bool.of(value > int2.value);
 	}
 
 	@Override
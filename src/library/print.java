@@ -1,8 +1,28 @@
 package library;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class print extends routine
 {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    //-Dlibrary.print.lineflush=true writes every line out right away, for interactive programs
+    private static final boolean LINE_FLUSH = Boolean.getBoolean("library.print.lineflush");
+    
+    //each thread prints into its own buffer without locking, and every buffer is written out when it fills up and when the program exits
+    //(or, for a thread that has ended, when another thread makes a buffer, so that the ended threads' buffers aren't kept forever)
+    private static final Map<Thread, Writer> buffers = new LinkedHashMap<>();
+    private static final ThreadLocal<Writer> buffer = ThreadLocal.withInitial(print::newBuffer);
+    private static boolean flushesAtExit = false;
+    
     public print()
     {
         
@@ -10,6 +30,80 @@ public class print extends routine
     
     public void operator_parenthesis(string input)
     {
-        System.out.println(input.value);
+        Writer out = buffer.get();
+        
+        //like System.out, printing never fails, even if the output is closed
+        try
+        {
+            out.write(input.getValue());
+            out.write(System.lineSeparator());
+            if(LINE_FLUSH)
+                out.flush();
+        }
+        catch(IOException e)
+        {
+        }
+    }
+    
+    /**
+     * Writes out what the current thread has printed, e.g. before waiting for input.
+     */
+    public static void flush()
+    {
+        try
+        {
+            buffer.get().flush();
+        }
+        catch(IOException e)
+        {
+        }
+    }
+    
+    /**
+     * Makes the program write out every thread's buffer when it exits. The generated main calls this first.
+     */
+    public static synchronized void flushAtExit()
+    {
+        if(flushesAtExit)
+            return;
+        
+        flushesAtExit = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(print::flushAll));
+    }
+    
+    private static synchronized void flushAll()
+    {
+        for(Writer out : buffers.values())
+            flush(out);
+    }
+    
+    private static synchronized Writer newBuffer()
+    {
+        //an ended thread won't print again, so its buffer is written out and dropped
+        Iterator<Map.Entry<Thread, Writer>> entries = buffers.entrySet().iterator();
+        while(entries.hasNext())
+        {
+            Map.Entry<Thread, Writer> entry = entries.next();
+            if(!entry.getKey().isAlive())
+            {
+                flush(entry.getValue());
+                entries.remove();
+            }
+        }
+        
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), BUFFER_SIZE);
+        buffers.put(Thread.currentThread(), out);
+        return out;
+    }
+    
+    private static void flush(Writer out)
+    {
+        try
+        {
+            out.flush();
+        }
+        catch(IOException e)
+        {
+        }
     }
 }
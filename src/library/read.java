@@ -1,14 +1,230 @@
 package library;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 public class read extends routine
 {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    //every read takes its input from one large buffer over standard input's channel, which works the same for a console, a file or a pipe
+    private static final ReadableByteChannel in = new FileInputStream(FileDescriptor.in).getChannel();
+    private static final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private static boolean ended = false;
+    
+    //the current line or number, reused so that reading doesn't allocate
+    private static byte[] token = new byte[128];
+    private static int tokenLength;
+    
+    //the powers of ten that a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    static
+    {
+        buffer.limit(0);
+    }
+    
     public read()
     {
         
     }
     
+    /**
+     * @return the next line, without its line separator, or an empty string at the end of the input.
+     */
     public string operator_parenthesis()
     {
-        return new string(System.console().readLine());
+        synchronized(read.class)
+        {
+            tokenLength = 0;
+            int b;
+            while((b = next()) >= 0 && b != '\n')
+                append(b);
+            
+            if(tokenLength > 0 && token[tokenLength - 1] == '\r')
+                tokenLength--;
+            
+            return new string(new String(token, 0, tokenLength, Charset.defaultCharset()));
+        }
+    }
+    
+    /**
+     * integer(read()): parses the next line as an integer straight from the input.
+     */
+    public integer readInteger()
+    {
+        synchronized(read.class)
+        {
+            readNumber();
+            
+            //up to 9 digits can't overflow an int
+            int i = (tokenLength > 0 && (token[0] == '-' || token[0] == '+'))? 1 : 0;
+            if(tokenLength == i || tokenLength - i > 9)
+                return integer.valueOf(Integer.parseInt(getToken()));
+            
+            int value = 0;
+            for(; i < tokenLength; i++)
+            {
+                int digit = token[i] - '0';
+                if(digit < 0 || digit > 9)
+                    return integer.valueOf(Integer.parseInt(getToken()));
+                value = value * 10 + digit;
+            }
+            
+            return integer.valueOf((token[0] == '-')? -value : value);
+        }
+    }
+    
+    /**
+     * real(read()): parses the next line as a real straight from the input. Numbers such as 12.5 or 3e-4, whose
+     * digits fit exactly in a double and whose power of ten is one a double holds exactly, are computed with
+     * a single multiplication or division, which rounds the same as Double.parseDouble. Anything else is left to it.
+     */
+    public real readReal()
+    {
+        synchronized(read.class)
+        {
+            readNumber();
+            
+            int i = 0;
+            boolean negative = false;
+            if(i < tokenLength && (token[i] == '-' || token[i] == '+'))
+                negative = token[i++] == '-';
+            
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean point = false;
+            for(; i < tokenLength; i++)
+            {
+                int b = token[i];
+                if(b >= '0' && b <= '9')
+                {
+                    if(++digits > 15)
+                        return new real(Double.parseDouble(getToken()));
+                    mantissa = mantissa * 10 + (b - '0');
+                    if(point)
+                        exponent--;
+                }
+                else if(b == '.' && !point)
+                    point = true;
+                else
+                    break;
+            }
+            
+            if(digits == 0)
+                return new real(Double.parseDouble(getToken()));
+            
+            if(i < tokenLength && (token[i] == 'e' || token[i] == 'E'))
+            {
+                i++;
+                boolean negativeExponent = false;
+                if(i < tokenLength && (token[i] == '-' || token[i] == '+'))
+                    negativeExponent = token[i++] == '-';
+                
+                int start = i;
+                int power = 0;
+                for(; i < tokenLength && token[i] >= '0' && token[i] <= '9' && i - start < 4; i++)
+                    power = power * 10 + (token[i] - '0');
+                
+                if(i == start)
+                    return new real(Double.parseDouble(getToken()));
+                exponent += negativeExponent? -power : power;
+            }
+            
+            if(i < tokenLength || exponent < -22 || exponent > 22)
+                return new real(Double.parseDouble(getToken()));
+            
+            double value = (exponent < 0)? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return new real(negative? -value : value);
+        }
+    }
+    
+    /**
+     * Reads a line that holds one number, which is left in the token, and skips the spaces around it.
+     */
+    private static void readNumber()
+    {
+        int b = next();
+        while(b == ' ' || b == '\t')
+            b = next();
+        
+        tokenLength = 0;
+        for(; b >= 0 && b != ' ' && b != '\t' && b != '\r' && b != '\n'; b = next())
+            append(b);
+        
+        //anything else on the line makes the number invalid, like it does for integer(string) and real(string)
+        boolean more = false;
+        for(; b >= 0 && b != '\n'; b = next())
+        {
+            if(b != ' ' && b != '\t' && b != '\r')
+            {
+                if(!more)
+                    append(' ');
+                more = true;
+                append(b);
+            }
+        }
+    }
+    
+    private static String getToken()
+    {
+        return new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+    }
+    
+    private static void append(int b)
+    {
+        if(tokenLength == token.length)
+            token = Arrays.copyOf(token, token.length * 2);
+        token[tokenLength++] = (byte) b;
+    }
+    
+    /**
+     * @return the next byte of the input, or -1 at its end.
+     */
+    private static int next()
+    {
+        if(!buffer.hasRemaining() && !fill())
+            return -1;
+        
+        return buffer.get() & 0xff;
+    }
+    
+    private static boolean fill()
+    {
+        if(ended)
+            return false;
+        
+        //whatever was printed, such as a prompt, has to show before waiting
+        print.flush();
+        
+        try
+        {
+            buffer.clear();
+            int count;
+            do
+            {
+                count = in.read(buffer);
+            }
+            while(count == 0);
+            buffer.flip();
+            
+            ended = count < 0;
+            return !ended;
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
     }
 }
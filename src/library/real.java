@@ -1,39 +1,101 @@
 package library;
 
-public class real {
+// Values are never changed by the operators, so the same object can be shared by any number of
+// expressions. Only a variable's own object changes, through operator_assignment and the
+// operator_..._assignment accumulators, which the shared objects reject.
+public final class real {
 
-	public double value;
+	private double value;
+	private final boolean shared;
 
 	public real()
 	{
 	    value = 0;
+	    shared = false;
 	}
 	
 	public real(double value) {
+		this(value, false);
+	}
+
+	private real(double value, boolean shared) {
+		this.value = value;
+		this.shared = shared;
+	}
+
+	// a new object that is never changed, such as a literal that a compiled class shares
+	public static real constant(double value) {
+		return new real(value, true);
+	}
+
+	// reals aren't cached, but boxing goes through the same kind of factory as integer and bool
+	public static real valueOf(double value) {
+		return new real(value);
+	}
+
+	// the value, for the compiled code and the other library types, which can't change it
+	public double getValue() {
+		return value;
+	}
+
+	// the shared objects are read by any number of expressions, so only a variable's own object may change
+	private void checkOwned() {
+		if (shared)
+			throw new UnsupportedOperationException("a shared real can't be changed");
+	}
+
+	// self = value, for a value that the compiled code has already unboxed
+	public void operator_assignment(double value) {
+		checkOwned();
 		this.value = value;
 	}
 
 	// self = other
 	public void operator_assignment(real other) {
+		checkOwned();
 		this.value = other.value;
 	}
 
 	// self += other
+	public void operator_plus_assignment(real other) {
+		checkOwned();
+		this.value += other.value;
+	}
+
+	// self -= other
+	public void operator_minus_assignment(real other) {
+		checkOwned();
+		this.value -= other.value;
+	}
+
+	// self *= other
+	public void operator_star_assignment(real other) {
+		checkOwned();
+		this.value *= other.value;
+	}
+
+	// self /= other
+	public void operator_slash_assignment(real other) {
+		checkOwned();
+		this.value /= other.value;
+	}
+
+	// self + other
 	public real operator_plus(real other) {
 		return new real(this.value + other.value);
 	}
 
-	// self -= other
+	// self - other
 	public real operator_minus(real other) {
 		return new real(this.value - other.value);
 	}
 
-	// self *= other
+	// self * other
 	public real operator_star(real other) {
 		return new real(this.value * other.value);
 	}
 
-	// self /= other
+	// self / other
 	public real operator_slash(real other) {
 		return new real(this.value / other.value);
 	}
@@ -45,47 +107,47 @@ public class real {
 
 	// real(string(x))
 	public static real operator_parenthesis(string str) {
-		return new real(Double.parseDouble(str.value));
+		return new real(Double.parseDouble(str.getValue()));
 	}
 
 	// real(integer(x))
 	public static real operator_parenthesis(integer integer) {
-		return new real(integer.value);
+		return new real(integer.getValue());
 	}
 
 	// real(bool(x))
 	public static real operator_parenthesis(bool bool) {
-		return new real(bool.value);
+		return new real(bool.getValue());
 	}
 
 	// r1 == r2
 	public bool operator_equals(real r2) {
-		return new bool(value == r2.value);
+		return bool.of(value == r2.value);
 	}
 
 	// r1 != r2
 	public bool operator_not_equals(real r2) {
-		return new bool(value != r2.value);
+		return bool.of(value != r2.value);
 	}
 
 	// r1 <= r2
 	public bool operator_less_equals(real r2) {
-		return new bool(value <= r2.value);
+		return bool.of(value <= r2.value);
 	}
 
 	// r1 >= r2
 	public bool operator_greater_equals(real r2) {
-		return new bool(value >= r2.value);
+		return bool.of(value >= r2.value);
 	}
 
 	// r1 < r2
 	public bool operator_less_than(real r2) {
-		return new bool(value < r2.value);
+		return bool.of(value < r2.value);
 	}
 
 	// r1 > r2
 	public bool operator_greater_than(real r2) {
-		return new bool(value > r2.value);
+		return bool.of(value > r2.value);
 	}
 
 	@Override
@@ -1,30 +1,63 @@
 package library;
 
-public class string {
-	public String value;
+// Values are never changed by the operators, so the same object can be shared by any number of
+// expressions. Only a variable's own object changes, through operator_assignment and the
+// operator_plus_assignment accumulator, which the shared objects reject.
+public final class string {
+	private String value;
+	private final boolean shared;
 
 	public string()
 	{
 	    value = "";
+	    shared = false;
 	}
 	
 	public string(String value) {
+		this(value, false);
+	}
+
+	private string(String value, boolean shared) {
 		this.value = value;
+		this.shared = shared;
+	}
+
+	// a new object that is never changed, such as a literal that a compiled class shares
+	public static string constant(String value) {
+		return new string(value, true);
+	}
+
+	// the value, for the compiled code and the other library types, which can't change it
+	public String getValue() {
+		return value;
+	}
+
+	// the shared objects are read by any number of expressions, so only a variable's own object may change
+	private void checkOwned() {
+		if (shared)
+			throw new UnsupportedOperationException("a shared string can't be changed");
 	}
 
 	// self = other
 	public void operator_assignment(string other) {
+		checkOwned();
 		this.value = other.value;
 	}
 
 	// self += other
+	public void operator_plus_assignment(string other) {
+		checkOwned();
+		this.value += other.value;
+	}
+
+	// self + other
 	public string operator_plus(string other) {
 		return new string(this.value + other.value);
 	}
 	
 	// substring(str1, x, y)
 	public string substring(integer beginIndex, integer endIndex) {
-		return new string(value.substring(beginIndex.value, endIndex.value));
+		return new string(value.substring(beginIndex.getValue(), endIndex.getValue()));
 	}
 
 	// string(real(x))
@@ -44,11 +77,11 @@ public class string {
 
 	// str1 == str2
 	public bool operator_equals(string str2) {
-		return new bool(value.equals(str2.value));
+		return bool.of(value.equals(str2.value));
 	}
 
 	public bool operator_not_equals(string str2) {
-		return new bool(!value.equals(str2.value));
+		return bool.of(!value.equals(str2.value));
 	}
 
 	@Override
@@ -0,0 +1,6 @@
+real r = 0.1
+print(string(0.1))
+print(string(1.0e20))
+print(string(0.1 + 0.2))
+print(string(r * 3.0))
+print(string(1.0))
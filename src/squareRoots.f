@@ -0,0 +1,32 @@
+
+def root(real x) returns real:
+	real r, prev, diff
+	
+	r = 1.0
+	prev = 0.0
+	diff = 1.0
+	
+	while diff > 0.0000001:
+		prev = r
+		r = ((x / r) + r) / 2.0
+		diff = r - prev
+		 
+		if diff < 0.0:
+			diff = -diff
+		end if
+		
+	end while
+	
+	return r
+end root
+
+def printRoot(integer n, real value):
+	print("The square root of " + string(n) + " is " + string(value))
+end printRoot
+
+integer number = 1
+
+while number <= 25:
+	printRoot(number, root(real(number)))
+	number = number + 1
+end while
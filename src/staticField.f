@@ -0,0 +1,14 @@
+type Counter:
+	static integer s, t = 2 + 3
+	static bool done = 1 < 2
+end Counter
+
+def five returns integer:
+	return 2 + 3
+end five
+
+Counter.s = 7
+Counter.done = false
+print(string(Counter.s) + " " + string(Counter.t))
+print(string(five()))
+print(string(1 < 2))
@@ -0,0 +1,6 @@
+bool b = true
+integer i = 4
+real r = 2.5
+print("cmp=" + string(not b) + "/" + string(not (i < 3)))
+print(string(-i) + " " + string(-r))
+print(string(i - 1) + " " + string(r - 0.5) + " " + string(10 - i - 1))